@@ -1,56 +1,78 @@
 package com.template.contracts;
 
 import com.template.states.TokenState;
-import com.template.states.TokenStateUtilities;
 import net.corda.core.contracts.CommandData;
 import net.corda.core.contracts.CommandWithParties;
 import net.corda.core.contracts.Contract;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.TransactionState;
 import net.corda.core.identity.Party;
 import net.corda.core.transactions.LedgerTransaction;
 import org.jetbrains.annotations.NotNull;
 
 import java.security.PublicKey;
-import java.util.List;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static net.corda.core.contracts.ContractsDSL.requireSingleCommand;
 import static net.corda.core.contracts.ContractsDSL.requireThat;
 
 public final class TokenContract implements Contract {
     public static final String TOKEN_CONTRACT_ID = "com.template.contracts.TokenContract";
+    /**
+     * Set this system property to true to tally the inputs, and the outputs, of large transactions in parallel.
+     */
+    public static final String PARALLEL_PROPERTY = "tokenContract.parallelVerify";
+    /**
+     * Below this many states in a list, forking costs more than it saves.
+     */
+    private static final int PARALLEL_THRESHOLD = 1_000;
 
     @Override
     public void verify(@NotNull final LedgerTransaction tx) {
         final CommandWithParties<Commands> command = requireSingleCommand(tx.getCommands(), Commands.class);
+        // Looking up each key in a hash set, instead of in the list, keeps the signer checks linear.
+        final Set<PublicKey> signers = new HashSet<>(command.getSigners());
 
         // This contract does not care about states it has no knowledge about.
         // This will be useful, for instance, when the token is exchanged in a trade.
-        final List<TokenState> inputs = tx.inputsOfType(TokenState.class);
-        final List<TokenState> outputs = tx.outputsOfType(TokenState.class);
-        final boolean hasAllPositiveQuantities =
-                inputs.stream().allMatch(it -> 0 < it.getQuantity()) &&
-                        outputs.stream().allMatch(it -> 0 < it.getQuantity());
-        final Set<PublicKey> allInputHolderKeys = inputs.stream()
-                .map(it -> it.getHolder().getOwningKey())
-                .collect(Collectors.toSet());
+        // Each list is walked once, and the checks below only read what was tallied.
+        // In parallel, each list is split in chunks that are tallied per issuer, and the tallies are merged per
+        // issuer. The sums and flags do not depend on how the list was split, so neither does the result.
+        final boolean parallel = Boolean.getBoolean(PARALLEL_PROPERTY);
+        final Tally inputs = new Tally(signers);
+        if (parallel && PARALLEL_THRESHOLD <= tx.getInputs().size()) {
+            inputs.merge(tallyInParallel(tx.getInputs().parallelStream().map(it -> it.getState().getData()), signers));
+        } else {
+            for (final StateAndRef<ContractState> it : tx.getInputs()) {
+                if (it.getState().getData() instanceof TokenState) inputs.add((TokenState) it.getState().getData());
+            }
+        }
+        final Tally outputs = new Tally(signers);
+        if (parallel && PARALLEL_THRESHOLD <= tx.getOutputs().size()) {
+            outputs.merge(tallyInParallel(tx.getOutputs().parallelStream().map(TransactionState::getData), signers));
+        } else {
+            for (final TransactionState<ContractState> it : tx.getOutputs()) {
+                if (it.getData() instanceof TokenState) outputs.add((TokenState) it.getData());
+            }
+        }
+        final boolean hasAllPositiveQuantities = inputs.allPositive && outputs.allPositive;
 
         if (command.getValue() instanceof Commands.Issue) {
             requireThat(req -> {
                 // Constraints on the shape of the transaction.
-                req.using("No tokens should be consumed, in inputs, when issuing.", inputs.isEmpty());
-                req.using("There should be issued tokens, in outputs.", !outputs.isEmpty());
+                req.using("No tokens should be consumed, in inputs, when issuing.", inputs.count == 0);
+                req.using("There should be issued tokens, in outputs.", outputs.count != 0);
 
                 // Constraints on the issued tokens themselves.
                 req.using("All quantities must be above 0.", hasAllPositiveQuantities);
 
                 // Constraints on the signers.
-                req.using("The issuers should sign.",
-                        command.getSigners().containsAll(outputs.stream()
-                                .map(it -> it.getIssuer().getOwningKey())
-                                .collect(Collectors.toSet())
-                        ));
+                req.using("The issuers should sign.", outputs.allIssuersSigned);
                 // We assume the owners need not sign although they are participants.
 
                 return null;
@@ -58,42 +80,48 @@ public final class TokenContract implements Contract {
         } else if (command.getValue() instanceof Commands.Move) {
             requireThat(req -> {
                 // Constraints on the shape of the transaction.
-                req.using("There should be tokens to move, in inputs.", !inputs.isEmpty());
-                req.using("There should be moved tokens, in outputs.", !outputs.isEmpty());
+                req.using("There should be tokens to move, in inputs.", inputs.count != 0);
+                req.using("There should be moved tokens, in outputs.", outputs.count != 0);
 
                 // Constraints on the redeemed tokens themselves.
                 req.using("All quantities must be above 0.", hasAllPositiveQuantities);
-                final Map<Party, Long> inputSums = TokenStateUtilities.mapSumByIssuer(inputs);
-                final Map<Party, Long> outputSums = TokenStateUtilities.mapSumByIssuer(outputs);
+                // We want to fail hard in case of overflow, as Math.addExact would.
+                if (inputs.overflowed || outputs.overflowed) throw new ArithmeticException("long overflow");
                 req.using("The list of issuers should be conserved.",
-                        inputSums.keySet().equals(outputSums.keySet()));
+                        inputs.sums.keySet().equals(outputs.sums.keySet()));
                 req.using("The sum of quantities for each issuer should be conserved.",
-                        inputSums.entrySet().stream()
-                                .allMatch(entry -> outputSums.get(entry.getKey()).equals(entry.getValue())));
+                        inputs.sums.entrySet().stream()
+                                .allMatch(entry -> outputs.sums.get(entry.getKey())[0] == entry.getValue()[0]));
 
                 // Constraints on the signers.
-                req.using("The current holders should sign.",
-                        command.getSigners().containsAll(allInputHolderKeys));
+                req.using("The current holders should sign.", inputs.allHoldersSigned);
 
                 return null;
             });
         } else if (command.getValue() instanceof Commands.Redeem) {
             requireThat(req -> {
                 // Constraints on the shape of the transaction.
-                req.using("There should be tokens to redeem, in inputs.", !inputs.isEmpty());
-                req.using("No tokens should be issued, in outputs, when redeeming.", outputs.isEmpty());
+                req.using("There should be tokens to redeem, in inputs.", inputs.count != 0);
 
                 // Constraints on the redeemed tokens themselves.
                 req.using("All quantities must be above 0.", hasAllPositiveQuantities);
 
+                // Constraints on the change, if any, so that a redeem does not need an exact sum in inputs.
+                if (outputs.count != 0) {
+                    req.using("The change should only be of the redeemed issuers.",
+                            inputs.sums.keySet().containsAll(outputs.sums.keySet()));
+                    req.using("The change should go back to the current holders.",
+                            inputs.holders.containsAll(outputs.holders));
+                    // We want to fail hard in case of overflow, as Math.addExact would.
+                    if (inputs.overflowed || outputs.overflowed) throw new ArithmeticException("long overflow");
+                    req.using("The change should be less than the inputs, for each issuer.",
+                            outputs.sums.entrySet().stream()
+                                    .allMatch(entry -> entry.getValue()[0] < inputs.sums.get(entry.getKey())[0]));
+                }
+
                 // Constraints on the signers.
-                req.using("The issuers should sign.",
-                        command.getSigners().containsAll(inputs.stream()
-                                .map(it -> it.getIssuer().getOwningKey())
-                                .collect(Collectors.toSet())
-                        ));
-                req.using("The current holders should sign.",
-                        command.getSigners().containsAll(allInputHolderKeys));
+                req.using("The issuers should sign.", inputs.allIssuersSigned);
+                req.using("The current holders should sign.", inputs.allHoldersSigned);
 
                 return null;
             });
@@ -102,6 +130,87 @@ public final class TokenContract implements Contract {
         }
     }
 
+    /**
+     * @param states A parallel stream, which is collected on the fork-join pool.
+     */
+    @NotNull
+    private static Tally tallyInParallel(
+            @NotNull final Stream<ContractState> states,
+            @NotNull final Set<PublicKey> signers) {
+        return states
+                .filter(TokenState.class::isInstance)
+                .map(TokenState.class::cast)
+                .collect(() -> new Tally(signers), Tally::add, Tally::merge);
+    }
+
+    /**
+     * What {@link #verify} needs to know about a list of token states, collected in a single pass.
+     * The sums per issuer are kept in mutable cells, so that adding a state does not allocate, and we do not need
+     * a concurrent collector for what is only a handful of issuers.
+     */
+    private static final class Tally {
+        @NotNull
+        private final Set<PublicKey> signers;
+        @NotNull
+        private final Map<Party, long[]> sums = new HashMap<>();
+        /**
+         * Only a handful too, and only a new one allocates.
+         */
+        @NotNull
+        private final Set<Party> holders = new HashSet<>();
+        private int count = 0;
+        private boolean allPositive = true;
+        private boolean overflowed = false;
+        private boolean allIssuersSigned = true;
+        private boolean allHoldersSigned = true;
+
+        private Tally(@NotNull final Set<PublicKey> signers) {
+            this.signers = signers;
+        }
+
+        private void add(@NotNull final TokenState state) {
+            count++;
+            final long quantity = state.getQuantity();
+            allPositive &= 0 < quantity;
+            final long[] sum = sums.get(state.getIssuer());
+            if (sum == null) {
+                sums.put(state.getIssuer(), new long[]{quantity});
+                // We only check the signature of an issuer the first time we see it.
+                allIssuersSigned &= signers.contains(state.getIssuer().getOwningKey());
+            } else {
+                addTo(sum, quantity);
+            }
+            if (holders.add(state.getHolder())) {
+                // Likewise for a holder.
+                allHoldersSigned &= signers.contains(state.getHolder().getOwningKey());
+            }
+        }
+
+        /**
+         * Adds what the other tally saw, as if its states had been added to this one.
+         */
+        private void merge(@NotNull final Tally other) {
+            count += other.count;
+            allPositive &= other.allPositive;
+            overflowed |= other.overflowed;
+            allIssuersSigned &= other.allIssuersSigned;
+            allHoldersSigned &= other.allHoldersSigned;
+            holders.addAll(other.holders);
+            other.sums.forEach((issuer, otherSum) -> {
+                final long[] sum = sums.get(issuer);
+                if (sum == null) sums.put(issuer, otherSum);
+                else addTo(sum, otherSum[0]);
+            });
+        }
+
+        private void addTo(@NotNull final long[] sum, final long quantity) {
+            final long added = sum[0] + quantity;
+            // Same overflow test as Math.addExact.
+            if (((sum[0] ^ added) & (quantity ^ added)) < 0) overflowed = true;
+            sum[0] = added;
+        }
+    }
+
     public interface Commands extends CommandData {
         class Issue implements Commands {
         }
@@ -0,0 +1,174 @@
+package com.template.states;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.vault.*;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * The table in which the vault keeps the {@link TokenState}s, so that we can filter them by issuer or holder, and
+ * order them by quantity, in the database instead of in our flows.
+ */
+public class TokenSchemaV1 extends MappedSchema {
+
+    public TokenSchemaV1() {
+        super(TokenSchema.class, 1, ImmutableList.of(PersistentToken.class));
+    }
+
+    /**
+     * So that the indexes declared on {@link PersistentToken} are created outside of dev mode too.
+     */
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "token-states.changelog-master";
+    }
+
+    /**
+     * The family of schemas, in case we need to evolve it.
+     */
+    public static class TokenSchema {
+    }
+
+    /**
+     * @return The value found in the issuer and holder columns for this party.
+     */
+    @NotNull
+    public static String nameOf(@NotNull final Party party) {
+        return party.getName().toString();
+    }
+
+    @NotNull
+    private static FieldInfo fieldOf(@NotNull final String name) {
+        try {
+            return QueryCriteriaUtils.getField(name, PersistentToken.class);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("The schema has no " + name, e);
+        }
+    }
+
+    /**
+     * As in the Corda documentation, the criteria are raw, because the builder does not know the entity type.
+     */
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private static QueryCriteria criteriaOf(@NotNull final CriteriaExpression expression) {
+        return new QueryCriteria.VaultCustomQueryCriteria(expression);
+    }
+
+    @NotNull
+    public static QueryCriteria issuedBy(@NotNull final Party issuer) {
+        return criteriaOf(Builder.equal(fieldOf("issuer"), nameOf(issuer)));
+    }
+
+    @NotNull
+    public static QueryCriteria heldBy(@NotNull final Party holder) {
+        return criteriaOf(Builder.equal(fieldOf("holder"), nameOf(holder)));
+    }
+
+    /**
+     * @return The criteria for a page whose other results are, for each issuer, the sum of its quantities followed by
+     * its name. So we can tell the issuers without loading the states.
+     */
+    @NotNull
+    public static QueryCriteria sumByIssuer() {
+        return criteriaOf(Builder.sum(fieldOf("quantity"), Collections.singletonList(fieldOf("issuer"))));
+    }
+
+    /**
+     * @return The criteria for a page whose only other result is the count of the states.
+     */
+    @NotNull
+    public static QueryCriteria count() {
+        return criteriaOf(Builder.count(fieldOf("quantity")));
+    }
+
+    /**
+     * The largest states first, so that fewer of them reach a given sum. Then by state ref, so that the pages do not
+     * overlap when quantities are equal.
+     */
+    @NotNull
+    public static Sort largestFirst() {
+        return byQuantity(Sort.Direction.DESC);
+    }
+
+    /**
+     * The smallest states first, which are the ones worth merging. Then by state ref, as in {@link #largestFirst()}.
+     */
+    @NotNull
+    public static Sort smallestFirst() {
+        return byQuantity(Sort.Direction.ASC);
+    }
+
+    @NotNull
+    private static Sort byQuantity(@NotNull final Sort.Direction direction) {
+        return new Sort(Arrays.asList(
+                new Sort.SortColumn(
+                        new SortAttribute.Custom(PersistentToken.class, "quantity"),
+                        direction),
+                new Sort.SortColumn(
+                        new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF),
+                        Sort.Direction.ASC)));
+    }
+
+    /**
+     * The table and its indexes are created by the changelog, which has to follow the declarations below.
+     */
+    @Entity
+    @Table(name = "token_states",
+            indexes = {
+                    // Serves the redeem selection, of one issuer and holder, largest first, and, by its prefix,
+                    // the lookups by issuer and holder.
+                    @Index(name = "token_quantity_idx", columnList = "issuer, holder, quantity"),
+                    @Index(name = "token_holder_idx", columnList = "holder")
+            })
+    public static class PersistentToken extends PersistentState {
+
+        /**
+         * The {@link net.corda.core.identity.CordaX500Name#toString()} of the issuer.
+         */
+        @Column(name = "issuer", nullable = false)
+        private String issuer;
+        /**
+         * The {@link net.corda.core.identity.CordaX500Name#toString()} of the holder.
+         */
+        @Column(name = "holder", nullable = false)
+        private String holder;
+        @Column(name = "quantity", nullable = false)
+        private long quantity;
+
+        /**
+         * Required by Hibernate.
+         */
+        public PersistentToken() {
+        }
+
+        public PersistentToken(@NotNull final TokenState token) {
+            this.issuer = nameOf(token.getIssuer());
+            this.holder = nameOf(token.getHolder());
+            this.quantity = token.getQuantity();
+        }
+
+        public String getIssuer() {
+            return issuer;
+        }
+
+        public String getHolder() {
+            return holder;
+        }
+
+        public long getQuantity() {
+            return quantity;
+        }
+    }
+}
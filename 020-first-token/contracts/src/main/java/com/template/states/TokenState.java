@@ -2,9 +2,11 @@ package com.template.states;
 
 import com.template.contracts.TokenContract;
 import net.corda.core.contracts.BelongsToContract;
-import net.corda.core.contracts.ContractState;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collections;
@@ -12,7 +14,7 @@ import java.util.List;
 import java.util.Objects;
 
 @BelongsToContract(TokenContract.class)
-public final class TokenState implements ContractState {
+public final class TokenState implements QueryableState {
 
     @NotNull
     private final Party issuer;
@@ -36,6 +38,19 @@ public final class TokenState implements ContractState {
         return Collections.singletonList(holder);
     }
 
+    @NotNull
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return Collections.singletonList(new TokenSchemaV1());
+    }
+
+    @NotNull
+    @Override
+    public PersistentState generateMappedObject(@NotNull final MappedSchema schema) {
+        if (schema instanceof TokenSchemaV1) return new TokenSchemaV1.PersistentToken(this);
+        throw new IllegalArgumentException("Unrecognised schema " + schema);
+    }
+
     @NotNull
     public Party getIssuer() {
         return issuer;
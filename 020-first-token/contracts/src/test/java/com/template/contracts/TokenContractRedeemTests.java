@@ -33,12 +33,76 @@ public class TokenContractRedeemTests {
     }
 
     @Test
-    public void redeemTransactionMustHaveNoOutputs() {
+    public void redeemTransactionMustHaveNoOutputsOfOtherIssuers() {
+        transaction(ledgerServices, tx -> {
+            tx.input(TOKEN_CONTRACT_ID, new TokenState(alice, bob, 10L));
+            tx.output(TOKEN_CONTRACT_ID, new TokenState(carly, bob, 5L));
+            tx.command(Arrays.asList(alice.getOwningKey(), bob.getOwningKey()), new TokenContract.Commands.Redeem());
+            tx.failsWith("The change should only be of the redeemed issuers.");
+            return null;
+        });
+    }
+
+    @Test
+    public void redeemTransactionMustHaveChangeLessThanInputs() {
         transaction(ledgerServices, tx -> {
             tx.input(TOKEN_CONTRACT_ID, new TokenState(alice, bob, 10L));
             tx.output(TOKEN_CONTRACT_ID, new TokenState(alice, bob, 10L));
             tx.command(Arrays.asList(alice.getOwningKey(), bob.getOwningKey()), new TokenContract.Commands.Redeem());
-            tx.failsWith("No tokens should be issued, in outputs, when redeeming.");
+            tx.failsWith("The change should be less than the inputs, for each issuer.");
+            return null;
+        });
+    }
+
+    @Test
+    public void redeemTransactionMustHaveChangeLessThanInputsForEachIssuer() {
+        transaction(ledgerServices, tx -> {
+            tx.input(TOKEN_CONTRACT_ID, new TokenState(alice, bob, 10L));
+            tx.input(TOKEN_CONTRACT_ID, new TokenState(carly, bob, 10L));
+            tx.output(TOKEN_CONTRACT_ID, new TokenState(alice, bob, 5L));
+            tx.output(TOKEN_CONTRACT_ID, new TokenState(carly, bob, 6L));
+            tx.output(TOKEN_CONTRACT_ID, new TokenState(carly, bob, 4L));
+            tx.command(
+                    Arrays.asList(alice.getOwningKey(), bob.getOwningKey(), carly.getOwningKey()),
+                    new TokenContract.Commands.Redeem());
+            tx.failsWith("The change should be less than the inputs, for each issuer.");
+            return null;
+        });
+    }
+
+    @Test
+    public void redeemTransactionMustGiveTheChangeBackToTheHolders() {
+        transaction(ledgerServices, tx -> {
+            tx.input(TOKEN_CONTRACT_ID, new TokenState(alice, bob, 10L));
+            tx.output(TOKEN_CONTRACT_ID, new TokenState(alice, carly, 5L));
+            tx.command(Arrays.asList(alice.getOwningKey(), bob.getOwningKey()), new TokenContract.Commands.Redeem());
+            tx.failsWith("The change should go back to the current holders.");
+            return null;
+        });
+    }
+
+    @Test
+    public void changeMustNotHaveAZeroQuantity() {
+        transaction(ledgerServices, tx -> {
+            tx.input(TOKEN_CONTRACT_ID, new TokenState(alice, bob, 10L));
+            tx.output(TOKEN_CONTRACT_ID, new TokenState(alice, bob, 0L));
+            tx.command(Arrays.asList(alice.getOwningKey(), bob.getOwningKey()), new TokenContract.Commands.Redeem());
+            tx.failsWith("All quantities must be above 0.");
+            return null;
+        });
+    }
+
+    @Test
+    public void canHaveChangeInRedeemTransaction() {
+        transaction(ledgerServices, tx -> {
+            tx.input(TOKEN_CONTRACT_ID, new TokenState(alice, bob, 10L));
+            tx.input(TOKEN_CONTRACT_ID, new TokenState(alice, carly, 20L));
+            tx.output(TOKEN_CONTRACT_ID, new TokenState(alice, bob, 3L));
+            tx.output(TOKEN_CONTRACT_ID, new TokenState(alice, carly, 4L));
+            tx.command(
+                    Arrays.asList(alice.getOwningKey(), bob.getOwningKey(), carly.getOwningKey()),
+                    new TokenContract.Commands.Redeem());
+            tx.verifies();
             return null;
         });
     }
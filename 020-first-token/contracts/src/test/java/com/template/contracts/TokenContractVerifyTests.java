@@ -0,0 +1,204 @@
+package com.template.contracts;
+
+import com.template.states.TokenState;
+import net.corda.core.contracts.*;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.testing.core.TestIdentity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.template.contracts.TokenContract.TOKEN_CONTRACT_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Calls {@link TokenContract#verify} directly on large transactions, without the overhead of the ledger DSL, as
+ * it happens on every node that resolves a back chain.
+ */
+public class TokenContractVerifyTests {
+
+    private final Party notary = new TestIdentity(new CordaX500Name("Notary", "London", "GB")).getParty();
+    private final Party alice = new TestIdentity(new CordaX500Name("Alice", "London", "GB")).getParty();
+    private final Party bob = new TestIdentity(new CordaX500Name("Bob", "New York", "US")).getParty();
+    private final Party carly = new TestIdentity(new CordaX500Name("Carly", "New York", "US")).getParty();
+    private final TokenContract contract = new TokenContract();
+
+    private final List<Party> manyIssuers = IntStream.range(0, 30)
+            .mapToObj(it -> new TestIdentity(new CordaX500Name("Issuer" + it, "London", "GB")).getParty())
+            .collect(Collectors.toList());
+
+    /**
+     * @return A move of count states from bob to carly, issued in turn by each of the issuers.
+     */
+    @NotNull
+    @SuppressWarnings("deprecation")
+    private LedgerTransaction createMove(final int count, @NotNull final List<Party> issuers) {
+        final SecureHash inputHash = SecureHash.randomSHA256();
+        final List<StateAndRef<ContractState>> inputs = new ArrayList<>(count);
+        final List<TransactionState<ContractState>> outputs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Party issuer = issuers.get(i % issuers.size());
+            inputs.add(new StateAndRef<>(
+                    new TransactionState<>(new TokenState(issuer, bob, 10L), TOKEN_CONTRACT_ID, notary),
+                    new StateRef(inputHash, i)));
+            outputs.add(new TransactionState<>(new TokenState(issuer, carly, 10L), TOKEN_CONTRACT_ID, notary));
+        }
+        final List<CommandWithParties<CommandData>> commands = Collections.singletonList(new CommandWithParties<>(
+                Collections.singletonList(bob.getOwningKey()),
+                Collections.emptyList(),
+                new TokenContract.Commands.Move()));
+        return new LedgerTransaction(inputs, outputs, commands, Collections.emptyList(),
+                SecureHash.randomSHA256(), notary, null, new PrivacySalt());
+    }
+
+    /**
+     * @return A move of count states from bob to carly, half of them issued by alice, the other half by carly.
+     */
+    @NotNull
+    private LedgerTransaction createMove(final int count) {
+        return createMove(count, Arrays.asList(alice, carly));
+    }
+
+    /**
+     * @return The same move, except that the first output has lost one token.
+     */
+    @NotNull
+    @SuppressWarnings("deprecation")
+    private LedgerTransaction loseOneToken(@NotNull final LedgerTransaction move) {
+        final List<TransactionState<ContractState>> outputs = new ArrayList<>(move.getOutputs());
+        final TokenState first = (TokenState) outputs.get(0).getData();
+        outputs.set(0, new TransactionState<>(
+                new TokenState(first.getIssuer(), first.getHolder(), first.getQuantity() - 1),
+                TOKEN_CONTRACT_ID, notary));
+        return new LedgerTransaction(move.getInputs(), outputs, move.getCommands(),
+                Collections.emptyList(), move.getId(), notary, null, new PrivacySalt());
+    }
+
+    /**
+     * Runs the action with the parallel verification on, and puts the property back as it was.
+     */
+    private static void inParallel(@NotNull final Runnable action) {
+        final String previous = System.getProperty(TokenContract.PARALLEL_PROPERTY);
+        System.setProperty(TokenContract.PARALLEL_PROPERTY, "true");
+        try {
+            action.run();
+        } finally {
+            if (previous == null) System.clearProperty(TokenContract.PARALLEL_PROPERTY);
+            else System.setProperty(TokenContract.PARALLEL_PROPERTY, previous);
+        }
+    }
+
+    @Nullable
+    private String failureOf(@NotNull final LedgerTransaction tx) {
+        try {
+            contract.verify(tx);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Test
+    public void verifiesALargeMove() {
+        contract.verify(createMove(10_000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsALargeMoveThatLosesOneToken() {
+        contract.verify(loseOneToken(createMove(10_000)));
+    }
+
+    @Test
+    public void parallelVerifiesALargeMoveOfManyIssuers() {
+        final LedgerTransaction move = createMove(10_000, manyIssuers);
+        inParallel(() -> contract.verify(move));
+    }
+
+    @Test
+    public void parallelFailsLikeSequential() {
+        final List<LedgerTransaction> failing = Arrays.asList(
+                loseOneToken(createMove(10_000, manyIssuers)),
+                // Too small to be forked.
+                loseOneToken(createMove(10, manyIssuers)));
+        for (final LedgerTransaction tx : failing) {
+            final String sequential = failureOf(tx);
+            assertNotNull(sequential);
+            final AtomicReference<String> parallel = new AtomicReference<>();
+            inParallel(() -> parallel.set(failureOf(tx)));
+            assertEquals(sequential, parallel.get());
+        }
+    }
+
+    /**
+     * Not a substitute for a proper harness, but enough to see that verification scales linearly with the states
+     * count.
+     */
+    @Ignore("Timing based, so it may fail on a busy machine. Run it by hand when changing the verification.")
+    @Test
+    public void benchmarkVerifyingMoves() {
+        final List<Long> nanosPerState = new ArrayList<>();
+        for (final int count : Arrays.asList(100, 10_000)) {
+            final LedgerTransaction move = createMove(count);
+            final int rounds = Math.max(10, 100_000 / count);
+            // Warm up.
+            for (int i = 0; i < rounds; i++) {
+                contract.verify(move);
+            }
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                contract.verify(move);
+            }
+            nanosPerState.add((System.nanoTime() - start) / rounds / count);
+        }
+        // A pass per state would be quadratic, i.e. a hundred times the cost per state.
+        assertTrue(nanosPerState.get(1) <= 10 * Math.max(1L, nanosPerState.get(0)));
+    }
+
+    /**
+     * Likewise, enough to see that the parallel verification pays off on a large move, when there are cores to spare.
+     */
+    @Ignore("Timing based, so it may fail on a busy machine. Run it by hand when changing the parallel verification.")
+    @Test
+    public void benchmarkVerifyingMovesOfManyIssuersInParallel() {
+        assumeTrue(1 < ForkJoinPool.getCommonPoolParallelism());
+        final LedgerTransaction move = createMove(10_000, manyIssuers);
+        final int rounds = 50;
+        final AtomicLong sequentialNanos = new AtomicLong();
+        final AtomicLong parallelNanos = new AtomicLong();
+        for (final boolean parallel : Arrays.asList(false, true)) {
+            final Runnable verifyAll = () -> {
+                // Warm up.
+                for (int i = 0; i < rounds; i++) {
+                    contract.verify(move);
+                }
+                final long start = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    contract.verify(move);
+                }
+                (parallel ? parallelNanos : sequentialNanos).set((System.nanoTime() - start) / rounds);
+            };
+            if (parallel) inParallel(verifyAll);
+            else verifyAll.run();
+        }
+        assertTrue(parallelNanos.get() < sequentialNanos.get());
+    }
+
+}
@@ -77,4 +77,14 @@ public class TokenStateTests {
         assertNotEquals(token1, token2);
         assertNotEquals(token1.hashCode(), token2.hashCode());
     }
+
+    @Test
+    public void mappedObjectHasTheIndexedColumns() {
+        final TokenState token = new TokenState(alice, bob, 2L);
+        final TokenSchemaV1.PersistentToken mapped = (TokenSchemaV1.PersistentToken)
+                token.generateMappedObject(new TokenSchemaV1());
+        assertEquals(alice.getName().toString(), mapped.getIssuer());
+        assertEquals(bob.getName().toString(), mapped.getHolder());
+        assertEquals(2L, mapped.getQuantity());
+    }
 }
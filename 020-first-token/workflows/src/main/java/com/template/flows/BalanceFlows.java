@@ -0,0 +1,99 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.states.TokenSchemaV1;
+import com.template.states.TokenState;
+import com.template.states.TokenStateUtilities;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.QueryCriteriaUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public interface BalanceFlows {
+
+    /**
+     * Reads the balances of a holder, per issuer, from {@link TokenBalanceService} when it is enabled, so that it
+     * can be polled frequently. Otherwise, it sums the states found in the vault.
+     * It only knows about the states that are in our vault.
+     */
+    @StartableByRPC
+    class AllBalances extends FlowLogic<Map<Party, Long>> {
+
+        @NotNull
+        private final Party holder;
+
+        public AllBalances(@NotNull final Party holder) {
+            //noinspection ConstantConditions
+            if (holder == null) throw new NullPointerException("holder cannot be null");
+            this.holder = holder;
+        }
+
+        @Suspendable
+        @Override
+        public Map<Party, Long> call() throws FlowException {
+            final TokenBalanceService balances = getServiceHub().cordaService(TokenBalanceService.class);
+            if (balances.isEnabled()) return balances.getBalances(holder);
+            return TokenStateUtilities.mapSumByIssuer(fetchAll(this, TokenSchemaV1.heldBy(holder)));
+        }
+    }
+
+    /**
+     * Like {@link AllBalances}, for a single issuer.
+     */
+    @StartableByRPC
+    class Balance extends FlowLogic<Long> {
+
+        @NotNull
+        private final Party holder;
+        @NotNull
+        private final Party issuer;
+
+        public Balance(@NotNull final Party holder, @NotNull final Party issuer) {
+            //noinspection ConstantConditions
+            if (holder == null) throw new NullPointerException("holder cannot be null");
+            //noinspection ConstantConditions
+            if (issuer == null) throw new NullPointerException("issuer cannot be null");
+            this.holder = holder;
+            this.issuer = issuer;
+        }
+
+        @Suspendable
+        @Override
+        public Long call() throws FlowException {
+            final TokenBalanceService balances = getServiceHub().cordaService(TokenBalanceService.class);
+            if (balances.isEnabled()) return balances.getBalance(holder, issuer);
+            // Summed as the pages come, without keeping the states.
+            return VaultPageIterator.of(
+                    getServiceHub().getVaultService(),
+                    TokenState.class,
+                    TokenSchemaV1.heldBy(holder).and(TokenSchemaV1.issuedBy(issuer)),
+                    QueryCriteriaUtils.DEFAULT_PAGE_SIZE)
+                    .stream()
+                    .mapToLong(it -> it.getState().getData().getQuantity())
+                    .reduce(0L, Math::addExact);
+        }
+    }
+
+    /**
+     * @return All the states that match, page after page.
+     */
+    @NotNull
+    static List<TokenState> fetchAll(@NotNull final FlowLogic<?> flow, @NotNull final QueryCriteria criteria) {
+        final List<TokenState> states = new ArrayList<>();
+        VaultPageIterator.of(
+                flow.getServiceHub().getVaultService(),
+                TokenState.class,
+                criteria,
+                QueryCriteriaUtils.DEFAULT_PAGE_SIZE)
+                .forEachRemaining(it -> states.add(it.getState().getData()));
+        return states;
+    }
+
+}
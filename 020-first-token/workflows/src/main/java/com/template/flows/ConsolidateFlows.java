@@ -0,0 +1,175 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.states.TokenSchemaV1;
+import com.template.states.TokenState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.flows.StartableByService;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.StatesNotAvailableException;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.QueryCriteriaUtils;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.NonEmptySet;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.ProgressTracker.Step;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public interface ConsolidateFlows {
+
+    /**
+     * Started by a holder, or by {@link TokenConsolidationService}, to merge its many small states of a given issuer
+     * into fewer large ones, so that later moves and redeems have fewer inputs.
+     * Each merge is a {@link MoveFlows.Initiator} transaction that takes at most batchSize states, the smallest first,
+     * and has a single output back to ourselves. We keep merging while we hold at least threshold states. As we are
+     * the only holder, there is no one to ask for a signature, or to inform.
+     * So as not to race with the moves and redeems of other flows, we skip the states they have soft-locked, and
+     * soft-lock the ones we merge. We stop, instead of failing, when another flow locks them first. Between merges,
+     * we sleep for pauseBetweenMerges, which frees the flow thread for the other flows.
+     */
+    @StartableByRPC
+    @StartableByService
+    class Initiator extends FlowLogic<List<SignedTransaction>> {
+
+        @NotNull
+        private final Party issuer;
+        private final int threshold;
+        private final int batchSize;
+        @NotNull
+        private final Duration pauseBetweenMerges;
+        @NotNull
+        private final ProgressTracker progressTracker;
+
+        private final static Step FETCHING_TOKEN_STATES = new Step("Fetching the smallest token states.");
+        private final static Step MERGING_TOKEN_STATES = new Step("Merging them into a single state.");
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(
+                    FETCHING_TOKEN_STATES,
+                    MERGING_TOKEN_STATES);
+        }
+
+        public Initiator(
+                @NotNull final Party issuer,
+                final int threshold,
+                final int batchSize,
+                @NotNull final Duration pauseBetweenMerges,
+                @NotNull final ProgressTracker progressTracker) {
+            //noinspection ConstantConditions
+            if (issuer == null) throw new NullPointerException("issuer cannot be null");
+            if (threshold < 2) throw new IllegalArgumentException("threshold must be at least 2");
+            if (batchSize < 2) throw new IllegalArgumentException("batchSize must be at least 2");
+            //noinspection ConstantConditions
+            if (pauseBetweenMerges == null) throw new NullPointerException("pauseBetweenMerges cannot be null");
+            if (pauseBetweenMerges.isNegative())
+                throw new IllegalArgumentException("pauseBetweenMerges cannot be negative");
+            //noinspection ConstantConditions
+            if (progressTracker == null) throw new NullPointerException("progressTracker cannot be null");
+            this.issuer = issuer;
+            this.threshold = threshold;
+            this.batchSize = batchSize;
+            this.pauseBetweenMerges = pauseBetweenMerges;
+            this.progressTracker = progressTracker;
+        }
+
+        public Initiator(
+                @NotNull final Party issuer,
+                final int threshold,
+                final int batchSize,
+                @NotNull final Duration pauseBetweenMerges) {
+            this(issuer, threshold, batchSize, pauseBetweenMerges, tracker());
+        }
+
+        public Initiator(@NotNull final Party issuer, final int threshold, final int batchSize) {
+            this(issuer, threshold, batchSize, Duration.ZERO);
+        }
+
+        @NotNull
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        /**
+         * @param smallestFirst A page of our states.
+         * @return The states that can go in a single transaction: those with the same notary as the first one, and
+         * only as many as their sum fits in a long.
+         */
+        @NotNull
+        private static List<StateAndRef<TokenState>> takeMergeable(
+                @NotNull final List<StateAndRef<TokenState>> smallestFirst) {
+            if (smallestFirst.isEmpty()) return Collections.emptyList();
+            final Party notary = smallestFirst.get(0).getState().getNotary();
+            final List<StateAndRef<TokenState>> mergeable = new ArrayList<>(smallestFirst.size());
+            long sum = 0L;
+            for (final StateAndRef<TokenState> it : smallestFirst) {
+                if (!it.getState().getNotary().equals(notary)) continue;
+                final long quantity = it.getState().getData().getQuantity();
+                if (Long.MAX_VALUE - sum < quantity) break;
+                sum += quantity;
+                mergeable.add(it);
+            }
+            return mergeable;
+        }
+
+        @Suspendable
+        @Override
+        public List<SignedTransaction> call() throws FlowException {
+            final Party me = getOurIdentity();
+            final QueryCriteria tokenCriteria = new QueryCriteria.VaultQueryCriteria()
+                    .withSoftLockingCondition(new QueryCriteria.SoftLockingCondition(
+                            QueryCriteria.SoftLockingType.UNLOCKED_AND_SPECIFIED,
+                            Collections.singletonList(getRunId().getUuid())))
+                    .and(TokenSchemaV1.heldBy(me))
+                    .and(TokenSchemaV1.issuedBy(issuer));
+            final List<SignedTransaction> merges = new ArrayList<>();
+            while (true) {
+                if (!merges.isEmpty() && !pauseBetweenMerges.isZero()) sleep(pauseBetweenMerges);
+                progressTracker.setCurrentStep(FETCHING_TOKEN_STATES);
+                // The merged states are consumed, so the smallest ones are always on the first page.
+                final Vault.Page<TokenState> page = getServiceHub().getVaultService().queryBy(
+                        TokenState.class,
+                        tokenCriteria,
+                        new PageSpecification(QueryCriteriaUtils.DEFAULT_PAGE_NUM, batchSize),
+                        TokenSchemaV1.smallestFirst());
+                if (page.getTotalStatesAvailable() < threshold) break;
+                final List<StateAndRef<TokenState>> mergeable = takeMergeable(page.getStates());
+                // Each merge has to reduce the count, or we would never stop.
+                if (mergeable.size() < 2) break;
+                final long sum = mergeable.stream()
+                        .mapToLong(it -> it.getState().getData().getQuantity())
+                        .sum();
+
+                progressTracker.setCurrentStep(MERGING_TOKEN_STATES);
+                final List<StateRef> refs = mergeable.stream()
+                        .map(StateAndRef::getRef)
+                        .collect(Collectors.toList());
+                try {
+                    getServiceHub().getVaultService().softLockReserve(getRunId().getUuid(), NonEmptySet.copyOf(refs));
+                } catch (StatesNotAvailableException e) {
+                    // Another flow is about to spend them, it goes first.
+                    getLogger().debug("Stopped consolidating, states locked by another flow", e);
+                    break;
+                }
+                merges.add(subFlow(new MoveFlows.Initiator(
+                        mergeable,
+                        Collections.singletonList(new TokenState(issuer, me, sum)))));
+            }
+            return merges;
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package com.template.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.template.contracts.TokenContract;
 import com.template.contracts.TokenContract.Commands.Issue;
 import com.template.states.TokenState;
@@ -16,8 +17,12 @@ import net.corda.core.utilities.ProgressTracker;
 import net.corda.core.utilities.ProgressTracker.Step;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public interface IssueFlows {
@@ -152,6 +157,128 @@ public interface IssueFlows {
     }
 
 
+    /**
+     * Started by the {@link TokenState#getIssuer} to issue to a great many holders, as in a payroll, where a single
+     * transaction would be too large to be notarised.
+     * - The states are split into chunks of at most maxOutputsPerTx, each in its own transaction.
+     * - There is a single session per distinct holder, which is told upfront how many of the chunks concern it, and
+     * then receives only those. So it costs a single session initiation per holder, whatever the number of chunks.
+     * The chunks are finalised one after the other, as a flow cannot run sub-flows concurrently. To have chunks
+     * notarised in parallel, start more than one of these flows.
+     */
+    @InitiatingFlow
+    @StartableByRPC
+    class BatchInitiator extends FlowLogic<List<SignedTransaction>> {
+
+        public static final int DEFAULT_MAX_OUTPUTS_PER_TX = 500;
+
+        @NotNull
+        private final List<Pair<Party, Long>> heldQuantities;
+        private final int maxOutputsPerTx;
+        @NotNull
+        private final ProgressTracker progressTracker;
+
+        private final static Step INFORMING_HOLDERS = new Step("Telling each holder how many transactions to expect.");
+        private final static Step GENERATING_TRANSACTION = new Step("Generating the transaction of a chunk.");
+        private final static Step VERIFYING_TRANSACTION = new Step("Verifying contract constraints.");
+        private final static Step SIGNING_TRANSACTION = new Step("Signing transaction with our private key.");
+        private final static Step FINALISING_TRANSACTION = new Step("Obtaining notary signature and recording transaction.");
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(
+                    INFORMING_HOLDERS,
+                    GENERATING_TRANSACTION,
+                    VERIFYING_TRANSACTION,
+                    SIGNING_TRANSACTION,
+                    FINALISING_TRANSACTION);
+        }
+
+        public BatchInitiator(@NotNull final List<Pair<Party, Long>> heldQuantities, final int maxOutputsPerTx) {
+            //noinspection ConstantConditions
+            if (heldQuantities == null) throw new NullPointerException("heldQuantities cannot be null");
+            if (heldQuantities.isEmpty()) throw new IllegalArgumentException("heldQuantities cannot be empty");
+            final boolean noneZero = heldQuantities.stream().noneMatch(heldQuantity -> heldQuantity.getValue() <= 0);
+            if (!noneZero) throw new IllegalArgumentException("heldQuantities must all be above 0");
+            if (maxOutputsPerTx < 1) throw new IllegalArgumentException("maxOutputsPerTx must be at least 1");
+            this.heldQuantities = ImmutableList.copyOf(heldQuantities);
+            this.maxOutputsPerTx = maxOutputsPerTx;
+            this.progressTracker = tracker();
+        }
+
+        public BatchInitiator(@NotNull final List<Pair<Party, Long>> heldQuantities) {
+            this(heldQuantities, DEFAULT_MAX_OUTPUTS_PER_TX);
+        }
+
+        @NotNull
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public List<SignedTransaction> call() throws FlowException {
+            final Party issuer = getOurIdentity();
+            final Party notary = getServiceHub().getNetworkMapCache().getNotary(Constants.desiredNotary);
+            if (notary == null) {
+                throw new FlowException("The desired notary is not known: " + Constants.desiredNotary.toString());
+            }
+            final List<List<Pair<Party, Long>>> chunks = Lists.partition(heldQuantities, maxOutputsPerTx);
+
+            progressTracker.setCurrentStep(INFORMING_HOLDERS);
+            // In how many chunks each holder, other than us, appears. In order of first appearance.
+            final Map<Party, Integer> chunkCounts = new LinkedHashMap<>();
+            for (final List<Pair<Party, Long>> chunk : chunks) {
+                chunk.stream()
+                        .map(Pair::getKey)
+                        .distinct()
+                        .filter(it -> !it.equals(issuer))
+                        .forEach(it -> chunkCounts.merge(it, 1, Integer::sum));
+            }
+            final Map<Party, FlowSession> holderSessions = new HashMap<>(chunkCounts.size());
+            for (final Map.Entry<Party, Integer> entry : chunkCounts.entrySet()) {
+                final FlowSession session = initiateFlow(entry.getKey());
+                // A send does not wait for the holder, so they are all informed without a round trip each.
+                session.send(entry.getValue());
+                holderSessions.put(entry.getKey(), session);
+            }
+
+            final List<SignedTransaction> notarisedTxs = new ArrayList<>(chunks.size());
+            for (final List<Pair<Party, Long>> chunk : chunks) {
+                progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+                final TransactionBuilder txBuilder = new TransactionBuilder(notary)
+                        .addCommand(new Command<>(new Issue(), issuer.getOwningKey()));
+                for (final Pair<Party, Long> it : chunk) {
+                    txBuilder.addOutputState(
+                            new TokenState(issuer, it.getKey(), it.getValue()),
+                            TokenContract.TOKEN_CONTRACT_ID);
+                }
+
+                progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
+                txBuilder.verify(getServiceHub());
+
+                progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+                final SignedTransaction fullySignedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+                progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+                // Only the holders of this chunk are sent this transaction, as they only expect those.
+                final List<FlowSession> chunkSessions = chunk.stream()
+                        .map(Pair::getKey)
+                        .distinct()
+                        .filter(it -> !it.equals(issuer))
+                        .map(holderSessions::get)
+                        .collect(Collectors.toList());
+                final SignedTransaction notarised = subFlow(new FinalityFlow(fullySignedTx, chunkSessions));
+                // As in Initiator, to keep track of the total supply.
+                getServiceHub().recordTransactions(StatesToRecord.ALL_VISIBLE, ImmutableList.of(notarised));
+                notarisedTxs.add(notarised);
+            }
+            return notarisedTxs;
+        }
+    }
+
+
     @InitiatedBy(Initiator.class)
     class Responder extends FlowLogic<SignedTransaction> {
 
@@ -170,4 +297,29 @@ public interface IssueFlows {
         }
     }
 
+    @InitiatedBy(BatchInitiator.class)
+    class BatchResponder extends FlowLogic<List<SignedTransaction>> {
+
+        @NotNull
+        private final FlowSession counterpartySession;
+
+        public BatchResponder(@NotNull final FlowSession counterpartySession) {
+            this.counterpartySession = counterpartySession;
+        }
+
+        @Suspendable
+        @Override
+        public List<SignedTransaction> call() throws FlowException {
+            final int chunkCount = counterpartySession.receive(Integer.class).unwrap(it -> {
+                if (it < 1) throw new FlowException("The chunk count must be at least 1");
+                return it;
+            });
+            final List<SignedTransaction> received = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                received.add(subFlow(new ReceiveFinalityFlow(counterpartySession)));
+            }
+            return received;
+        }
+    }
+
 }
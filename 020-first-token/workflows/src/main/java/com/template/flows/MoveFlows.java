@@ -7,8 +7,10 @@ import com.template.states.TokenState;
 import net.corda.core.contracts.AttachmentResolutionException;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
 import net.corda.core.contracts.TransactionResolutionException;
 import net.corda.core.crypto.SecureHash;
+import net.corda.core.crypto.TransactionSignature;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
 import net.corda.core.serialization.CordaSerializable;
@@ -16,8 +18,11 @@ import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 import net.corda.core.utilities.ProgressTracker.Step;
+import net.corda.core.utilities.UntrustworthyData;
 import org.jetbrains.annotations.NotNull;
 
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
 import java.security.SignatureException;
 import java.util.ArrayList;
 import java.util.List;
@@ -28,16 +33,22 @@ public interface MoveFlows {
 
     /**
      * The different transaction roles expected of the responder.
-     * A signer needs to sign, a participant only needs to receive the result.
+     * A signer needs to sign, a participant only needs to receive the result. A batch signer signs too, but receives
+     * the transaction along with its role, instead of through {@link CollectSignaturesFlow}.
      */
     @CordaSerializable
-    enum TransactionRole {SIGNER, PARTICIPANT}
+    enum TransactionRole {SIGNER, PARTICIPANT, BATCH_SIGNER}
 
     /**
      * Started by a {@link TokenState#getHolder} to move multiple states where it is one of the holders.
      * Because it is an {@link InitiatingFlow}, its counterpart flow {@link Responder} is called automatically.
      * This constructor would be called by RPC or by {@link FlowLogic#subFlow}. In particular one that, given sums,
      * fetches states in the vault.
+     * By default, the partly signed transaction goes to all the signers at once, and their signatures are received
+     * in one batch, so that collecting them takes about one round trip instead of one per signer. Only the signers
+     * that miss part of the back chain are then sent it, one after the other. With batchSignatures false, the
+     * signatures are collected by {@link CollectSignaturesFlow}, one signer after the other.
+     * In both cases, {@link FinalityFlow} still sends the transaction to each counterparty in turn.
      */
     @InitiatingFlow
     @StartableByRPC
@@ -47,6 +58,7 @@ public interface MoveFlows {
         private final List<StateAndRef<TokenState>> inputTokens;
         @NotNull
         private final List<TokenState> outputTokens;
+        private final boolean batchSignatures;
         @NotNull
         private final ProgressTracker progressTracker;
 
@@ -82,6 +94,7 @@ public interface MoveFlows {
         public Initiator(
                 @NotNull final List<StateAndRef<TokenState>> inputTokens,
                 @NotNull final List<TokenState> outputTokens,
+                final boolean batchSignatures,
                 @NotNull final ProgressTracker progressTracker) {
             //noinspection ConstantConditions
             if (inputTokens == null) throw new NullPointerException("inputTokens cannot be null");
@@ -95,12 +108,25 @@ public interface MoveFlows {
             if (progressTracker == null) throw new NullPointerException("progressTracker cannot be null");
             this.inputTokens = inputTokens;
             this.outputTokens = outputTokens;
+            this.batchSignatures = batchSignatures;
             this.progressTracker = progressTracker;
         }
 
+        public Initiator(@NotNull final List<StateAndRef<TokenState>> inputTokens,
+                         @NotNull final List<TokenState> outputTokens,
+                         @NotNull final ProgressTracker progressTracker) {
+            this(inputTokens, outputTokens, true, progressTracker);
+        }
+
+        public Initiator(@NotNull final List<StateAndRef<TokenState>> inputTokens,
+                         @NotNull final List<TokenState> outputTokens,
+                         final boolean batchSignatures) {
+            this(inputTokens, outputTokens, batchSignatures, tracker());
+        }
+
         public Initiator(@NotNull final List<StateAndRef<TokenState>> inputTokens,
                          @NotNull final List<TokenState> outputTokens) {
-            this(inputTokens, outputTokens, tracker());
+            this(inputTokens, outputTokens, true);
         }
 
         @NotNull
@@ -155,19 +181,6 @@ public interface MoveFlows {
                     .filter(it -> !it.equals(getOurIdentity()))
                     .map(this::initiateFlow)
                     .collect(Collectors.toList());
-            // Prime these responders to act in a signer type of way.
-            // We need to use `for` instead of `.forEach` because we would need to annotate the lambda with
-            // @Suspendable.
-            for (final FlowSession it : signerFlows) {
-                it.send(TransactionRole.SIGNER);
-            }
-            final SignedTransaction fullySignedTx = signerFlows.isEmpty() ? partlySignedTx :
-                    subFlow(new CollectSignaturesFlow(
-                            partlySignedTx,
-                            signerFlows,
-                            GATHERING_SIGS.childProgressTracker()));
-
-            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
             // The new holders that are not signers and still need to be informed.
             final List<FlowSession> newHolderFlows = outputTokens.stream()
                     .map(TokenState::getHolder)
@@ -176,12 +189,31 @@ public interface MoveFlows {
                     .filter(it -> !allSigners.contains(it))
                     .map(this::initiateFlow)
                     .collect(Collectors.toList());
-            // Prime these responders to act in a holder type of way.
+            // Prime all these responders, signers and new holders alike, before we wait on any of them. A send does
+            // not wait for the other side, so, when batching, all the signers work on the transaction at the same
+            // time.
             // We need to use `for` instead of `.forEach` because we would need to annotate the lambda with
             // @Suspendable.
+            for (final FlowSession it : signerFlows) {
+                if (batchSignatures) {
+                    it.send(TransactionRole.BATCH_SIGNER);
+                    it.send(partlySignedTx);
+                } else {
+                    it.send(TransactionRole.SIGNER);
+                }
+            }
             for (final FlowSession it : newHolderFlows) {
                 it.send(TransactionRole.PARTICIPANT);
             }
+            final SignedTransaction fullySignedTx;
+            if (signerFlows.isEmpty()) fullySignedTx = partlySignedTx;
+            else if (batchSignatures) fullySignedTx = collectInOneBatch(partlySignedTx, signerFlows);
+            else fullySignedTx = subFlow(new CollectSignaturesFlow(
+                    partlySignedTx,
+                    signerFlows,
+                    GATHERING_SIGS.childProgressTracker()));
+
+            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
             final List<FlowSession> allFlows = new ArrayList<>(signerFlows);
             allFlows.addAll(newHolderFlows);
             return subFlow(new FinalityFlow(
@@ -190,6 +222,63 @@ public interface MoveFlows {
                     allFlows,
                     FINALISING_TRANSACTION.childProgressTracker()));
         }
+
+        /**
+         * The signers already have the transaction. An empty answer means that the signer misses part of the back
+         * chain, in which case it gets it with {@link SendTransactionFlow} before it signs.
+         */
+        @Suspendable
+        @NotNull
+        private SignedTransaction collectInOneBatch(
+                @NotNull final SignedTransaction partlySignedTx,
+                @NotNull final List<FlowSession> signerFlows) throws FlowException {
+            final SecureHash txId = partlySignedTx.getId();
+            final List<TransactionSignature> signatures = new ArrayList<>(signerFlows.size());
+            final List<FlowSession> missingChainFlows = new ArrayList<>();
+            @SuppressWarnings("rawtypes") final List<UntrustworthyData<List>> answers =
+                    receiveAll(List.class, signerFlows, false);
+            for (int i = 0; i < signerFlows.size(); i++) {
+                final List<TransactionSignature> received = checkSignatures(
+                        answers.get(i), signerFlows.get(i).getCounterparty(), txId);
+                if (received.isEmpty()) missingChainFlows.add(signerFlows.get(i));
+                else signatures.addAll(received);
+            }
+            for (final FlowSession it : missingChainFlows) {
+                subFlow(new SendTransactionFlow(it, partlySignedTx));
+                final List<TransactionSignature> received = checkSignatures(
+                        it.receive(List.class), it.getCounterparty(), txId);
+                if (received.isEmpty()) throw new FlowException(it.getCounterparty() + " did not sign");
+                signatures.addAll(received);
+            }
+            return partlySignedTx.withAdditionalSignatures(signatures);
+        }
+
+        /**
+         * @return The signatures, all valid and by the signer.
+         */
+        @NotNull
+        private static List<TransactionSignature> checkSignatures(
+                @SuppressWarnings("rawtypes") @NotNull final UntrustworthyData<List> answer,
+                @NotNull final Party signer,
+                @NotNull final SecureHash txId) throws FlowException {
+            return answer.unwrap(received -> {
+                final List<TransactionSignature> signatures = new ArrayList<>(received.size());
+                for (final Object it : received) {
+                    if (!(it instanceof TransactionSignature))
+                        throw new FlowException(signer + " did not send signatures");
+                    final TransactionSignature signature = (TransactionSignature) it;
+                    if (!signature.getBy().equals(signer.getOwningKey()))
+                        throw new FlowException(signer + " signed with another key");
+                    try {
+                        signature.verify(txId);
+                    } catch (GeneralSecurityException e) {
+                        throw new FlowException(signer + " sent an invalid signature", e);
+                    }
+                    signatures.add(signature);
+                }
+                return signatures;
+            });
+        }
     }
 
     class Responder extends FlowLogic<SignedTransaction> {
@@ -250,24 +339,15 @@ public interface MoveFlows {
                     final SignTransactionFlow signTransactionFlow = new SignTransactionFlow(counterpartySession) {
                         @Override
                         protected void checkTransaction(@NotNull SignedTransaction stx) throws FlowException {
-                            // Notice that there is still a security risk here as my node can be asked to sign
-                            // without my human knowledge.
-                            // I must be relevant. We don't like signing irrelevant transactions.
-                            final boolean relevant;
-                            try {
-                                relevant = stx.toLedgerTransaction(getServiceHub(), false)
-                                        .inputsOfType(TokenState.class)
-                                        .stream()
-                                        .anyMatch(it -> it.getHolder().equals(getOurIdentity()));
-                            } catch (SignatureException | AttachmentResolutionException | TransactionResolutionException ex) {
-                                throw new FlowException(ex);
-                            }
-                            if (!relevant) throw new FlowException("I must be relevant.");
+                            checkRelevant(stx);
                         }
                     };
                     txId = subFlow(signTransactionFlow).getId();
                 }
                 break;
+                case BATCH_SIGNER:
+                    txId = signInBatch();
+                    break;
                 default:
                     throw new FlowException("Unexpected value: " + myRole);
             }
@@ -275,6 +355,62 @@ public interface MoveFlows {
             progressTracker.setCurrentStep(FINALISING_TRANSACTION);
             return subFlow(new ReceiveFinalityFlow(counterpartySession, txId));
         }
+
+        /**
+         * The counterpart of {@link Initiator#collectInOneBatch}. When we have the back chain, we verify and sign
+         * without any further exchange. Otherwise, we answer with no signatures, and receive the transaction again,
+         * with its back chain, as {@link SignTransactionFlow} would.
+         * @return The id of the signed transaction.
+         */
+        @Suspendable
+        @NotNull
+        private SecureHash signInBatch() throws FlowException {
+            final SignedTransaction received = counterpartySession.receive(SignedTransaction.class).unwrap(it -> it);
+            final SignedTransaction stx;
+            if (hasBackChain(received)) {
+                try {
+                    received.verify(getServiceHub(), false);
+                } catch (SignatureException | AttachmentResolutionException | TransactionResolutionException ex) {
+                    throw new FlowException(ex);
+                }
+                stx = received;
+            } else {
+                counterpartySession.send(new ArrayList<TransactionSignature>(0));
+                stx = subFlow(new ReceiveTransactionFlow(counterpartySession, false));
+                if (!stx.getId().equals(received.getId())) throw new FlowException("Not the same transaction.");
+            }
+            checkRelevant(stx);
+            final List<TransactionSignature> signatures = new ArrayList<>(1);
+            for (final PublicKey key : getServiceHub().getKeyManagementService()
+                    .filterMyKeys(stx.getRequiredSigningKeys())) {
+                signatures.add(getServiceHub().createSignature(stx, key));
+            }
+            counterpartySession.send(signatures);
+            return stx.getId();
+        }
+
+        private boolean hasBackChain(@NotNull final SignedTransaction stx) {
+            final List<StateRef> refs = new ArrayList<>(stx.getInputs());
+            refs.addAll(stx.getReferences());
+            return refs.stream().allMatch(it ->
+                    getServiceHub().getValidatedTransactions().getTransaction(it.getTxhash()) != null);
+        }
+
+        private void checkRelevant(@NotNull final SignedTransaction stx) throws FlowException {
+            // Notice that there is still a security risk here as my node can be asked to sign
+            // without my human knowledge.
+            // I must be relevant. We don't like signing irrelevant transactions.
+            final boolean relevant;
+            try {
+                relevant = stx.toLedgerTransaction(getServiceHub(), false)
+                        .inputsOfType(TokenState.class)
+                        .stream()
+                        .anyMatch(it -> it.getHolder().equals(getOurIdentity()));
+            } catch (SignatureException | AttachmentResolutionException | TransactionResolutionException ex) {
+                throw new FlowException(ex);
+            }
+            if (!relevant) throw new FlowException("I must be relevant.");
+        }
     }
 
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ package com.template.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.google.common.collect.ImmutableList;
+import com.template.contracts.TokenContract;
+import com.template.states.TokenSchemaV1;
 import com.template.states.TokenState;
 import javafx.util.Pair;
 import net.corda.core.contracts.AttachmentResolutionException;
@@ -11,9 +13,9 @@ import net.corda.core.contracts.TransactionResolutionException;
 import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.vault.PageSpecification;
 import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.node.services.vault.QueryCriteriaUtils;
+import net.corda.core.node.services.vault.Sort;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
@@ -41,6 +43,11 @@ public interface RedeemFlows {
     class Initiator extends FlowLogic<SignedTransaction> {
         @NotNull
         private final List<StateAndRef<TokenState>> inputTokens;
+        /**
+         * What goes back to the holders in the same transaction, so that the inputs need not be of the exact sum.
+         */
+        @NotNull
+        private final List<TokenState> changeTokens;
         @NotNull
         private final ProgressTracker progressTracker;
 
@@ -73,16 +80,32 @@ public interface RedeemFlows {
         // By requiring an exact list of states, this flow assures absolute precision at the expense of
         // user-friendliness.
         public Initiator(@NotNull final List<StateAndRef<TokenState>> inputTokens,
+                         @NotNull final List<TokenState> changeTokens,
                          @NotNull final ProgressTracker progressTracker) {
             //noinspection ConstantConditions
             if (inputTokens == null) throw new NullPointerException("inputTokens cannot be null");
             if (inputTokens.isEmpty()) throw new IllegalArgumentException("inputTokens cannot be empty");
             //noinspection ConstantConditions
+            if (changeTokens == null) throw new NullPointerException("changeTokens cannot be null");
+            final boolean noneZero = changeTokens.stream().noneMatch(changeToken -> changeToken.getQuantity() <= 0);
+            if (!noneZero) throw new IllegalArgumentException("changeTokens quantities must all be above 0");
+            //noinspection ConstantConditions
             if (progressTracker == null) throw new NullPointerException("progressTracker cannot be null");
             this.inputTokens = ImmutableList.copyOf(inputTokens);
+            this.changeTokens = ImmutableList.copyOf(changeTokens);
             this.progressTracker = progressTracker;
         }
 
+        public Initiator(@NotNull final List<StateAndRef<TokenState>> inputTokens,
+                         @NotNull final ProgressTracker progressTracker) {
+            this(inputTokens, Collections.emptyList(), progressTracker);
+        }
+
+        public Initiator(@NotNull final List<StateAndRef<TokenState>> inputTokens,
+                         @NotNull final List<TokenState> changeTokens) {
+            this(inputTokens, changeTokens, tracker());
+        }
+
         public Initiator(@NotNull final List<StateAndRef<TokenState>> inputTokens) {
             this(inputTokens, tracker());
         }
@@ -122,6 +145,7 @@ public interface RedeemFlows {
             final TransactionBuilder txBuilder = new TransactionBuilder(notary)
                     .addCommand(txCommand);
             inputTokens.forEach(txBuilder::addInputState);
+            changeTokens.forEach(it -> txBuilder.addOutputState(it, TokenContract.TOKEN_CONTRACT_ID));
 
             progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
             txBuilder.verify(getServiceHub());
@@ -132,6 +156,7 @@ public interface RedeemFlows {
 
             progressTracker.setCurrentStep(GATHERING_SIGS);
             // We need to gather the signatures of all issuers and all holders, except ourselves.
+            // The change goes back to the holders, who are all signers, so there is no one else to inform.
             final List<FlowSession> otherFlows = allSigners.stream()
                     // Remove myself.
                     .filter(it -> !it.equals(getOurIdentity()))
@@ -246,91 +271,109 @@ public interface RedeemFlows {
 
     /**
      * This class associates a list of ${@link TokenState} and the sum of their ${@link TokenState#getQuantity}. This
-     * helps us avoid constant recalculation.
+     * helps us avoid constant recalculation. It is mutable, so that adding a state is O(1) instead of a copy of the
+     * list, and it stops accepting states once it has reached the maximum sum.
      */
     class StateAccumulator {
         final private long maximumSum;
-        final public long sum;
+        private long sum;
         @NotNull
-        final public List<StateAndRef<TokenState>> states;
+        final private List<StateAndRef<TokenState>> states;
 
         public StateAccumulator(final long maximumSum) {
-            this(maximumSum, Collections.emptyList());
+            this.maximumSum = maximumSum;
+            this.sum = 0L;
+            this.states = new ArrayList<>();
         }
 
-        public StateAccumulator(final long maximumSum, @NotNull final List<StateAndRef<TokenState>> states) {
-            this(
-                    maximumSum,
-                    states.stream().reduce(0L,
-                            (sum, state) -> Math.addExact(sum, state.getState().getData().getQuantity()),
-                            Math::addExact),
-                    states);
+        public long getSum() {
+            return sum;
         }
 
-        private StateAccumulator(
-                final long maximumSum,
-                final long sum,
-                @NotNull final List<StateAndRef<TokenState>> states) {
-            this.maximumSum = maximumSum;
-            this.sum = sum;
-            this.states = ImmutableList.copyOf(states);
+        /**
+         * @return A copy of the states accumulated so far.
+         */
+        @NotNull
+        public List<StateAndRef<TokenState>> getStates() {
+            return ImmutableList.copyOf(states);
         }
 
         /**
-         * Joins 2 accumulators.
+         * @return Whether the current sum has reached the max sum given.
          */
-        @NotNull
-        public StateAccumulator plus(@NotNull final StateAccumulator other) {
-            if (other.states.size() == 0) return this;
-            final StateAndRef<TokenState> first = other.states.get(0);
-            return this
-                    .plus(first)
-                    .plus(other.minus(first));
+        public boolean isFull() {
+            return maximumSum <= sum;
         }
 
         /**
          * Add a state only if the current sum is strictly below the max sum given,
          * and update the sum as we do.
+         * @return Whether the state was added.
          */
-        @NotNull
-        public StateAccumulator plus(@NotNull final StateAndRef<TokenState> state) {
-            if (maximumSum <= sum) return this;
-            final List<StateAndRef<TokenState>> joined = new ArrayList<>(states);
-            joined.add(state);
-            return new StateAccumulator(
-                    maximumSum,
-                    Math.addExact(sum, state.getState().getData().getQuantity()),
-                    joined);
+        public boolean add(@NotNull final StateAndRef<TokenState> state) {
+            if (isFull()) return false;
+            sum = Math.addExact(sum, state.getState().getData().getQuantity());
+            states.add(state);
+            return true;
         }
 
         /**
-         * Remove a state if it is found in the list. And update the sum as we do.
+         * Adds the states in order, and stops at the first one that is not needed.
+         * @return Whether the max sum has been reached.
          */
-        @NotNull
-        public StateAccumulator minus(@NotNull final StateAndRef<TokenState> state) {
-            if (!states.contains(state)) throw new IllegalArgumentException("State not found");
-            return new StateAccumulator(
-                    maximumSum,
-                    Math.subtractExact(sum, state.getState().getData().getQuantity()),
-                    states.stream().filter(it -> !it.equals(state)).collect(Collectors.toList())
-            );
+        public boolean addAll(@NotNull final Iterable<StateAndRef<TokenState>> states) {
+            for (final StateAndRef<TokenState> state : states) {
+                if (!add(state)) break;
+            }
+            return isFull();
         }
     }
 
+    /**
+     * Goes through the pages with a {@link VaultPageIterator}, so that the stack stays flat however large the vault.
+     * Only the states that are needed are kept, each page is dropped as soon as it has been accumulated, and we stop
+     * fetching as soon as we have enough.
+     * @param wantedSum The sum to reach.
+     * @param pageSize The number of states to fetch at a time.
+     * @param fetchPage Returns the states of a given page, possibly empty when there are no more.
+     */
+    @NotNull
+    static StateAccumulator fetchWorthAtLeast(
+            final long wantedSum,
+            final int pageSize,
+            @NotNull final VaultPageIterator.PageFetcher<TokenState> fetchPage)
+            throws FlowException {
+        final StateAccumulator accumulated = new StateAccumulator(wantedSum);
+        final VaultPageIterator<TokenState> states = new VaultPageIterator<>(fetchPage, pageSize);
+        while (!accumulated.isFull()) {
+            if (!states.hasNext()) throw new FlowException("Not enough states to reach sum.");
+            accumulated.add(states.next());
+        }
+        return accumulated;
+    }
 
     /**
      * Allows to redeem a specific quantity of fungible tokens, as it assists in fetching them in the vault.
+     * When the fetched states are worth more than the quantity, the change goes back to us either in a move before the
+     * redeem, or, with changeInRedeem, in the redeem transaction itself, so that there is a single transaction to sign
+     * and to notarise.
      */
     @StartableByRPC
     class SimpleInitiator extends FlowLogic<Pair<SignedTransaction, SignedTransaction>> {
         @NotNull
         private final Party issuer;
         private final long totalQuantity;
+        private final boolean changeInRedeem;
         /**
-         * A basic search criteria for the vault.
+         * A basic search criteria for the vault, with the issuer filtered by the database.
          */
         @NotNull
         private final QueryCriteria tokenCriteria;
+        /**
+         * The largest states first, so that we need fewer of them.
+         */
+        @NotNull
+        private final Sort tokenSort;
         @NotNull
         final private ProgressTracker progressTracker;
 
@@ -357,7 +400,16 @@ public interface RedeemFlows {
                 @NotNull final Party issuer,
                 @NotNull final Party holder,
                 final long totalQuantity) {
-            this(notary, issuer, holder, totalQuantity, tracker());
+            this(notary, issuer, holder, totalQuantity, false);
+        }
+
+        public SimpleInitiator(
+                @NotNull final Party notary,
+                @NotNull final Party issuer,
+                @NotNull final Party holder,
+                final long totalQuantity,
+                final boolean changeInRedeem) {
+            this(notary, issuer, holder, totalQuantity, changeInRedeem, tracker());
         }
 
         public SimpleInitiator(
@@ -366,12 +418,25 @@ public interface RedeemFlows {
                 @NotNull final Party holder,
                 final long totalQuantity,
                 @NotNull final ProgressTracker progressTracker) {
+            this(notary, issuer, holder, totalQuantity, false, progressTracker);
+        }
+
+        public SimpleInitiator(
+                @NotNull final Party notary,
+                @NotNull final Party issuer,
+                @NotNull final Party holder,
+                final long totalQuantity,
+                final boolean changeInRedeem,
+                @NotNull final ProgressTracker progressTracker) {
             this.issuer = issuer;
             if (totalQuantity <= 0) throw new IllegalArgumentException("totalQuantity must be positive");
             this.totalQuantity = totalQuantity;
+            this.changeInRedeem = changeInRedeem;
             this.tokenCriteria = new QueryCriteria.VaultQueryCriteria()
                     .withParticipants(Collections.singletonList(holder))
-                    .withNotary(Collections.singletonList(notary));
+                    .withNotary(Collections.singletonList(notary))
+                    .and(TokenSchemaV1.issuedBy(issuer));
+            this.tokenSort = TokenSchemaV1.largestFirst();
             this.progressTracker = progressTracker;
         }
 
@@ -381,57 +446,52 @@ public interface RedeemFlows {
             return progressTracker;
         }
 
+        /**
+         * The vault queries do not suspend the flow, so there is no checkpoint while we page through the vault. Only
+         * the accumulated states are part of the next checkpoint, not the pages.
+         */
         @NotNull
-        private StateAccumulator fetchWorthAtLeast(final long remainingSum) throws FlowException {
-            return fetchWorthAtLeast(
-                    remainingSum,
-                    new PageSpecification(1, QueryCriteriaUtils.DEFAULT_PAGE_SIZE));
-        }
-
-        @NotNull
-        private StateAccumulator fetchWorthAtLeast(
-                final long remainingSum,
-                @NotNull final PageSpecification paging) throws FlowException {
-            // We reached the desired state already.
-            if (remainingSum <= 0) return new StateAccumulator(0L);
-            final List<StateAndRef<TokenState>> pagedStates = getServiceHub().getVaultService()
-                    .queryBy(TokenState.class, tokenCriteria, paging)
-                    .getStates();
-            if (pagedStates.isEmpty()) throw new FlowException("Not enough states to reach sum.");
-
-            final StateAccumulator fetched = pagedStates.stream()
-                    // The previous query cannot pre-filter by issuer so we need to drop some here.
-                    .filter(it -> it.getState().getData().getIssuer().equals(issuer))
-                    // We will keep only up to the point where we have have enough.
-                    .reduce(
-                            new StateAccumulator(remainingSum),
-                            StateAccumulator::plus,
-                            StateAccumulator::plus);
-
-            // Let's fetch some more, possibly an empty list.
-            return fetched.plus(fetchWorthAtLeast(
-                    // If this number is 0 or less, we will get an empty list.
-                    remainingSum - fetched.sum,
-                    // Take the next page
-                    paging.copy(paging.getPageNumber() + 1, paging.getPageSize())
-            ));
+        private StateAccumulator fetchWorthAtLeast(final long wantedSum) throws FlowException {
+            return RedeemFlows.fetchWorthAtLeast(
+                    wantedSum,
+                    QueryCriteriaUtils.DEFAULT_PAGE_SIZE,
+                    // The query already filters by issuer, and gives the largest states first.
+                    paging -> getServiceHub().getVaultService()
+                            .queryBy(TokenState.class, tokenCriteria, paging, tokenSort)
+                            .getStates());
         }
 
+        /**
+         * @return The move transaction, null when there was none, and the redeem transaction.
+         */
         @Suspendable
         @Override
         public Pair<SignedTransaction, SignedTransaction> call() throws FlowException {
             progressTracker.setCurrentStep(FETCHING_TOKEN_STATES);
             final StateAccumulator accumulated = fetchWorthAtLeast(totalQuantity);
 
+            if (changeInRedeem) {
+                progressTracker.setCurrentStep(HANDING_TO_INITIATOR);
+                final List<TokenState> changeTokens = accumulated.getSum() <= totalQuantity
+                        ? Collections.emptyList()
+                        : Collections.singletonList(
+                                new TokenState(issuer, getOurIdentity(), accumulated.getSum() - totalQuantity));
+                return new Pair<>(null, subFlow(new Initiator(
+                        accumulated.getStates(),
+                        changeTokens,
+                        HANDING_TO_INITIATOR.childProgressTracker())));
+            }
+
             progressTracker.setCurrentStep(MOVING_TO_EXACT_COUNT);
             // If we did not get an exact amount, we need to create some change for ourselves before we redeem the
             // exact quantity wanted.
-            final SignedTransaction moveTx = accumulated.sum <= totalQuantity ? null :
-                    subFlow(new MoveFlows.Initiator(accumulated.states, Arrays.asList(
+            final List<StateAndRef<TokenState>> accumulatedStates = accumulated.getStates();
+            final SignedTransaction moveTx = accumulated.getSum() <= totalQuantity ? null :
+                    subFlow(new MoveFlows.Initiator(accumulatedStates, Arrays.asList(
                             new TokenState(issuer, getOurIdentity(), totalQuantity), // Index 0 in outputs.
-                            new TokenState(issuer, getOurIdentity(), accumulated.sum - totalQuantity))));
+                            new TokenState(issuer, getOurIdentity(), accumulated.getSum() - totalQuantity))));
 
-            final List<StateAndRef<TokenState>> toUse = moveTx == null ? accumulated.states :
+            final List<StateAndRef<TokenState>> toUse = moveTx == null ? accumulatedStates :
                     Collections.singletonList(moveTx.getTx().outRef(0));
 
             progressTracker.setCurrentStep(HANDING_TO_INITIATOR);
@@ -0,0 +1,107 @@
+package com.template.flows;
+
+import com.google.common.collect.ImmutableMap;
+import com.template.states.TokenState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.DataFeed;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.MAX_PAGE_SIZE;
+
+/**
+ * When enabled with {@link #ENABLED_KEY} in the CorDapp configuration, this service keeps in memory the balance of
+ * each holder per issuer, of the unconsumed {@link TokenState}s in our vault, so that reading one is a lookup instead
+ * of a vault query and a sum.
+ * - It is loaded and kept up to date by a single vault feed, so there is no gap between the snapshot and the updates.
+ * - Each balance is an {@link AtomicLong}, allocated on the first token of a holder from an issuer, then added to in
+ * place. So the updates neither box a {@link Long} nor replace map entries, although the maps themselves hold objects.
+ * - It is eventually consistent: a balance is updated right after the transaction is recorded, not within it.
+ */
+@CordaService
+public class TokenBalanceService extends SingletonSerializeAsToken {
+
+    public static final String ENABLED_KEY = "tokenBalance.enabled";
+    private final static Logger log = LoggerFactory.getLogger(TokenBalanceService.class);
+
+    private final boolean enabled;
+    /**
+     * Per holder, then per issuer. The entries are kept when back to 0, so that a holder coming back does not allocate.
+     */
+    @NotNull
+    private final Map<Party, Map<Party, AtomicLong>> balances = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unused")
+    public TokenBalanceService(@NotNull final AppServiceHub serviceHub) {
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.enabled = config.exists(ENABLED_KEY) && config.getBoolean(ENABLED_KEY);
+        if (!enabled) return;
+        final DataFeed<Vault.Page<TokenState>, Vault.Update<TokenState>> feed = serviceHub.getVaultService()
+                .trackBy(TokenState.class,
+                        new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED),
+                        new PageSpecification(DEFAULT_PAGE_NUM, MAX_PAGE_SIZE));
+        feed.getSnapshot().getStates().forEach(it -> add(it, 1L));
+        feed.getUpdates().subscribe(
+                update -> {
+                    update.getConsumed().forEach(it -> add(it, -1L));
+                    update.getProduced().forEach(it -> add(it, 1L));
+                },
+                error -> log.error("In TokenState updates", error));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param sign 1 when the state is produced, -1 when it is consumed.
+     */
+    private void add(@NotNull final StateAndRef<TokenState> state, final long sign) {
+        final TokenState token = state.getState().getData();
+        balances.computeIfAbsent(token.getHolder(), it -> new ConcurrentHashMap<>())
+                .computeIfAbsent(token.getIssuer(), it -> new AtomicLong())
+                .addAndGet(sign * token.getQuantity());
+    }
+
+    /**
+     * @return The sum of the quantities that the holder has from the issuer.
+     */
+    public long getBalance(@NotNull final Party holder, @NotNull final Party issuer) {
+        if (!enabled) throw new IllegalStateException("The token balance service is not enabled");
+        final Map<Party, AtomicLong> byIssuer = balances.get(holder);
+        if (byIssuer == null) return 0L;
+        final AtomicLong balance = byIssuer.get(issuer);
+        return balance == null ? 0L : balance.get();
+    }
+
+    /**
+     * @return The mapped sums of quantities per issuer, without the issuers whose balance is back to 0.
+     */
+    @NotNull
+    public Map<Party, Long> getBalances(@NotNull final Party holder) {
+        if (!enabled) throw new IllegalStateException("The token balance service is not enabled");
+        final Map<Party, AtomicLong> byIssuer = balances.get(holder);
+        if (byIssuer == null) return ImmutableMap.of();
+        final ImmutableMap.Builder<Party, Long> builder = ImmutableMap.builder();
+        byIssuer.forEach((issuer, balance) -> {
+            final long value = balance.get();
+            if (value != 0L) builder.put(issuer, value);
+        });
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.template.flows;
+
+import com.template.states.TokenSchemaV1;
+import com.template.states.TokenState;
+import kotlin.Unit;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * When enabled with {@link #ENABLED_KEY} in the CorDapp configuration, this service counts the states we hold per
+ * issuer and, once an issuer reaches {@link #THRESHOLD_KEY} states, it starts a {@link ConsolidateFlows.Initiator}
+ * with {@link #BATCH_SIZE_KEY} to merge them.
+ * - The counts are loaded with SQL counts on start, without loading the states, and then follow the vault updates. A
+ * state produced while they load may be counted twice, which only brings a consolidation forward, as the flow counts
+ * again before it merges.
+ * - The consolidations give way to the other flows: they run one at a time, they skip the states soft-locked by
+ * other flows, and they sleep for {@link #PAUSE_MILLIS_KEY} between merges, so that they hold a flow thread only
+ * for one merge at a time.
+ */
+@CordaService
+public class TokenConsolidationService extends SingletonSerializeAsToken {
+
+    public static final String ENABLED_KEY = "tokenConsolidation.enabled";
+    public static final String THRESHOLD_KEY = "tokenConsolidation.threshold";
+    public static final String BATCH_SIZE_KEY = "tokenConsolidation.batchSize";
+    public static final String PAUSE_MILLIS_KEY = "tokenConsolidation.pauseMillis";
+    private static final int DEFAULT_THRESHOLD = 100;
+    private static final int DEFAULT_BATCH_SIZE = 50;
+    private static final long DEFAULT_PAUSE_MILLIS = 1_000L;
+    private final static Logger log = LoggerFactory.getLogger(TokenConsolidationService.class);
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    private final boolean enabled;
+    private final int threshold;
+    private final int batchSize;
+    @NotNull
+    private final Duration pause;
+    /**
+     * How many states we hold, per issuer.
+     */
+    @NotNull
+    private final Map<Party, AtomicLong> counts = new ConcurrentHashMap<>();
+    /**
+     * The issuers whose consolidation is queued or running, so that it is not queued twice.
+     */
+    @NotNull
+    private final Set<Party> pending = ConcurrentHashMap.newKeySet();
+    @NotNull
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "token-consolidation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @SuppressWarnings("unused")
+    public TokenConsolidationService(@NotNull final AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.enabled = config.exists(ENABLED_KEY) && config.getBoolean(ENABLED_KEY);
+        this.threshold = config.exists(THRESHOLD_KEY) ? config.getInt(THRESHOLD_KEY) : DEFAULT_THRESHOLD;
+        this.batchSize = config.exists(BATCH_SIZE_KEY) ? config.getInt(BATCH_SIZE_KEY) : DEFAULT_BATCH_SIZE;
+        this.pause = Duration.ofMillis(config.exists(PAUSE_MILLIS_KEY)
+                ? config.getLong(PAUSE_MILLIS_KEY) : DEFAULT_PAUSE_MILLIS);
+        if (!enabled) return;
+        serviceHub.registerUnloadHandler(() -> {
+            executor.shutdownNow();
+            return Unit.INSTANCE;
+        });
+        // Subscribed first, so that no update is missed while we count.
+        serviceHub.getVaultService().getUpdates().subscribe(
+                update -> {
+                    update.getConsumed().forEach(it -> count(it, -1L));
+                    update.getProduced().forEach(it -> count(it, 1L));
+                },
+                error -> log.error("In TokenState updates", error));
+        serviceHub.getMyInfo().getLegalIdentities().forEach(this::countHeldBy);
+    }
+
+    /**
+     * Asks the database for the issuers of the states held by the holder, then for the count of each.
+     */
+    private void countHeldBy(@NotNull final Party holder) {
+        final List<Object> sumsAndIssuers = serviceHub.getVaultService()
+                .queryBy(TokenState.class, TokenSchemaV1.heldBy(holder).and(TokenSchemaV1.sumByIssuer()))
+                .getOtherResults();
+        for (int i = 1; i < sumsAndIssuers.size(); i += 2) {
+            final Party issuer = serviceHub.getIdentityService()
+                    .wellKnownPartyFromX500Name(CordaX500Name.parse((String) sumsAndIssuers.get(i)));
+            if (issuer == null) {
+                log.warn("Unknown issuer " + sumsAndIssuers.get(i) + ", its states are not counted");
+                continue;
+            }
+            final long count = (Long) serviceHub.getVaultService()
+                    .queryBy(TokenState.class, TokenSchemaV1.heldBy(holder)
+                            .and(TokenSchemaV1.issuedBy(issuer))
+                            .and(TokenSchemaV1.count()))
+                    .getOtherResults()
+                    .get(0);
+            add(issuer, count);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return How many states we hold of this issuer, as far as the service knows.
+     */
+    public long getCount(@NotNull final Party issuer) {
+        final AtomicLong count = counts.get(issuer);
+        return count == null ? 0L : count.get();
+    }
+
+    private void count(@NotNull final StateAndRef<ContractState> state, final long delta) {
+        if (!(state.getState().getData() instanceof TokenState)) return;
+        final TokenState token = (TokenState) state.getState().getData();
+        if (!serviceHub.getMyInfo().isLegalIdentity(token.getHolder())) return;
+        add(token.getIssuer(), delta);
+    }
+
+    private void add(@NotNull final Party issuer, final long delta) {
+        final long count = counts.computeIfAbsent(issuer, it -> new AtomicLong()).addAndGet(delta);
+        if (threshold <= count && pending.add(issuer)) {
+            executor.execute(() -> consolidate(issuer));
+        }
+    }
+
+    private void consolidate(@NotNull final Party issuer) {
+        try {
+            serviceHub.startFlow(new ConsolidateFlows.Initiator(issuer, threshold, batchSize, pause))
+                    .getReturnValue()
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Failed to consolidate the states of " + issuer, e);
+        } finally {
+            pending.remove(issuer);
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.template.flows;
+
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.services.VaultService;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.QueryCriteriaUtils;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Goes through the states of a vault query one page at a time, and fetches a page only when the previous one has
+ * been consumed. Only the current page is held, so that we can go through any number of states in constant memory.
+ * - It never suspends, as vault queries do not, so it is safe to use in a flow. There, the fetcher captures the flow,
+ * which is why {@link PageFetcher} is {@link Serializable}, in case the iterator is checkpointed.
+ * - With a prefetch executor, the next page is fetched while the current one is consumed. The vault can only be
+ * queried from a flow's own thread, and a pending fetch cannot be checkpointed, so only prefetch outside of flows,
+ * for instance in a service or with RPC.
+ */
+public class VaultPageIterator<T extends ContractState> implements Iterator<StateAndRef<T>> {
+
+    /**
+     * Returns the states of a given page, possibly empty when there are no more.
+     */
+    @FunctionalInterface
+    public interface PageFetcher<T extends ContractState> extends Serializable {
+        @NotNull
+        List<StateAndRef<T>> fetch(@NotNull final PageSpecification paging);
+    }
+
+    @NotNull
+    private final PageFetcher<T> fetcher;
+    private final int pageSize;
+    @Nullable
+    private final Executor prefetchExecutor;
+    private int nextPageNumber = QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+    @NotNull
+    private List<StateAndRef<T>> page = Collections.emptyList();
+    private int indexInPage = 0;
+    /**
+     * A page shorter than the page size is the last one, so there is no need to ask for the next.
+     */
+    private boolean lastPage = false;
+    @Nullable
+    private CompletableFuture<List<StateAndRef<T>>> prefetched = null;
+
+    public VaultPageIterator(
+            @NotNull final PageFetcher<T> fetcher,
+            final int pageSize,
+            @Nullable final Executor prefetchExecutor) {
+        //noinspection ConstantConditions
+        if (fetcher == null) throw new NullPointerException("fetcher cannot be null");
+        if (pageSize < 1 || QueryCriteriaUtils.MAX_PAGE_SIZE < pageSize) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + QueryCriteriaUtils.MAX_PAGE_SIZE);
+        }
+        this.fetcher = fetcher;
+        this.pageSize = pageSize;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    public VaultPageIterator(@NotNull final PageFetcher<T> fetcher, final int pageSize) {
+        this(fetcher, pageSize, null);
+    }
+
+    /**
+     * Iterates over the states that match the query, without prefetch, which is what a flow needs.
+     */
+    @NotNull
+    public static <T extends ContractState> VaultPageIterator<T> of(
+            @NotNull final VaultService vaultService,
+            @NotNull final Class<T> contractStateType,
+            @NotNull final QueryCriteria criteria,
+            @NotNull final Sort sorting,
+            final int pageSize) {
+        return new VaultPageIterator<>(
+                paging -> vaultService.queryBy(contractStateType, criteria, paging, sorting).getStates(),
+                pageSize);
+    }
+
+    /**
+     * Iterates like {@link #of(VaultService, Class, QueryCriteria, Sort, int)}, sorted by state ref, as the pages of
+     * an unsorted query may overlap.
+     */
+    @NotNull
+    public static <T extends ContractState> VaultPageIterator<T> of(
+            @NotNull final VaultService vaultService,
+            @NotNull final Class<T> contractStateType,
+            @NotNull final QueryCriteria criteria,
+            final int pageSize) {
+        return of(vaultService, contractStateType, criteria,
+                new Sort(Collections.singletonList(new Sort.SortColumn(
+                        new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF),
+                        Sort.Direction.ASC))),
+                pageSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (indexInPage == page.size()) {
+            if (lastPage) return false;
+            page = nextPage();
+            indexInPage = 0;
+            lastPage = page.size() < pageSize;
+        }
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public StateAndRef<T> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return page.get(indexInPage++);
+    }
+
+    /**
+     * @return The remaining states, lazily, with the same fetching as this iterator.
+     */
+    @NotNull
+    public Stream<StateAndRef<T>> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+                false);
+    }
+
+    @NotNull
+    private List<StateAndRef<T>> fetchNextPage() {
+        return fetcher.fetch(new PageSpecification(nextPageNumber++, pageSize));
+    }
+
+    @NotNull
+    private List<StateAndRef<T>> nextPage() {
+        final List<StateAndRef<T>> fetched;
+        if (prefetched == null) {
+            fetched = fetchNextPage();
+        } else {
+            try {
+                fetched = prefetched.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while prefetching a page", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new IllegalStateException("Failed to prefetch a page", e.getCause());
+            } finally {
+                prefetched = null;
+            }
+        }
+        // Only a full page may have a next one.
+        if (prefetchExecutor != null && fetched.size() == pageSize) {
+            prefetched = CompletableFuture.supplyAsync(this::fetchNextPage, prefetchExecutor);
+        }
+        return fetched;
+    }
+
+}
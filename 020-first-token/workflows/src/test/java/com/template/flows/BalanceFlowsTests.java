@@ -0,0 +1,135 @@
+package com.template.flows;
+
+import com.google.common.collect.ImmutableMap;
+import com.template.states.TokenState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.Party;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static com.template.flows.FlowHelpers.*;
+import static org.junit.Assert.*;
+
+public class BalanceFlowsTests {
+    private final MockNetwork network;
+    private final MockNetwork disabledNetwork;
+    private final StartedMockNode alice;
+    private final StartedMockNode bob;
+    private final StartedMockNode carly;
+    private final StartedMockNode disabledAlice;
+    private final StartedMockNode disabledBob;
+
+    public BalanceFlowsTests() throws Exception {
+        network = new MockNetwork(prepareMockNetworkParameters(ImmutableMap.<String, Object>of(
+                TokenBalanceService.ENABLED_KEY, true)));
+        alice = network.createNode();
+        bob = network.createNode();
+        carly = network.createNode();
+        Arrays.asList(alice, bob, carly).forEach(it -> {
+            it.registerInitiatedFlow(IssueFlows.Responder.class);
+            it.registerInitiatedFlow(MoveFlows.Initiator.class, MoveFlows.Responder.class);
+        });
+        disabledNetwork = new MockNetwork(prepareMockNetworkParameters());
+        disabledAlice = disabledNetwork.createNode();
+        disabledBob = disabledNetwork.createNode();
+        disabledBob.registerInitiatedFlow(IssueFlows.Responder.class);
+    }
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+        disabledNetwork.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+        disabledNetwork.stopNodes();
+    }
+
+    @NotNull
+    private static Party partyOf(@NotNull final StartedMockNode node) {
+        return node.getInfo().getLegalIdentities().get(0);
+    }
+
+    private <T> T run(@NotNull final MockNetwork network, @NotNull final Future<T> future) throws Exception {
+        network.runNetwork();
+        return future.get();
+    }
+
+    @Test
+    public void serviceIsDisabledByDefault() {
+        assertFalse(disabledBob.getServices().cordaService(TokenBalanceService.class).isEnabled());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void disabledServiceRefusesToAnswer() {
+        disabledBob.getServices().cordaService(TokenBalanceService.class)
+                .getBalance(partyOf(disabledBob), partyOf(disabledAlice));
+    }
+
+    @Test
+    public void serviceHasTheBalancesAfterIssue() throws Throwable {
+        issueTokens(alice, network, Arrays.asList(
+                new NodeHolding(bob, 10L), new NodeHolding(bob, 20L), new NodeHolding(carly, 5L)));
+        issueTokens(carly, network, Collections.singletonList(new NodeHolding(bob, 7L)));
+
+        final TokenBalanceService service = bob.getServices().cordaService(TokenBalanceService.class);
+        assertTrue(service.isEnabled());
+        assertEquals(30L, service.getBalance(partyOf(bob), partyOf(alice)));
+        assertEquals(7L, service.getBalance(partyOf(bob), partyOf(carly)));
+        assertEquals(0L, service.getBalance(partyOf(bob), partyOf(bob)));
+        assertEquals(
+                ImmutableMap.of(partyOf(alice), 30L, partyOf(carly), 7L),
+                service.getBalances(partyOf(bob)));
+    }
+
+    @Test
+    public void flowsReadTheBalancesAfterMove() throws Throwable {
+        final List<StateAndRef<TokenState>> issued = issueTokens(alice, network, Arrays.asList(
+                new NodeHolding(bob, 10L), new NodeHolding(bob, 20L)));
+        run(network, bob.startFlow(new MoveFlows.Initiator(issued, Arrays.asList(
+                createFrom(alice, carly, 25L),
+                createFrom(alice, bob, 5L)))));
+
+        assertEquals(5L, (long) run(network, bob.startFlow(
+                new BalanceFlows.Balance(partyOf(bob), partyOf(alice)))));
+        assertEquals(25L, (long) run(network, carly.startFlow(
+                new BalanceFlows.Balance(partyOf(carly), partyOf(alice)))));
+        final Map<Party, Long> carlys = run(network, carly.startFlow(new BalanceFlows.AllBalances(partyOf(carly))));
+        assertEquals(Collections.singletonMap(partyOf(alice), 25L), carlys);
+    }
+
+    @Test
+    public void balanceIsRemovedOnceAllIsMoved() throws Throwable {
+        final List<StateAndRef<TokenState>> issued = issueTokens(alice, network, Collections.singletonList(
+                new NodeHolding(bob, 10L)));
+        run(network, bob.startFlow(new MoveFlows.Initiator(issued, Collections.singletonList(
+                createFrom(alice, carly, 10L)))));
+
+        assertTrue(run(network, bob.startFlow(new BalanceFlows.AllBalances(partyOf(bob)))).isEmpty());
+    }
+
+    @Test
+    public void flowsFallBackOnTheVaultWhenDisabled() throws Throwable {
+        issueTokens(disabledAlice, disabledNetwork, Arrays.asList(
+                new NodeHolding(disabledBob, 10L), new NodeHolding(disabledBob, 20L)));
+
+        assertEquals(30L, (long) run(disabledNetwork, disabledBob.startFlow(
+                new BalanceFlows.Balance(partyOf(disabledBob), partyOf(disabledAlice)))));
+        assertEquals(
+                Collections.singletonMap(partyOf(disabledAlice), 30L),
+                run(disabledNetwork, disabledBob.startFlow(new BalanceFlows.AllBalances(partyOf(disabledBob)))));
+    }
+
+}
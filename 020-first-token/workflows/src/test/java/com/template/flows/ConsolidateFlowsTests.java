@@ -0,0 +1,148 @@
+package com.template.flows;
+
+import com.google.common.collect.ImmutableMap;
+import com.template.states.TokenState;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static com.template.flows.FlowHelpers.*;
+import static org.junit.Assert.*;
+
+public class ConsolidateFlowsTests {
+    private final MockNetwork network;
+    private final StartedMockNode alice;
+    private final StartedMockNode bob;
+    private final StartedMockNode carly;
+
+    public ConsolidateFlowsTests() throws Exception {
+        network = new MockNetwork(prepareMockNetworkParameters(ImmutableMap.<String, Object>of(
+                TokenConsolidationService.THRESHOLD_KEY, 5,
+                TokenConsolidationService.BATCH_SIZE_KEY, 10)));
+        alice = network.createNode();
+        bob = network.createNode();
+        carly = network.createNode();
+        Arrays.asList(alice, bob, carly).forEach(it -> it.registerInitiatedFlow(IssueFlows.Responder.class));
+    }
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    private void issueToBob(@NotNull final StartedMockNode issuer, final long... quantities) throws Throwable {
+        issueTokens(issuer, network, LongStream.of(quantities)
+                .mapToObj(it -> new NodeHolding(bob, it))
+                .collect(Collectors.toList()));
+    }
+
+    @NotNull
+    private List<TokenState> bobsStatesOf(@NotNull final StartedMockNode issuer) {
+        final Party issuerParty = issuer.getInfo().getLegalIdentities().get(0);
+        return bob.transaction(() -> bob.getServices().getVaultService().queryBy(TokenState.class).getStates())
+                .stream()
+                .map(it -> it.getState().getData())
+                .filter(it -> it.getIssuer().equals(issuerParty))
+                .collect(Collectors.toList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchSizeMustBeAtLeast2() {
+        new ConsolidateFlows.Initiator(alice.getInfo().getLegalIdentities().get(0), 5, 1);
+    }
+
+    @Test
+    public void initiatorMergesTheSmallestInBatchesUntilBelowThreshold() throws Throwable {
+        issueToBob(alice, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+        issueToBob(carly, 1L, 2L, 3L, 4L, 5L, 6L);
+
+        final CordaFuture<List<SignedTransaction>> future = bob.startFlow(new ConsolidateFlows.Initiator(
+                alice.getInfo().getLegalIdentities().get(0), 5, 4));
+        network.runNetwork();
+        final List<SignedTransaction> merges = future.get();
+
+        // 10 states, then 7 after merging 1, 2, 3 and 4, then 4 after merging 5, 6, 7 and 8.
+        assertEquals(2, merges.size());
+        final List<TokenState> aliceStates = bobsStatesOf(alice);
+        assertEquals(4, aliceStates.size());
+        assertEquals(55L, aliceStates.stream().mapToLong(TokenState::getQuantity).sum());
+        // The other issuer is left alone.
+        assertEquals(6, bobsStatesOf(carly).size());
+    }
+
+    @Test
+    public void initiatorDoesNothingBelowThreshold() throws Throwable {
+        issueToBob(alice, 1L, 2L, 3L);
+
+        final CordaFuture<List<SignedTransaction>> future = bob.startFlow(new ConsolidateFlows.Initiator(
+                alice.getInfo().getLegalIdentities().get(0), 5, 4));
+        network.runNetwork();
+
+        assertTrue(future.get().isEmpty());
+        assertEquals(3, bobsStatesOf(alice).size());
+    }
+
+    @Test
+    public void serviceIsDisabledByDefault() {
+        assertFalse(bob.getServices().cordaService(TokenConsolidationService.class).isEnabled());
+    }
+
+    @Test
+    public void serviceConsolidatesOnceTheThresholdIsReached() throws Throwable {
+        final MockNetwork enabledNetwork = new MockNetwork(prepareMockNetworkParameters(ImmutableMap.<String, Object>of(
+                TokenConsolidationService.ENABLED_KEY, true,
+                TokenConsolidationService.THRESHOLD_KEY, 5,
+                TokenConsolidationService.BATCH_SIZE_KEY, 10,
+                TokenConsolidationService.PAUSE_MILLIS_KEY, 0)));
+        try {
+            final StartedMockNode issuer = enabledNetwork.createNode();
+            final StartedMockNode holder = enabledNetwork.createNode();
+            holder.registerInitiatedFlow(IssueFlows.Responder.class);
+            enabledNetwork.runNetwork();
+            final TokenConsolidationService service = holder.getServices()
+                    .cordaService(TokenConsolidationService.class);
+            final Party issuerParty = issuer.getInfo().getLegalIdentities().get(0);
+
+            issueTokens(issuer, enabledNetwork, Arrays.asList(
+                    new NodeHolding(holder, 1L), new NodeHolding(holder, 2L), new NodeHolding(holder, 3L),
+                    new NodeHolding(holder, 4L)));
+            enabledNetwork.runNetwork();
+            assertEquals(4L, service.getCount(issuerParty));
+
+            issueTokens(issuer, enabledNetwork, Arrays.asList(
+                    new NodeHolding(holder, 5L), new NodeHolding(holder, 6L)));
+            // The consolidation is started off the vault update thread.
+            for (int attempt = 0; attempt < 100 && service.getCount(issuerParty) != 1L; attempt++) {
+                enabledNetwork.runNetwork();
+                Thread.sleep(50);
+            }
+            assertEquals(1L, service.getCount(issuerParty));
+            final List<TokenState> held = holder.transaction(() -> holder.getServices().getVaultService()
+                    .queryBy(TokenState.class).getStates())
+                    .stream()
+                    .map(it -> it.getState().getData())
+                    .collect(Collectors.toList());
+            assertEquals(1, held.size());
+            assertEquals(21L, held.get(0).getQuantity());
+        } finally {
+            enabledNetwork.stopNodes();
+        }
+    }
+
+}
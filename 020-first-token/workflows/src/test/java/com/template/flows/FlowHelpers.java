@@ -11,7 +11,9 @@ import net.corda.testing.node.*;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
@@ -20,11 +22,20 @@ interface FlowHelpers {
 
     @NotNull
     static MockNetworkParameters prepareMockNetworkParameters() throws Exception {
+        return prepareMockNetworkParameters(Collections.emptyMap());
+    }
+
+    /**
+     * @param flowsConfig The CorDapp configuration of the flows, for instance to enable a service.
+     */
+    @NotNull
+    static MockNetworkParameters prepareMockNetworkParameters(
+            @NotNull final Map<String, Object> flowsConfig) throws Exception {
         return new MockNetworkParameters()
                 .withNotarySpecs(ImmutableList.of(new MockNetworkNotarySpec(Constants.desiredNotary)))
                 .withCordappsForAllNodes(ImmutableList.of(
                         TestCordapp.findCordapp("com.template.contracts"),
-                        TestCordapp.findCordapp("com.template.flows"))
+                        TestCordapp.findCordapp("com.template.flows").withConfig(flowsConfig))
                 );
     }
 
@@ -9,6 +9,7 @@ import net.corda.core.contracts.TransactionState;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.testing.node.MockNetwork;
 import net.corda.testing.node.StartedMockNode;
+import org.jetbrains.annotations.NotNull;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -16,6 +17,7 @@ import org.junit.Test;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static com.template.flows.FlowHelpers.*;
 import static org.junit.Assert.*;
@@ -33,8 +35,10 @@ public class IssueFlowsTests {
         bob = network.createNode();
         carly = network.createNode();
         dan = network.createNode();
-        Arrays.asList(alice, bob, carly, dan).forEach(it ->
-                it.registerInitiatedFlow(IssueFlows.Responder.class));
+        Arrays.asList(alice, bob, carly, dan).forEach(it -> {
+            it.registerInitiatedFlow(IssueFlows.Responder.class);
+            it.registerInitiatedFlow(IssueFlows.BatchResponder.class);
+        });
     }
 
     @Before
@@ -222,4 +226,62 @@ public class IssueFlowsTests {
         assertHasStatesInVault(dan, Collections.emptyList());
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void batchMaxOutputsPerTxMustBeAtLeast1() {
+        new IssueFlows.BatchInitiator(Collections.singletonList(new NodeHolding(bob, 10L).toPair()), 0);
+    }
+
+    @Test
+    public void batchIssuesInChunksOfBoundedSize() throws Exception {
+        final List<NodeHolding> holdings = Arrays.asList(
+                new NodeHolding(bob, 1L), new NodeHolding(carly, 2L), new NodeHolding(bob, 3L),
+                new NodeHolding(bob, 4L), new NodeHolding(alice, 5L), new NodeHolding(bob, 6L),
+                new NodeHolding(carly, 7L));
+        final IssueFlows.BatchInitiator flow = new IssueFlows.BatchInitiator(holdings.stream()
+                .map(NodeHolding::toPair)
+                .collect(Collectors.toList()), 3);
+        final CordaFuture<List<SignedTransaction>> future = alice.startFlow(flow);
+        network.runNetwork();
+        final List<SignedTransaction> txs = future.get();
+
+        assertEquals(3, txs.size());
+        assertEquals(Arrays.asList(3, 3, 1), txs.stream()
+                .map(it -> it.getTx().getOutputs().size())
+                .collect(Collectors.toList()));
+        for (final SignedTransaction tx : txs) {
+            tx.verifyRequiredSignatures();
+            assertEquals(tx, alice.getServices().getValidatedTransactions().getTransaction(tx.getId()));
+        }
+        // Carly is only in the first and last chunks.
+        assertNotNull(carly.getServices().getValidatedTransactions().getTransaction(txs.get(0).getId()));
+        assertNull(carly.getServices().getValidatedTransactions().getTransaction(txs.get(1).getId()));
+        assertNotNull(carly.getServices().getValidatedTransactions().getTransaction(txs.get(2).getId()));
+        assertNull(dan.getServices().getValidatedTransactions().getTransaction(txs.get(0).getId()));
+    }
+
+    @Test
+    public void batchRecordsTheStatesOfEachHolder() throws Exception {
+        final IssueFlows.BatchInitiator flow = new IssueFlows.BatchInitiator(Arrays.asList(
+                new NodeHolding(bob, 1L).toPair(), new NodeHolding(carly, 2L).toPair(),
+                new NodeHolding(bob, 3L).toPair(), new NodeHolding(bob, 4L).toPair(),
+                new NodeHolding(carly, 5L).toPair()), 2);
+        final CordaFuture<List<SignedTransaction>> future = alice.startFlow(flow);
+        network.runNetwork();
+        future.get();
+
+        assertEquals(Arrays.asList(1L, 3L, 4L), vaultQuantities(bob));
+        assertEquals(Arrays.asList(2L, 5L), vaultQuantities(carly));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), vaultQuantities(alice));
+        assertTrue(vaultQuantities(dan).isEmpty());
+    }
+
+    @NotNull
+    private static List<Long> vaultQuantities(@NotNull final StartedMockNode node) {
+        return node.transaction(() -> node.getServices().getVaultService().queryBy(TokenState.class).getStates())
+                .stream()
+                .map(it -> it.getState().getData().getQuantity())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
 }
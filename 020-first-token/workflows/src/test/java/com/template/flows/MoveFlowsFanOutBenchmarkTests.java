@@ -0,0 +1,100 @@
+package com.template.flows;
+
+import com.template.states.TokenState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.template.flows.FlowHelpers.*;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The same move as in {@link MoveFlowsFanOutTests}, on nodes that each have their own thread, so that the signers
+ * can work at the same time when asked at the same time.
+ */
+public class MoveFlowsFanOutBenchmarkTests {
+    private static final int SIGNER_COUNT = 10;
+    private static final int NEW_HOLDER_COUNT = 10;
+
+    private final MockNetwork network;
+    private final StartedMockNode alice;
+    private final StartedMockNode bob;
+    private final List<StartedMockNode> signers;
+    private final List<StartedMockNode> newHolders;
+
+    public MoveFlowsFanOutBenchmarkTests() throws Exception {
+        network = new MockNetwork(prepareMockNetworkParameters().withThreadPerNode(true));
+        alice = network.createNode();
+        bob = network.createNode();
+        signers = IntStream.range(0, SIGNER_COUNT)
+                .mapToObj(it -> network.createNode())
+                .collect(Collectors.toList());
+        newHolders = IntStream.range(0, NEW_HOLDER_COUNT)
+                .mapToObj(it -> network.createNode())
+                .collect(Collectors.toList());
+        final List<StartedMockNode> all = new ArrayList<>(signers);
+        all.addAll(newHolders);
+        all.add(alice);
+        all.add(bob);
+        all.forEach(it -> {
+            it.registerInitiatedFlow(IssueFlows.Responder.class);
+            it.registerInitiatedFlow(MoveFlows.Initiator.class, MoveFlows.Responder.class);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    /**
+     * No need to run the network, each node pumps its own messages.
+     */
+    @NotNull
+    private List<StateAndRef<TokenState>> issueToBobAndSigners() throws Exception {
+        final List<NodeHolding> holdings = new ArrayList<>();
+        holdings.add(new NodeHolding(bob, 10L));
+        signers.forEach(it -> holdings.add(new NodeHolding(it, 10L)));
+        final SignedTransaction tx = alice.startFlow(new IssueFlows.Initiator(holdings.stream()
+                .map(NodeHolding::toPair)
+                .collect(Collectors.toList()))).get();
+        return tx.toLedgerTransaction(alice.getServices()).outRefsOfType(TokenState.class);
+    }
+
+    /**
+     * Not a substitute for a proper harness, but enough to see that asking all the signers at once pays off.
+     */
+    @Ignore("Timing based, so it may fail on a busy machine. Run it by hand when changing the signatures collection.")
+    @Test
+    public void batchedSignaturesAreFasterThanOneSignerAfterTheOther() throws Exception {
+        final List<TokenState> outputs = newHolders.stream()
+                .map(it -> createFrom(alice, it, 11L))
+                .collect(Collectors.toList());
+        long oneByOneNanos = 0L;
+        long batchedNanos = 0L;
+        // The first round warms up.
+        for (int round = 0; round < 2; round++) {
+            for (final boolean batchSignatures : Arrays.asList(false, true)) {
+                final List<StateAndRef<TokenState>> issued = issueToBobAndSigners();
+                final long start = System.nanoTime();
+                bob.startFlow(new MoveFlows.Initiator(issued, outputs, batchSignatures)).get();
+                final long elapsed = System.nanoTime() - start;
+                if (batchSignatures) batchedNanos = elapsed;
+                else oneByOneNanos = elapsed;
+            }
+        }
+        assertTrue(batchedNanos < oneByOneNanos);
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.template.flows;
+
+import com.template.states.TokenState;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.template.flows.FlowHelpers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * A move with 20 counterparties: 10 other holders who have to sign, and 10 new holders who only receive.
+ */
+public class MoveFlowsFanOutTests {
+    private static final int SIGNER_COUNT = 10;
+    private static final int NEW_HOLDER_COUNT = 10;
+
+    private final MockNetwork network;
+    private final StartedMockNode alice;
+    private final StartedMockNode bob;
+    private final List<StartedMockNode> signers;
+    private final List<StartedMockNode> newHolders;
+
+    public MoveFlowsFanOutTests() throws Exception {
+        network = new MockNetwork(prepareMockNetworkParameters());
+        alice = network.createNode();
+        bob = network.createNode();
+        signers = IntStream.range(0, SIGNER_COUNT)
+                .mapToObj(it -> network.createNode())
+                .collect(Collectors.toList());
+        newHolders = IntStream.range(0, NEW_HOLDER_COUNT)
+                .mapToObj(it -> network.createNode())
+                .collect(Collectors.toList());
+        final List<StartedMockNode> all = new ArrayList<>(signers);
+        all.addAll(newHolders);
+        all.add(alice);
+        all.add(bob);
+        all.forEach(it -> {
+            it.registerInitiatedFlow(IssueFlows.Responder.class);
+            it.registerInitiatedFlow(MoveFlows.Initiator.class, MoveFlows.Responder.class);
+        });
+    }
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @NotNull
+    private List<TokenState> outputsToNewHolders() {
+        return newHolders.stream()
+                .map(it -> createFrom(alice, it, 11L))
+                .collect(Collectors.toList());
+    }
+
+    private void assertReachedAll20(
+            @NotNull final SignedTransaction tx,
+            @NotNull final List<TokenState> outputs) throws SignatureException {
+        tx.verifyRequiredSignatures();
+        // Bob, the other holders and the notary.
+        assertEquals(SIGNER_COUNT + 2, tx.getSigs().size());
+        final List<StartedMockNode> counterparties = new ArrayList<>(signers);
+        counterparties.addAll(newHolders);
+        for (final StartedMockNode node : counterparties) {
+            assertNotNull(node.getServices().getValidatedTransactions().getTransaction(tx.getId()));
+        }
+        for (final StartedMockNode node : newHolders) {
+            assertHasStatesInVault(node, outputs.stream()
+                    .filter(it -> it.getHolder().equals(node.getInfo().getLegalIdentities().get(0)))
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void moveReachesAll20Counterparties() throws Throwable {
+        final List<NodeHolding> holdings = new ArrayList<>();
+        holdings.add(new NodeHolding(bob, 10L));
+        signers.forEach(it -> holdings.add(new NodeHolding(it, 10L)));
+        // A single issue transaction, so that all the signers already have the back chain.
+        final List<StateAndRef<TokenState>> issued = issueTokens(alice, network, holdings);
+        final List<TokenState> outputs = outputsToNewHolders();
+
+        final CordaFuture<SignedTransaction> future = bob.startFlow(new MoveFlows.Initiator(issued, outputs));
+        network.runNetwork();
+        assertReachedAll20(future.get(), outputs);
+    }
+
+    @Test
+    public void signersMissingTheBackChainAreSentIt() throws Throwable {
+        final List<NodeHolding> holdings = new ArrayList<>();
+        holdings.add(new NodeHolding(bob, 10L));
+        signers.forEach(it -> holdings.add(new NodeHolding(it, 10L)));
+        final List<StateAndRef<TokenState>> issued = new ArrayList<>(issueTokens(alice, network, holdings));
+        // This one comes from a transaction that the other signers have never seen.
+        issued.addAll(issueTokens(alice, network, Collections.singletonList(new NodeHolding(bob, 1L))));
+        final List<TokenState> outputs = new ArrayList<>(outputsToNewHolders());
+        outputs.add(createFrom(alice, bob, 1L));
+
+        final CordaFuture<SignedTransaction> future = bob.startFlow(new MoveFlows.Initiator(issued, outputs));
+        network.runNetwork();
+        assertReachedAll20(future.get(), outputs);
+    }
+
+    @Test
+    public void moveReachesAll20CounterpartiesOneSignerAfterTheOther() throws Throwable {
+        final List<NodeHolding> holdings = new ArrayList<>();
+        holdings.add(new NodeHolding(bob, 10L));
+        signers.forEach(it -> holdings.add(new NodeHolding(it, 10L)));
+        final List<StateAndRef<TokenState>> issued = issueTokens(alice, network, holdings);
+        final List<TokenState> outputs = outputsToNewHolders();
+
+        final CordaFuture<SignedTransaction> future = bob.startFlow(
+                new MoveFlows.Initiator(issued, outputs, false));
+        network.runNetwork();
+        assertReachedAll20(future.get(), outputs);
+    }
+
+}
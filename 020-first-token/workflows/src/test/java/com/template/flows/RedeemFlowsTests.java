@@ -337,8 +337,9 @@ public class RedeemFlowsTests {
             final SignedTransaction recordedTx = node.getServices().getValidatedTransactions().getTransaction(txPair.getValue().getId());
             @SuppressWarnings("ConstantConditions") final List<StateRef> txInputs = recordedTx.getTx().getInputs();
             assertEquals(2, txInputs.size());
-            assertEquals(expected0, node.getServices().toStateAndRef(txInputs.get(0)).getState().getData());
-            assertEquals(expected1, node.getServices().toStateAndRef(txInputs.get(1)).getState().getData());
+            // The largest first.
+            assertEquals(expected1, node.getServices().toStateAndRef(txInputs.get(0)).getState().getData());
+            assertEquals(expected0, node.getServices().toStateAndRef(txInputs.get(1)).getState().getData());
             assertTrue(recordedTx.getTx().getOutputs().isEmpty());
         }
     }
@@ -368,13 +369,41 @@ public class RedeemFlowsTests {
             final SignedTransaction recordedTx = node.getServices().getValidatedTransactions().getTransaction(txPair.getValue().getId());
             @SuppressWarnings("ConstantConditions") final List<StateRef> txInputs = recordedTx.getTx().getInputs();
             assertEquals(3, txInputs.size());
-            assertEquals(expected0, node.getServices().toStateAndRef(txInputs.get(0)).getState().getData());
-            assertEquals(expected1, node.getServices().toStateAndRef(txInputs.get(1)).getState().getData());
+            // The largest first.
+            assertEquals(expected1, node.getServices().toStateAndRef(txInputs.get(0)).getState().getData());
+            assertEquals(expected0, node.getServices().toStateAndRef(txInputs.get(1)).getState().getData());
             assertEquals(expected2, node.getServices().toStateAndRef(txInputs.get(2)).getState().getData());
             assertTrue(recordedTx.getTx().getOutputs().isEmpty());
         }
     }
 
+    @Test
+    public void SimpleInitiatorCollectsOnlyTokensOfTheIssuer() throws Throwable {
+        final TokenState expected0 = createFrom(alice, bob, 10L);
+        final TokenState expected1 = createFrom(alice, bob, 20L);
+        issueTokens(carly, network, Collections.singletonList(new FlowHelpers.NodeHolding(bob, 50L)));
+        final List<StateAndRef<TokenState>> tokens = issueTokens(alice, network, Arrays.asList(
+                new FlowHelpers.NodeHolding(bob, 10L),
+                new FlowHelpers.NodeHolding(bob, 20L)));
+
+        final SimpleInitiator flow = new SimpleInitiator(
+                tokens.get(0).getState().getNotary(),
+                alice.getInfo().getLegalIdentities().get(0),
+                bob.getInfo().getLegalIdentities().get(0),
+                30L);
+        final CordaFuture<Pair<SignedTransaction, SignedTransaction>> future = bob.startFlow(flow);
+        network.runNetwork();
+        final Pair<SignedTransaction, SignedTransaction> txPair = future.get();
+
+        assertNull(txPair.getKey());
+        final SignedTransaction recordedTx = bob.getServices().getValidatedTransactions()
+                .getTransaction(txPair.getValue().getId());
+        @SuppressWarnings("ConstantConditions") final List<StateRef> txInputs = recordedTx.getTx().getInputs();
+        assertEquals(2, txInputs.size());
+        assertEquals(expected1, bob.getServices().toStateAndRef(txInputs.get(0)).getState().getData());
+        assertEquals(expected0, bob.getServices().toStateAndRef(txInputs.get(1)).getState().getData());
+    }
+
     @Test(expected = FlowException.class)
     public void SimpleInitiatorFailsToCollectIfThereAreNotEnoughTokensToRedeem() throws Throwable {
         final List<StateAndRef<TokenState>> tokens = issueTokens(alice, network, Arrays.asList(
@@ -422,8 +451,9 @@ public class RedeemFlowsTests {
         //noinspection ConstantConditions
         final List<StateRef> moveTxInputs = moveTx.getTx().getInputs();
         assertEquals(3, moveTxInputs.size());
-        assertEquals(expected0, bob.getServices().toStateAndRef(moveTxInputs.get(0)).getState().getData());
-        assertEquals(expected1, bob.getServices().toStateAndRef(moveTxInputs.get(1)).getState().getData());
+        // The largest first.
+        assertEquals(expected1, bob.getServices().toStateAndRef(moveTxInputs.get(0)).getState().getData());
+        assertEquals(expected0, bob.getServices().toStateAndRef(moveTxInputs.get(1)).getState().getData());
         assertEquals(expected2, bob.getServices().toStateAndRef(moveTxInputs.get(2)).getState().getData());
         final List<TransactionState<ContractState>> txOutputs = moveTx.getTx().getOutputs();
         assertEquals(2, txOutputs.size());
@@ -441,4 +471,69 @@ public class RedeemFlowsTests {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void SimpleInitiatorCanRedeemWithChangeInASingleTransaction() throws Throwable {
+        final TokenState expected0 = createFrom(alice, bob, 10L);
+        final TokenState expected1 = createFrom(alice, bob, 20L);
+        final TokenState expected2 = createFrom(alice, bob, 5L);
+        final TokenState expectedChange = createFrom(alice, bob, 3L);
+        final List<StateAndRef<TokenState>> tokens = issueTokens(alice, network, Arrays.asList(
+                new FlowHelpers.NodeHolding(bob, 10L),
+                new FlowHelpers.NodeHolding(bob, 20L),
+                new FlowHelpers.NodeHolding(bob, 5L)));
+
+        final SimpleInitiator flow = new SimpleInitiator(
+                tokens.get(0).getState().getNotary(),
+                alice.getInfo().getLegalIdentities().get(0),
+                bob.getInfo().getLegalIdentities().get(0),
+                32L,
+                true);
+        final CordaFuture<Pair<SignedTransaction, SignedTransaction>> future = bob.startFlow(flow);
+        network.runNetwork();
+        final Pair<SignedTransaction, SignedTransaction> txPair = future.get();
+        assertNull(txPair.getKey());
+        final SignedTransaction tx = txPair.getValue();
+
+        // We check the redeem recorded transaction in both vaults.
+        for (StartedMockNode node : Arrays.asList(alice, bob)) {
+            final SignedTransaction recordedTx = node.getServices().getValidatedTransactions().getTransaction(tx.getId());
+            //noinspection ConstantConditions
+            final List<StateRef> txInputs = recordedTx.getTx().getInputs();
+            assertEquals(3, txInputs.size());
+            // The largest first.
+            assertEquals(expected1, node.getServices().toStateAndRef(txInputs.get(0)).getState().getData());
+            assertEquals(expected0, node.getServices().toStateAndRef(txInputs.get(1)).getState().getData());
+            assertEquals(expected2, node.getServices().toStateAndRef(txInputs.get(2)).getState().getData());
+            final List<TransactionState<ContractState>> txOutputs = recordedTx.getTx().getOutputs();
+            assertEquals(1, txOutputs.size());
+            assertEquals(expectedChange, txOutputs.get(0).getData());
+        }
+        // Only the change is left.
+        assertHasStatesInVault(bob, Collections.singletonList(expectedChange));
+    }
+
+    @Test
+    public void SimpleInitiatorWithChangeInRedeemHasNoChangeOnExactSum() throws Throwable {
+        final List<StateAndRef<TokenState>> tokens = issueTokens(alice, network, Arrays.asList(
+                new FlowHelpers.NodeHolding(bob, 10L),
+                new FlowHelpers.NodeHolding(bob, 20L),
+                new FlowHelpers.NodeHolding(bob, 5L)));
+
+        final SimpleInitiator flow = new SimpleInitiator(
+                tokens.get(0).getState().getNotary(),
+                alice.getInfo().getLegalIdentities().get(0),
+                bob.getInfo().getLegalIdentities().get(0),
+                30L,
+                true);
+        final CordaFuture<Pair<SignedTransaction, SignedTransaction>> future = bob.startFlow(flow);
+        network.runNetwork();
+        final Pair<SignedTransaction, SignedTransaction> txPair = future.get();
+        assertNull(txPair.getKey());
+        final SignedTransaction tx = txPair.getValue();
+
+        assertEquals(2, tx.getTx().getInputs().size());
+        assertTrue(tx.getTx().getOutputs().isEmpty());
+        assertHasStatesInVault(bob, Collections.singletonList(createFrom(alice, bob, 5L)));
+    }
+
+}
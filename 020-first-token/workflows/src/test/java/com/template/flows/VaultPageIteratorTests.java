@@ -0,0 +1,134 @@
+package com.template.flows;
+
+import com.template.contracts.TokenContract;
+import com.template.states.TokenState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteriaUtils;
+import net.corda.testing.core.TestIdentity;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class VaultPageIteratorTests {
+
+    private final Party notary = new TestIdentity(new CordaX500Name("Notary", "London", "GB")).getParty();
+    private final Party alice = new TestIdentity(new CordaX500Name("Alice", "London", "GB")).getParty();
+    private final Party bob = new TestIdentity(new CordaX500Name("Bob", "London", "GB")).getParty();
+
+    @NotNull
+    private List<StateAndRef<TokenState>> createStates(final int count) {
+        final SecureHash txHash = SecureHash.randomSHA256();
+        final List<StateAndRef<TokenState>> states = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            states.add(new StateAndRef<>(
+                    new TransactionState<>(new TokenState(alice, bob, i + 1), TokenContract.TOKEN_CONTRACT_ID, notary),
+                    new StateRef(txHash, i)));
+        }
+        return states;
+    }
+
+    /**
+     * Pages through the given states like the vault would, and counts the pages fetched.
+     */
+    @NotNull
+    private static VaultPageIterator.PageFetcher<TokenState> fetcherOf(
+            @NotNull final List<StateAndRef<TokenState>> vault,
+            @NotNull final AtomicInteger pagesFetched) {
+        return (PageSpecification paging) -> {
+            pagesFetched.incrementAndGet();
+            final int from = (paging.getPageNumber() - QueryCriteriaUtils.DEFAULT_PAGE_NUM) * paging.getPageSize();
+            if (vault.size() <= from) return Collections.emptyList();
+            return vault.subList(from, Math.min(vault.size(), from + paging.getPageSize()));
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pageSizeMustBePositive() {
+        new VaultPageIterator<>(fetcherOf(createStates(1), new AtomicInteger()), 0);
+    }
+
+    @Test
+    public void fetchesNothingUntilAsked() {
+        final AtomicInteger pagesFetched = new AtomicInteger();
+        new VaultPageIterator<>(fetcherOf(createStates(10), pagesFetched), 3);
+        assertEquals(0, pagesFetched.get());
+    }
+
+    @Test
+    public void iteratesOverAllPagesInOrder() {
+        final List<StateAndRef<TokenState>> vault = createStates(10);
+        final AtomicInteger pagesFetched = new AtomicInteger();
+        final List<StateAndRef<TokenState>> iterated = new VaultPageIterator<>(fetcherOf(vault, pagesFetched), 3)
+                .stream()
+                .collect(Collectors.toList());
+        assertEquals(vault, iterated);
+        // The last page is short, so there is no need to ask for a fifth one.
+        assertEquals(4, pagesFetched.get());
+    }
+
+    @Test
+    public void asksForAnEmptyPageAfterAFullOne() {
+        final AtomicInteger pagesFetched = new AtomicInteger();
+        final VaultPageIterator<TokenState> iterator = new VaultPageIterator<>(
+                fetcherOf(createStates(6), pagesFetched), 3);
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        assertEquals(6, count);
+        assertEquals(3, pagesFetched.get());
+    }
+
+    @Test
+    public void fetchesOnlyThePagesThatAreConsumed() {
+        final AtomicInteger pagesFetched = new AtomicInteger();
+        final long sum = new VaultPageIterator<>(fetcherOf(createStates(1_000), pagesFetched), 100)
+                .stream()
+                .limit(250)
+                .mapToLong(it -> it.getState().getData().getQuantity())
+                .sum();
+        assertEquals(250L * 251L / 2L, sum);
+        assertEquals(3, pagesFetched.get());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void nextFailsOnceExhausted() {
+        final VaultPageIterator<TokenState> iterator = new VaultPageIterator<>(
+                fetcherOf(Collections.emptyList(), new AtomicInteger()), 3);
+        assertFalse(iterator.hasNext());
+        iterator.next();
+    }
+
+    @Test
+    public void prefetchGivesTheSameStates() {
+        final List<StateAndRef<TokenState>> vault = createStates(1_000);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final List<StateAndRef<TokenState>> iterated = new VaultPageIterator<>(
+                    fetcherOf(vault, new AtomicInteger()), 7, executor)
+                    .stream()
+                    .collect(Collectors.toList());
+            assertEquals(vault, iterated);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -4,8 +4,10 @@ import com.google.common.collect.ImmutableList;
 import com.r3.corda.lib.tokens.contracts.states.NonFungibleToken;
 import com.r3.corda.lib.tokens.contracts.types.IssuedTokenType;
 import net.corda.core.contracts.*;
-import net.corda.core.flows.FlowLogicRefFactory;
 import net.corda.core.identity.AbstractParty;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
 import net.corda.core.serialization.ConstructorForDeserialization;
 import org.jetbrains.annotations.NotNull;
 
@@ -16,10 +18,12 @@ import java.util.List;
 import java.util.Objects;
 
 @BelongsToContract(SalesProposalContract.class)
-public class SalesProposal implements LinearState, SchedulableState {
+public class SalesProposal implements LinearState, QueryableState {
 
-    // We need to use a string because the flow is in an another module.
-    public static final String SCHEDULED_FLOW = "com.template.proposal.flow.SalesProposalRejectFlows$RejectSimpleFlow";
+    /**
+     * The proposals that expire within the same bucket are rejected together, by the sweep of this bucket.
+     */
+    public static final Duration EXPIRY_BUCKET = Duration.ofMinutes(1);
 
     @NotNull
     private final UniqueIdentifier linearId;
@@ -90,12 +94,24 @@ public class SalesProposal implements LinearState, SchedulableState {
 
     @NotNull
     @Override
-    public ScheduledActivity nextScheduledActivity(
-            @NotNull final StateRef thisStateRef,
-            @NotNull final FlowLogicRefFactory flowLogicRefFactory) {
-        return new ScheduledActivity(
-                flowLogicRefFactory.create(SCHEDULED_FLOW, linearId, seller),
-                expirationDate.plus(Duration.ofSeconds(1)));
+    public Iterable<MappedSchema> supportedSchemas() {
+        return ImmutableList.of(new SalesProposalSchemaV1());
+    }
+
+    @NotNull
+    @Override
+    public PersistentState generateMappedObject(@NotNull final MappedSchema schema) {
+        if (schema instanceof SalesProposalSchemaV1) return new SalesProposalSchemaV1.PersistentSalesProposal(this);
+        throw new IllegalArgumentException("Unrecognised schema " + schema);
+    }
+
+    /**
+     * @return The end of the {@link #EXPIRY_BUCKET} in which this expiration date falls.
+     */
+    @NotNull
+    public static Instant getExpiryBucketEnd(@NotNull final Instant expirationDate) {
+        final long bucketMillis = EXPIRY_BUCKET.toMillis();
+        return Instant.ofEpochMilli((Math.floorDiv(expirationDate.toEpochMilli(), bucketMillis) + 1) * bucketMillis);
     }
 
     @NotNull
@@ -7,12 +7,13 @@ import net.corda.core.contracts.Command;
 import net.corda.core.contracts.CommandData;
 import net.corda.core.contracts.Contract;
 import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
 import net.corda.core.transactions.LedgerTransaction;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.security.PublicKey;
+import java.time.Instant;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import static net.corda.core.contracts.ContractsDSL.requireThat;
@@ -37,26 +38,37 @@ public class SalesProposalContract implements Contract {
             final Command<Commands> command = commands.get(0);
 
             if (command.getValue() instanceof Commands.Offer) {
+                // A single offer can create many proposals at once, each backed by its own reference token.
                 req.using("There should be no sales proposal inputs on offer",
                         inSalesProposals.isEmpty());
-                req.using("There should be a single sales proposal output on offer",
-                        outSalesProposals.size() == 1);
-                req.using("There should be a single reference input token on offer",
-                        inRefs.size() == 1);
-                final StateAndRef<AbstractToken> refToken = inRefs.get(0);
-                final SalesProposal proposal = outSalesProposals.get(0).getState().getData();
-                req.using("The reference token should match the sales proposal output asset",
-                        proposal.isSameAsset(refToken));
-                req.using("The sales proposal offer price should not be zero",
-                        0 < proposal.getPrice().getQuantity());
+                req.using("There should be at least one sales proposal output on offer",
+                        !outSalesProposals.isEmpty());
+                req.using("There should be as many reference input tokens as sales proposal outputs on offer",
+                        inRefs.size() == outSalesProposals.size());
+                final Map<StateRef, StateAndRef<AbstractToken>> refTokens = new HashMap<>();
+                inRefs.forEach(it -> refTokens.put(it.getRef(), it));
                 req.using("There should be a future-bounded time window",
                         tx.getTimeWindow() != null &&
                                 tx.getTimeWindow().getUntilTime() != null);
                 //noinspection ConstantConditions
-                req.using("The expiration date should be after the time window",
-                        tx.getTimeWindow().getUntilTime().isBefore(proposal.getExpirationDate()));
+                final Instant untilTime = tx.getTimeWindow().getUntilTime();
+                final Set<PublicKey> sellerKeys = new HashSet<>();
+                for (final StateAndRef<SalesProposal> outSalesProposal : outSalesProposals) {
+                    final SalesProposal proposal = outSalesProposal.getState().getData();
+                    // Removed so that it cannot back another proposal.
+                    final StateAndRef<AbstractToken> refToken = refTokens.remove(proposal.getAsset().getPointer());
+                    req.using("The reference token should match the sales proposal output asset",
+                            refToken != null && proposal.isSameAsset(refToken));
+                    req.using("The sales proposal offer price should not be zero",
+                            0 < proposal.getPrice().getQuantity());
+                    req.using("The expiration date should be after the time window",
+                            untilTime.isBefore(proposal.getExpirationDate()));
+                    sellerKeys.add(proposal.getSeller().getOwningKey());
+                }
+                // A repeated signer key must not stand in for a missing seller.
+                final Set<PublicKey> signers = new HashSet<>(command.getSigners());
                 req.using("The seller should be the only signer on the offer",
-                        Collections.singletonList(proposal.getSeller().getOwningKey()).equals(command.getSigners()));
+                        signers.size() == command.getSigners().size() && signers.equals(sellerKeys));
 
             } else if (command.getValue() instanceof Commands.Accept) {
                 req.using("There should be a single input sales proposal on accept",
@@ -93,26 +105,39 @@ public class SalesProposalContract implements Contract {
                         Collections.singletonList(proposal.getBuyer().getOwningKey()).equals(command.getSigners()));
 
             } else if (command.getValue() instanceof Commands.Reject) {
-                req.using("There should be a single input sales proposal on reject",
-                        inSalesProposals.size() == 1);
+                // A single reject can clear many proposals at once, for instance when they expire together. So the
+                // proposals are checked in a single pass, against sets, and the time window once at the end.
+                req.using("There should be at least one input sales proposal on reject",
+                        !inSalesProposals.isEmpty());
                 req.using("There should be no sales proposal outputs on reject",
                         outSalesProposals.isEmpty());
-                final SalesProposal proposal = inSalesProposals.get(0).getState().getData();
-                if (command.getSigners().contains(proposal.getSeller().getOwningKey())) {
+                final Set<PublicKey> signers = new HashSet<>(command.getSigners());
+                final Set<PublicKey> participantKeys = new HashSet<>();
+                Instant latestSellerExpiration = null;
+                for (final StateAndRef<SalesProposal> inSalesProposal : inSalesProposals) {
+                    final SalesProposal proposal = inSalesProposal.getState().getData();
+                    final PublicKey sellerKey = proposal.getSeller().getOwningKey();
+                    final boolean sellerSigns = signers.contains(sellerKey);
+                    req.using("The seller or the buyer or both should be signers",
+                            sellerSigns || signers.contains(proposal.getBuyer().getOwningKey()));
+                    if (sellerSigns && (latestSellerExpiration == null ||
+                            latestSellerExpiration.isBefore(proposal.getExpirationDate()))) {
+                        latestSellerExpiration = proposal.getExpirationDate();
+                    }
+                    participantKeys.add(sellerKey);
+                    participantKeys.add(proposal.getBuyer().getOwningKey());
+                }
+                // The buyer can reject at any time.
+                if (latestSellerExpiration != null) {
                     req.using("There should be a past-bounded time window",
                             tx.getTimeWindow() != null &&
                                     tx.getTimeWindow().getFromTime() != null);
                     //noinspection ConstantConditions
                     req.using("The seller time window should be after the expiration date",
-                            proposal.getExpirationDate().isBefore(tx.getTimeWindow().getFromTime()));
-                    // The buyer can reject at any time.
+                            latestSellerExpiration.isBefore(tx.getTimeWindow().getFromTime()));
                 }
-                req.using("The seller or the buyer or both should be signers",
-                        command.getSigners().contains(proposal.getSeller().getOwningKey()) ||
-                                command.getSigners().contains(proposal.getBuyer().getOwningKey()));
                 req.using("Only the seller or the buyer or both should be signers",
-                        Arrays.asList(proposal.getSeller().getOwningKey(), proposal.getBuyer().getOwningKey())
-                                .containsAll(command.getSigners()));
+                        participantKeys.containsAll(signers));
             } else {
                 throw new IllegalArgumentException("Unknown command: " + command.getValue());
             }
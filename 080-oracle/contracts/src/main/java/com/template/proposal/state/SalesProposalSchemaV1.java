@@ -0,0 +1,199 @@
+package com.template.proposal.state;
+
+import com.google.common.collect.ImmutableList;
+import com.r3.corda.lib.tokens.contracts.types.IssuedTokenType;
+import net.corda.core.contracts.Amount;
+import net.corda.core.crypto.CryptoUtils;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.CriteriaExpression;
+import net.corda.core.node.services.vault.FieldInfo;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.QueryCriteriaUtils;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * The table in which the vault indexes the {@link SalesProposal}s, so that they can be listed by seller, buyer,
+ * price or expiration date in the database, with pagination, instead of being loaded and filtered one by one. The static
+ * methods build the criteria to do so, from flows as well as from RPC clients.
+ */
+public class SalesProposalSchemaV1 extends MappedSchema {
+
+    public SalesProposalSchemaV1() {
+        super(SalesProposalSchema.class, 1, ImmutableList.of(PersistentSalesProposal.class));
+    }
+
+    /**
+     * So that the indexes declared on {@link PersistentSalesProposal} are created outside of dev mode too.
+     */
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "sales-proposal.changelog-master";
+    }
+
+    /**
+     * The family of schemas, in case we need to evolve it.
+     */
+    public static class SalesProposalSchema {
+    }
+
+    /**
+     * @return The value found in the seller and buyer columns for this party.
+     */
+    @NotNull
+    public static String keyHashOf(@NotNull final AbstractParty party) {
+        return CryptoUtils.toStringShort(party.getOwningKey());
+    }
+
+    @NotNull
+    private static FieldInfo fieldOf(@NotNull final String name) {
+        try {
+            return QueryCriteriaUtils.getField(name, PersistentSalesProposal.class);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("The schema has no " + name, e);
+        }
+    }
+
+    /**
+     * As in the Corda documentation, the criteria are raw, because the builder does not know the entity type.
+     */
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private static QueryCriteria criteriaOf(@NotNull final CriteriaExpression expression) {
+        return new QueryCriteria.VaultCustomQueryCriteria(expression);
+    }
+
+    @NotNull
+    public static QueryCriteria soldBy(@NotNull final AbstractParty seller) {
+        return criteriaOf(Builder.equal(fieldOf("sellerKeyHash"), keyHashOf(seller)));
+    }
+
+    @NotNull
+    public static QueryCriteria boughtBy(@NotNull final AbstractParty buyer) {
+        return criteriaOf(Builder.equal(fieldOf("buyerKeyHash"), keyHashOf(buyer)));
+    }
+
+    /**
+     * @param from Included.
+     */
+    @NotNull
+    public static QueryCriteria expiringFrom(@NotNull final Instant from) {
+        return criteriaOf(Builder.greaterThanOrEqual(fieldOf("expirationDate"), from));
+    }
+
+    /**
+     * @param before Excluded.
+     */
+    @NotNull
+    public static QueryCriteria expiringBefore(@NotNull final Instant before) {
+        return criteriaOf(Builder.lessThan(fieldOf("expirationDate"), before));
+    }
+
+    @NotNull
+    public static QueryCriteria pricedIn(@NotNull final IssuedTokenType priceToken) {
+        return criteriaOf(Builder.equal(fieldOf("priceTokenIdentifier"), priceToken.getTokenIdentifier()))
+                .and(criteriaOf(Builder.equal(fieldOf("priceIssuer"), priceToken.getIssuer().getName().toString())));
+    }
+
+    /**
+     * @param maxPrice Included.
+     */
+    @NotNull
+    public static QueryCriteria pricedAtMost(@NotNull final Amount<IssuedTokenType> maxPrice) {
+        return pricedIn(maxPrice.getToken())
+                .and(criteriaOf(Builder.lessThanOrEqual(fieldOf("priceQuantity"), maxPrice.getQuantity())));
+    }
+
+    /**
+     * One row per {@link SalesProposal} state. The parties are kept as the short string of their owning key, as they
+     * may be anonymous. The table and its indexes are created by the changelog, which has to follow the declarations
+     * below.
+     */
+    @Entity
+    @Table(name = "sales_proposal_states",
+            indexes = {
+                    @Index(name = "sales_proposal_buyer_expiration_idx",
+                            columnList = "buyer_key_hash, expiration_date"),
+                    @Index(name = "sales_proposal_seller_expiration_idx",
+                            columnList = "seller_key_hash, expiration_date"),
+                    @Index(name = "sales_proposal_expiration_idx", columnList = "expiration_date"),
+                    // The quantity last, so that a price range within a token is served by the index too.
+                    @Index(name = "sales_proposal_price_idx",
+                            columnList = "price_token_identifier, price_issuer, price_quantity")
+            })
+    public static class PersistentSalesProposal extends PersistentState {
+
+        @Column(name = "linear_id", nullable = false)
+        private String linearId;
+        @Column(name = "seller_key_hash", nullable = false)
+        private String sellerKeyHash;
+        @Column(name = "buyer_key_hash", nullable = false)
+        private String buyerKeyHash;
+        @Column(name = "price_token_identifier", nullable = false)
+        private String priceTokenIdentifier;
+        /**
+         * The {@link net.corda.core.identity.CordaX500Name#toString()} of the price issuer.
+         */
+        @Column(name = "price_issuer", nullable = false)
+        private String priceIssuer;
+        /**
+         * In the price token's smallest unit.
+         */
+        @Column(name = "price_quantity", nullable = false)
+        private long priceQuantity;
+        @Column(name = "expiration_date", nullable = false)
+        private Instant expirationDate;
+
+        /**
+         * Required by Hibernate.
+         */
+        public PersistentSalesProposal() {
+        }
+
+        public PersistentSalesProposal(@NotNull final SalesProposal proposal) {
+            final IssuedTokenType priceToken = proposal.getPrice().getToken();
+            this.linearId = proposal.getLinearId().getId().toString();
+            this.sellerKeyHash = keyHashOf(proposal.getSeller());
+            this.buyerKeyHash = keyHashOf(proposal.getBuyer());
+            this.priceTokenIdentifier = priceToken.getTokenIdentifier();
+            this.priceIssuer = priceToken.getIssuer().getName().toString();
+            this.priceQuantity = proposal.getPrice().getQuantity();
+            this.expirationDate = proposal.getExpirationDate();
+        }
+
+        public String getLinearId() {
+            return linearId;
+        }
+
+        public String getSellerKeyHash() {
+            return sellerKeyHash;
+        }
+
+        public String getBuyerKeyHash() {
+            return buyerKeyHash;
+        }
+
+        public String getPriceTokenIdentifier() {
+            return priceTokenIdentifier;
+        }
+
+        public String getPriceIssuer() {
+            return priceIssuer;
+        }
+
+        public long getPriceQuantity() {
+            return priceQuantity;
+        }
+
+        public Instant getExpirationDate() {
+            return expirationDate;
+        }
+    }
+}
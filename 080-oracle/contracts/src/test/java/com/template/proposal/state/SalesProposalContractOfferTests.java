@@ -97,7 +97,7 @@ public class SalesProposalContractOfferTests {
     }
 
     @Test
-    public void thereShouldBeASingleReferenceTokenState() {
+    public void thereShouldBeAsManyReferenceTokenStatesAsOutputs() {
         ledger(ledgerServices, ledger -> {
             final WireTransaction aliceIssueTx = issueToken(ledger, dealer, aliceNFToken);
             final WireTransaction bobIssueTx = issueToken(ledger, usMint, bobFToken);
@@ -107,13 +107,13 @@ public class SalesProposalContractOfferTests {
                         new SalesProposal(new UniqueIdentifier(), aliceIssueTx.outRef(0),
                                 bob, amount2, tenMinutesAway));
                 tx.timeWindow(Instant.now(), Duration.ofMinutes(1));
-                tx.failsWith("There should be a single reference input token on offer");
+                tx.failsWith("There should be as many reference input tokens as sales proposal outputs on offer");
 
                 tx.reference(aliceIssueTx.outRef(0).getRef());
                 tx.verifies();
 
                 tx.reference(bobIssueTx.outRef(0).getRef());
-                return tx.failsWith("There should be a single reference input token on offer");
+                return tx.failsWith("There should be as many reference input tokens as sales proposal outputs on offer");
             });
             return null;
         });
@@ -143,7 +143,7 @@ public class SalesProposalContractOfferTests {
     }
 
     @Test
-    public void thereShouldBeASingleSalesProposalOutput() {
+    public void thereShouldBeAtLeastOneSalesProposalOutput() {
         ledger(ledgerServices, ledger -> {
             final WireTransaction aliceIssueTx = issueToken(ledger, dealer, aliceNFToken);
             final WireTransaction bobIssueTx = issueToken(ledger, dealer, bobNFToken);
@@ -152,7 +152,7 @@ public class SalesProposalContractOfferTests {
                 tx.command(Collections.singletonList(alice.getOwningKey()), new SalesProposalContract.Commands.Offer());
                 tx.reference(aliceIssueTx.outRef(0).getRef());
                 tx.timeWindow(Instant.now(), Duration.ofMinutes(1));
-                tx.failsWith("There should be a single sales proposal output on offer");
+                tx.failsWith("There should be at least one sales proposal output on offer");
 
                 tx.output(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
                         new SalesProposal(new UniqueIdentifier(), aliceIssueTx.outRef(0),
@@ -162,7 +162,8 @@ public class SalesProposalContractOfferTests {
                 tx.output(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
                         new SalesProposal(new UniqueIdentifier(), bobIssueTx.outRef(0),
                                 carly, amount3, tenMinutesAway));
-                return tx.failsWith("There should be a single sales proposal output on offer");
+                return tx.failsWith(
+                        "There should be as many reference input tokens as sales proposal outputs on offer");
             });
             return null;
         });
@@ -293,4 +294,78 @@ public class SalesProposalContractOfferTests {
         });
     }
 
-}
\ No newline at end of file
+    @Test
+    public void manyProposalsCanBeOfferedAtOnce() {
+        ledger(ledgerServices, ledger -> {
+            final WireTransaction aliceIssueTx1 = issueToken(ledger, dealer, aliceNFToken);
+            final WireTransaction aliceIssueTx2 = issueToken(ledger, dealer, aliceNFToken);
+            final WireTransaction bobIssueTx = issueToken(ledger, dealer, bobNFToken);
+            ledger.transaction(tx -> {
+                tx.reference(aliceIssueTx1.outRef(0).getRef());
+                tx.reference(aliceIssueTx2.outRef(0).getRef());
+                tx.output(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
+                        new SalesProposal(new UniqueIdentifier(), aliceIssueTx1.outRef(0),
+                                bob, amount2, tenMinutesAway));
+                tx.timeWindow(Instant.now(), Duration.ofMinutes(1));
+                tx.command(Collections.singletonList(alice.getOwningKey()),
+                        new SalesProposalContract.Commands.Offer());
+
+                tx.tweak(txCopy -> {
+                    // The same reference token cannot back 2 proposals.
+                    txCopy.output(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
+                            new SalesProposal(new UniqueIdentifier(), aliceIssueTx1.outRef(0),
+                                    carly, amount3, tenMinutesAway));
+                    return txCopy.failsWith("The reference token should match the sales proposal output asset");
+                });
+
+                tx.output(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
+                        new SalesProposal(new UniqueIdentifier(), aliceIssueTx2.outRef(0),
+                                carly, amount3, tenMinutesAway));
+                tx.verifies();
+
+                // Another seller needs to sign too.
+                tx.reference(bobIssueTx.outRef(0).getRef());
+                tx.output(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
+                        new SalesProposal(new UniqueIdentifier(), bobIssueTx.outRef(0),
+                                carly, amount3, tenMinutesAway));
+                tx.failsWith("The seller should be the only signer on the offer");
+
+                tx.command(Arrays.asList(alice.getOwningKey(), bob.getOwningKey()),
+                        new SalesProposalContract.Commands.Offer());
+                return tx.failsWith("There should be a single sales proposal command");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void aRepeatedSellerCannotStandInForAMissingOne() {
+        ledger(ledgerServices, ledger -> {
+            final WireTransaction aliceIssueTx = issueToken(ledger, dealer, aliceNFToken);
+            final WireTransaction bobIssueTx = issueToken(ledger, dealer, bobNFToken);
+            ledger.transaction(tx -> {
+                tx.reference(aliceIssueTx.outRef(0).getRef());
+                tx.reference(bobIssueTx.outRef(0).getRef());
+                tx.output(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
+                        new SalesProposal(new UniqueIdentifier(), aliceIssueTx.outRef(0),
+                                carly, amount2, tenMinutesAway));
+                tx.output(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
+                        new SalesProposal(new UniqueIdentifier(), bobIssueTx.outRef(0),
+                                carly, amount3, tenMinutesAway));
+                tx.timeWindow(Instant.now(), Duration.ofMinutes(1));
+
+                tx.tweak(txCopy -> {
+                    txCopy.command(Arrays.asList(alice.getOwningKey(), alice.getOwningKey()),
+                            new SalesProposalContract.Commands.Offer());
+                    return txCopy.failsWith("The seller should be the only signer on the offer");
+                });
+
+                tx.command(Arrays.asList(alice.getOwningKey(), bob.getOwningKey()),
+                        new SalesProposalContract.Commands.Offer());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
+}
@@ -47,27 +47,29 @@ public class SalesProposalContractRejectTests {
     private final Amount<IssuedTokenType> amount1 = new Amount<>(20L, mintUsd);
     private final NonFungibleToken aliceNFToken = new NonFungibleToken(
             carType, alice, new UniqueIdentifier(), null);
+    private final NonFungibleToken carlyNFToken = new NonFungibleToken(
+            carType, carly, new UniqueIdentifier(), null);
     private final Instant tenMinutesAgo = Instant.now().minus(Duration.ofMinutes(10));
 
     @Test
-    public void thereShouldBeASingleInputSalesProposal() {
+    public void thereShouldBeAtLeastOneInputSalesProposal() {
         ledger(ledgerServices, ledger -> {
             ledger.transaction(tx -> {
                 final WireTransaction aliceIssueTx = issueToken(ledger, dealer, aliceNFToken);
                 tx.command(Collections.singletonList(alice.getOwningKey()),
                         new SalesProposalContract.Commands.Reject());
+                tx.timeWindow(Instant.now(), Duration.ofMinutes(1));
+                tx.failsWith("There should be at least one input sales proposal on reject");
+
                 tx.input(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
                         new SalesProposal(new UniqueIdentifier(), aliceIssueTx.outRef(0),
                                 bob, amount1, tenMinutesAgo));
-                tx.timeWindow(Instant.now(), Duration.ofMinutes(1));
                 tx.verifies();
 
-                return tx.tweak(txCopy -> {
-                    txCopy.input(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
-                            new SalesProposal(new UniqueIdentifier(), aliceIssueTx.outRef(0),
-                                    bob, amount1, tenMinutesAgo));
-                    return txCopy.failsWith("There should be a single input sales proposal on reject");
-                });
+                tx.input(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
+                        new SalesProposal(new UniqueIdentifier(), aliceIssueTx.outRef(0),
+                                bob, amount1, tenMinutesAgo));
+                return tx.verifies();
             });
             return null;
         });
@@ -201,4 +203,67 @@ public class SalesProposalContractRejectTests {
         });
     }
 
-}
\ No newline at end of file
+    @Test
+    public void theSellerTimeWindowShouldBeAfterAllExpirationDates() {
+        ledger(ledgerServices, ledger -> {
+            final WireTransaction aliceIssueTx = issueToken(ledger, dealer, aliceNFToken);
+            ledger.transaction(tx -> {
+                tx.command(Collections.singletonList(alice.getOwningKey()),
+                        new SalesProposalContract.Commands.Reject());
+                tx.input(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
+                        new SalesProposal(new UniqueIdentifier(), aliceIssueTx.outRef(0),
+                                bob, amount1, tenMinutesAgo));
+                tx.timeWindow(Instant.now(), Duration.ofMinutes(1));
+                tx.verifies();
+
+                tx.input(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
+                        new SalesProposal(new UniqueIdentifier(), aliceIssueTx.outRef(0),
+                                carly, amount1, Instant.now().plus(Duration.ofMinutes(10))));
+                return tx.failsWith("The seller time window should be after the expiration date");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void eachProposalShouldHaveItsSellerOrBuyerAsSigner() {
+        ledger(ledgerServices, ledger -> {
+            final WireTransaction aliceIssueTx = issueToken(ledger, dealer, aliceNFToken);
+            final WireTransaction carlyIssueTx = issueToken(ledger, dealer, carlyNFToken);
+            ledger.transaction(tx -> {
+                tx.input(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
+                        new SalesProposal(new UniqueIdentifier(), aliceIssueTx.outRef(0),
+                                bob, amount1, tenMinutesAgo));
+                tx.input(SalesProposalContract.SALES_PROPOSAL_CONTRACT_ID,
+                        new SalesProposal(new UniqueIdentifier(), carlyIssueTx.outRef(0),
+                                bob, amount1, tenMinutesAgo));
+                tx.timeWindow(Instant.now(), Duration.ofMinutes(1));
+
+                tx.tweak(txCopy -> {
+                    txCopy.command(Collections.singletonList(alice.getOwningKey()),
+                            new SalesProposalContract.Commands.Reject());
+                    return txCopy.failsWith("The seller or the buyer or both should be signers");
+                });
+
+                tx.tweak(txCopy -> {
+                    txCopy.command(Arrays.asList(alice.getOwningKey(), carly.getOwningKey(), dealer.getOwningKey()),
+                            new SalesProposalContract.Commands.Reject());
+                    return txCopy.failsWith("Only the seller or the buyer or both should be signers");
+                });
+
+                tx.tweak(txCopy -> {
+                    // The buyer can reject both at once.
+                    txCopy.command(Collections.singletonList(bob.getOwningKey()),
+                            new SalesProposalContract.Commands.Reject());
+                    return txCopy.verifies();
+                });
+
+                tx.command(Arrays.asList(alice.getOwningKey(), carly.getOwningKey()),
+                        new SalesProposalContract.Commands.Reject());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
+}
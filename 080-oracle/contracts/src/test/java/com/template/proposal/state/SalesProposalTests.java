@@ -162,4 +162,28 @@ public class SalesProposalTests {
                         Instant.now().plus(2, ChronoUnit.MINUTES)).hashCode());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void mappedObjectHasTheIndexedColumns() {
+        final UniqueIdentifier linearId = new UniqueIdentifier();
+        final SalesProposal proposal = new SalesProposal(linearId, aliceRef1, bob, amount1, oneMinuteAway);
+        final SalesProposalSchemaV1.PersistentSalesProposal mapped = (SalesProposalSchemaV1.PersistentSalesProposal)
+                proposal.generateMappedObject(new SalesProposalSchemaV1());
+        assertEquals(linearId.getId().toString(), mapped.getLinearId());
+        assertEquals(SalesProposalSchemaV1.keyHashOf(alice), mapped.getSellerKeyHash());
+        assertEquals(SalesProposalSchemaV1.keyHashOf(bob), mapped.getBuyerKeyHash());
+        assertEquals("USD", mapped.getPriceTokenIdentifier());
+        assertEquals(usMint.getName().toString(), mapped.getPriceIssuer());
+        assertEquals(15L, mapped.getPriceQuantity());
+        assertEquals(oneMinuteAway, mapped.getExpirationDate());
+    }
+
+    @Test
+    public void expiryBucketEndIsTheNextWholeBucket() {
+        final Instant bucketStart = Instant.parse("2020-01-01T10:00:00Z");
+        final Instant bucketEnd = bucketStart.plus(SalesProposal.EXPIRY_BUCKET);
+        assertEquals(bucketEnd, SalesProposal.getExpiryBucketEnd(bucketStart));
+        assertEquals(bucketEnd, SalesProposal.getExpiryBucketEnd(bucketStart.plusSeconds(59)));
+        assertEquals(bucketEnd.plus(SalesProposal.EXPIRY_BUCKET), SalesProposal.getExpiryBucketEnd(bucketEnd));
+    }
+
+}
@@ -548,8 +548,81 @@ public interface DueDiligenceOracleFlows {
             @Override
             public TransactionSignature call() throws FlowException {
                 final Party oracleHost = getServiceHub().getIdentityService().requireWellKnownPartyFromAnonymous(oracle);
-                return initiateFlow(oracleHost)
-                        .sendAndReceive(TransactionSignature.class, DiligenceOracleUtilities.filter(tx, oracle))
+                final FlowSession oracleSession = initiateFlow(oracleHost);
+                oracleSession.send(DiligenceOracleUtilities.filter(tx, oracle));
+                return subFlow(new ReceiveSignature(oracleSession, oracle, tx));
+            }
+        }
+
+        /**
+         * Like {@link Request}, except that it returns as soon as the filtered transaction is sent, so that the caller
+         * can do something else while the oracle works on it. The caller then collects the signature on the returned
+         * session with {@link ReceiveSignature}.
+         * Its handler is {@link AnswerSent}.
+         */
+        @InitiatingFlow
+        class SendRequest extends FlowLogic<FlowSession> {
+
+            @NotNull
+            private final AbstractParty oracle;
+            @NotNull
+            private final WireTransaction tx;
+
+            public SendRequest(
+                    @NotNull final AbstractParty oracle,
+                    @NotNull final WireTransaction tx) {
+                //noinspection ConstantConditions
+                if (oracle == null) throw new NullPointerException("oracle cannot be null");
+                //noinspection ConstantConditions
+                if (tx == null) throw new NullPointerException("tx cannot be null");
+                this.oracle = oracle;
+                this.tx = tx;
+            }
+
+            @Suspendable
+            @NotNull
+            @Override
+            public FlowSession call() throws FlowException {
+                final Party oracleHost = getServiceHub().getIdentityService().requireWellKnownPartyFromAnonymous(oracle);
+                final FlowSession oracleSession = initiateFlow(oracleHost);
+                oracleSession.send(DiligenceOracleUtilities.filter(tx, oracle));
+                return oracleSession;
+            }
+        }
+
+        /**
+         * Receives and checks the oracle's signature of a transaction sent with {@link Request} or
+         * {@link SendRequest}.
+         */
+        class ReceiveSignature extends FlowLogic<TransactionSignature> {
+
+            @NotNull
+            private final FlowSession oracleSession;
+            @NotNull
+            private final AbstractParty oracle;
+            @NotNull
+            private final WireTransaction tx;
+
+            public ReceiveSignature(
+                    @NotNull final FlowSession oracleSession,
+                    @NotNull final AbstractParty oracle,
+                    @NotNull final WireTransaction tx) {
+                //noinspection ConstantConditions
+                if (oracleSession == null) throw new NullPointerException("oracleSession cannot be null");
+                //noinspection ConstantConditions
+                if (oracle == null) throw new NullPointerException("oracle cannot be null");
+                //noinspection ConstantConditions
+                if (tx == null) throw new NullPointerException("tx cannot be null");
+                this.oracleSession = oracleSession;
+                this.oracle = oracle;
+                this.tx = tx;
+            }
+
+            @Suspendable
+            @NotNull
+            @Override
+            public TransactionSignature call() throws FlowException {
+                return oracleSession.receive(TransactionSignature.class)
                         .unwrap(sig -> {
                             if (sig.getBy().equals(oracle.getOwningKey())) {
                                 tx.checkSignature(sig);
@@ -590,6 +663,15 @@ public interface DueDiligenceOracleFlows {
             }
         }
 
+        @SuppressWarnings("unused")
+        @InitiatedBy(SendRequest.class)
+        class AnswerSent extends Answer {
+
+            public AnswerSent(@NotNull final FlowSession requesterSession) {
+                super(requesterSession);
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,132 @@
+package com.template.proposal.client;
+
+import com.template.proposal.flow.SalesProposalAcceptFlows.AcceptSimpleFlow;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+import net.corda.core.transactions.SignedTransaction;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * For RPC clients that accept many proposals. It keeps up to maxInFlight {@link AcceptSimpleFlow}s running on the
+ * node, and starts the next one as soon as one completes, so that the node and the notary are kept busy without the
+ * client waiting on each transaction in turn, nor running a thread per proposal.
+ * - {@link #submit(UniqueIdentifier)} blocks only while maxInFlight flows are running, which is the back-pressure.
+ * - Each proposal gets its own result, or its own error, in the order in which they complete. A failed accept does not
+ * stop the others.
+ * - The results are delivered on the RPC client's threads, so the callbacks should be short. A slot is freed only after
+ * its result has been delivered, so that {@link #awaitIdle()} returns after the last callback, which means that the
+ * callbacks must not submit.
+ */
+public class AcceptPipeline {
+
+    /**
+     * Called once per submitted proposal.
+     */
+    public interface Listener {
+        void onAccepted(@NotNull final UniqueIdentifier proposalId, @NotNull final SignedTransaction tx);
+
+        void onFailed(@NotNull final UniqueIdentifier proposalId, @NotNull final Throwable error);
+    }
+
+    @NotNull
+    private final CordaRPCOps rpcOps;
+    private final int maxInFlight;
+    @NotNull
+    private final Semaphore inFlight;
+
+    public AcceptPipeline(@NotNull final CordaRPCOps rpcOps, final int maxInFlight) {
+        //noinspection ConstantConditions
+        if (rpcOps == null) throw new NullPointerException("The rpcOps cannot be null");
+        if (maxInFlight < 1) throw new IllegalArgumentException("The maxInFlight must be at least 1");
+        this.rpcOps = rpcOps;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return How many accepts are running on the node.
+     */
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * Waits for a free slot, then starts the accept of this proposal.
+     * @return The future of the accept transaction. It fails with the flow's exception, or with the exception from
+     * starting it.
+     */
+    @NotNull
+    public CompletableFuture<SignedTransaction> submit(@NotNull final UniqueIdentifier proposalId)
+            throws InterruptedException {
+        //noinspection ConstantConditions
+        if (proposalId == null) throw new NullPointerException("The proposalId cannot be null");
+        inFlight.acquire();
+        final CompletableFuture<SignedTransaction> result = new CompletableFuture<>();
+        final FlowHandle<SignedTransaction> handle;
+        try {
+            handle = rpcOps.startFlowDynamic(AcceptSimpleFlow.class, proposalId);
+        } catch (RuntimeException e) {
+            try {
+                result.completeExceptionally(e);
+            } finally {
+                inFlight.release();
+            }
+            return result;
+        }
+        handle.getReturnValue().toCompletableFuture().whenComplete((tx, error) -> {
+            handle.close();
+            try {
+                if (error == null) result.complete(tx);
+                else result.completeExceptionally(unwrap(error));
+            } finally {
+                inFlight.release();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Submits the proposals in turn, keeping maxInFlight of them running, and returns once they have all been
+     * started. Call {@link #awaitIdle()} to wait for the last ones to complete.
+     */
+    public void submitAll(
+            @NotNull final Iterable<UniqueIdentifier> proposalIds,
+            @NotNull final Listener listener) throws InterruptedException {
+        //noinspection ConstantConditions
+        if (proposalIds == null) throw new NullPointerException("The proposalIds cannot be null");
+        //noinspection ConstantConditions
+        if (listener == null) throw new NullPointerException("The listener cannot be null");
+        for (final UniqueIdentifier proposalId : proposalIds) {
+            submit(proposalId).whenComplete((tx, error) -> {
+                if (error == null) listener.onAccepted(proposalId, tx);
+                else listener.onFailed(proposalId, error);
+            });
+        }
+    }
+
+    /**
+     * Waits until no accept is running.
+     */
+    public void awaitIdle() throws InterruptedException {
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+    }
+
+    @NotNull
+    private static Throwable unwrap(@NotNull final Throwable error) {
+        if ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) return error.getCause();
+        return error;
+    }
+
+}
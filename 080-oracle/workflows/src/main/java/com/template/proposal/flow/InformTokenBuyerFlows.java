@@ -4,6 +4,7 @@ import co.paralleluniverse.fibers.Suspendable;
 import com.r3.corda.lib.tokens.contracts.states.EvolvableTokenType;
 import com.r3.corda.lib.tokens.contracts.types.TokenPointer;
 import com.r3.corda.lib.tokens.contracts.types.TokenType;
+import com.template.proposal.service.PointerResolutionCache;
 import com.template.proposal.state.SalesProposal;
 import net.corda.core.contracts.StateAndRef;
 import net.corda.core.contracts.TransactionResolutionException;
@@ -132,10 +133,10 @@ public interface InformTokenBuyerFlows {
                 final TokenType it = extractTokenType(salesProposalStateAndRef);
                 // You have to account for the fact that some SalesProposals may use a fixed TokenType.
                 if (it.isPointer()) {
+                    // The pointer already is the linear id, no need to resolve it.
                     //noinspection unchecked
                     final UniqueIdentifier linearId = ((TokenPointer<EvolvableTokenType>) it).getPointer()
-                            .resolve(getServiceHub())
-                            .getState().getData().getLinearId();
+                            .getPointer();
                     if (outputIds.contains(linearId)) {
                         relevant = true;
                         break;
@@ -148,8 +149,9 @@ public interface InformTokenBuyerFlows {
         @NotNull
         private TokenType extractTokenType(@NotNull final StateAndRef<SalesProposal> proposal)
                 throws TransactionResolutionException {
-            return proposal.getState().getData()
-                    .getAsset().resolve(getServiceHub()).getState().getData().getTokenType();
+            return getServiceHub().cordaService(PointerResolutionCache.class)
+                    .resolve(proposal.getState().getData().getAsset())
+                    .getState().getData().getTokenType();
         }
     }
 
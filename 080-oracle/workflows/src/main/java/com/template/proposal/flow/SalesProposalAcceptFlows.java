@@ -15,9 +15,10 @@ import com.template.diligence.state.DiligenceOracleUtilities.Status;
 import com.template.diligence.state.DueDiligence;
 import com.template.diligence.state.DueDiligenceContract;
 import com.template.diligence.state.DueDiligenceContract.Commands.Certify;
+import com.template.proposal.service.InMemoryTokenSelector;
+import com.template.proposal.service.PointerResolutionCache;
 import com.template.proposal.state.SalesProposal;
 import com.template.proposal.state.SalesProposalContract;
-import kotlin.Pair;
 import net.corda.core.contracts.*;
 import net.corda.core.crypto.SecureHash;
 import net.corda.core.crypto.TransactionSignature;
@@ -125,6 +126,11 @@ public interface SalesProposalAcceptFlows {
                         @NotNull final AbstractParty buyer) {
                     return QueryUtilitiesKt.heldTokenAmountCriteria(issuedCurrency.getTokenType(), buyer);
                 }
+
+                @Override
+                protected boolean isHeldByBuyerPlain() {
+                    return true;
+                }
             });
         }
     }
@@ -138,11 +144,12 @@ public interface SalesProposalAcceptFlows {
         private final static Step MOVING_ASSET_TO_BUYER = new Step("Adding asset to buyer.");
         private final static Step PREPARING_TOKENS_FOR_PAYMENT = new Step("Preparing tokens for payment.");
         private final static Step VERIFYING_TRANSACTION = new Step("Verifying contract constraints.");
+        private final static Step SIGNING_TRANSACTION = new Step("Signing transaction with our private keys.");
+        private final static Step ASKING_ORACLE = new Step("Asking oracle for certification.");
         private final static Step RESOLVING_SELLER = new Step("Resolving host of seller.");
         private final static Step SENDING_STATE_REFS = new Step("Sending token state and refs.");
         private final static Step SENDING_MISSING_KEYS = new Step("Sending potentially missing keys.");
-        private final static Step SIGNING_TRANSACTION = new Step("Signing transaction with our private keys.");
-        private final static Step ASKING_ORACLE = new Step("Asking oracle for certification.");
+        private final static Step RECEIVING_ORACLE_SIG = new Step("Receiving oracle certification.");
         private final static Step GATHERING_SIGS = new Step("Gathering the counterparty's signature.") {
             @Override
             public ProgressTracker childProgressTracker() {
@@ -163,11 +170,12 @@ public interface SalesProposalAcceptFlows {
                     MOVING_ASSET_TO_BUYER,
                     PREPARING_TOKENS_FOR_PAYMENT,
                     VERIFYING_TRANSACTION,
+                    SIGNING_TRANSACTION,
+                    ASKING_ORACLE,
                     RESOLVING_SELLER,
                     SENDING_STATE_REFS,
                     SENDING_MISSING_KEYS,
-                    SIGNING_TRANSACTION,
-                    ASKING_ORACLE,
+                    RECEIVING_ORACLE_SIG,
                     GATHERING_SIGS,
                     FINALISING_TRANSACTION);
         }
@@ -221,11 +229,20 @@ public interface SalesProposalAcceptFlows {
                 @NotNull final IssuedTokenType issuedCurrency,
                 @NotNull final AbstractParty buyer) throws FlowException;
 
+        /**
+         * @return Whether {@link #getHeldByBuyer} only selects the tokens held by the buyer, in which case they can be
+         * selected by {@link InMemoryTokenSelector} when it is enabled.
+         */
+        protected boolean isHeldByBuyerPlain() {
+            return false;
+        }
+
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
             final SalesProposal proposal = proposalRef.getState().getData();
-            final NonFungibleToken asset = proposal.getAsset().resolve(getServiceHub()).getState().getData();
+            final NonFungibleToken asset = getServiceHub().cordaService(PointerResolutionCache.class)
+                    .resolve(proposal.getAsset()).getState().getData();
             final DueDiligence dueDil;
             if (dueDiligenceRef != null) dueDil = dueDiligenceRef.getState().getData();
             else dueDil = null;
@@ -259,38 +276,17 @@ public interface SalesProposalAcceptFlows {
             progressTracker.setCurrentStep(PREPARING_TOKENS_FOR_PAYMENT);
             final IssuedTokenType issuedCurrency = proposal.getPrice().getToken();
             final QueryCriteria heldByBuyer = getHeldByBuyer(issuedCurrency, proposal.getBuyer());
-            final Pair<List<StateAndRef<FungibleToken>>, List<FungibleToken>> moniesInOut =
-                    new SalesProposalUtils(this).generateMove(proposal, heldByBuyer);
-            MoveTokensUtilitiesKt.addMoveTokens(builder, moniesInOut.getFirst(), moniesInOut.getSecond());
+            final SalesProposalUtils.Move moniesInOut =
+                    new SalesProposalUtils(this).generateMove(proposal, heldByBuyer, isHeldByBuyerPlain());
+            MoveTokensUtilitiesKt.addMoveTokens(builder, moniesInOut.getInputs(), moniesInOut.getOutputs());
 
             progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
             builder.verify(getServiceHub());
 
-            progressTracker.setCurrentStep(RESOLVING_SELLER);
-            final Party sellerHost = getServiceHub().getIdentityService()
-                    .requireWellKnownPartyFromAnonymous(proposal.getSeller());
-            final FlowSession sellerSession = initiateFlow(sellerHost);
-
-            progressTracker.setCurrentStep(SENDING_STATE_REFS);
-            // Send potentially missing StateRefs blindly.
-            final ArrayList<StateAndRef<? extends ContractState>> allStateRef =
-                    new ArrayList<>(moniesInOut.getFirst());
-            if (dueDiligenceRef != null) allStateRef.add(dueDiligenceRef);
-            subFlow(new SendStateAndRefFlow(sellerSession, allStateRef));
-
-            progressTracker.setCurrentStep(SENDING_MISSING_KEYS);
-            // Send potentially missing keys blindly.
-            final List<AbstractParty> moniesKeys = moniesInOut.getFirst().stream()
+            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            final List<AbstractParty> moniesKeys = moniesInOut.getInputs().stream()
                     .map(it -> it.getState().getData().getHolder())
                     .collect(Collectors.toList());
-            final List<AbstractParty> allKeys = new ArrayList<>(moniesKeys);
-            if (dueDil != null) {
-                allKeys.addAll(dueDil.getParticipants());
-                allKeys.add(dueDil.getOracle());
-            }
-            subFlow(new SyncKeyMappingFlow(sellerSession, allKeys));
-
-            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
             final List<PublicKey> ourKeys = moniesKeys.stream()
                     .map(AbstractParty::getOwningKey)
                     .collect(Collectors.toList());
@@ -304,13 +300,60 @@ public interface SalesProposalAcceptFlows {
                         .forEach(ourKeys::add);
             }
             final SignedTransaction acceptTx = getServiceHub().signInitialTransaction(builder, ourKeys);
+            // So that the coin selection strategies can be compared on the transactions they produce, which only
+            // those selected in memory are.
+            if (moniesInOut.getSource() == SalesProposalUtils.TokenSource.IN_MEMORY)
+                getServiceHub().cordaService(InMemoryTokenSelector.class).recordTransaction(acceptTx);
 
+            // The oracle only needs the transaction, so we do not wait for its answer before syncing with the seller.
             progressTracker.setCurrentStep(ASKING_ORACLE);
-            final SignedTransaction certifiedTx;
+            final FlowSession oracleSession;
+            if (dueDil != null) {
+                oracleSession = subFlow(new DueDiligenceOracleFlows.Certify.SendRequest(
+                        dueDil.getOracle(),
+                        acceptTx.getTx()));
+            } else {
+                oracleSession = null;
+            }
+            // From the node clock, as the flow may be restored from a checkpoint in between.
+            final Instant syncStart = getLogger().isDebugEnabled() ? getServiceHub().getClock().instant() : null;
+
+            progressTracker.setCurrentStep(RESOLVING_SELLER);
+            final Party sellerHost = getServiceHub().getIdentityService()
+                    .requireWellKnownPartyFromAnonymous(proposal.getSeller());
+            final FlowSession sellerSession = initiateFlow(sellerHost);
+
+            progressTracker.setCurrentStep(SENDING_STATE_REFS);
+            // The seller only fetches the transactions it does not have, so there is no need to ask it first.
+            final List<StateAndRef<? extends ContractState>> allStateRef = new ArrayList<>(moniesInOut.getInputs());
+            if (dueDiligenceRef != null) allStateRef.add(dueDiligenceRef);
+            subFlow(new SendStateAndRefFlow(sellerSession, allStateRef));
+
+            progressTracker.setCurrentStep(SENDING_MISSING_KEYS);
+            // Likewise, the seller only asks for the identities of the keys it does not know.
+            final List<AbstractParty> allKeys = new ArrayList<>(moniesKeys);
             if (dueDil != null) {
-                final TransactionSignature oracleSig = subFlow(new DueDiligenceOracleFlows.Certify.Request(
+                allKeys.addAll(dueDil.getParticipants());
+                allKeys.add(dueDil.getOracle());
+            }
+            subFlow(new SyncKeyMappingFlow(sellerSession, allKeys.stream().distinct().collect(Collectors.toList())));
+
+            progressTracker.setCurrentStep(RECEIVING_ORACLE_SIG);
+            final SignedTransaction certifiedTx;
+            if (oracleSession != null) {
+                final Instant waitStart = syncStart == null ? null : getServiceHub().getClock().instant();
+                // We know for sure that dueDil is not null, because oracleSession is not null.
+                //noinspection ConstantConditions
+                final TransactionSignature oracleSig = subFlow(new DueDiligenceOracleFlows.Certify.ReceiveSignature(
+                        oracleSession,
                         dueDil.getOracle(),
                         acceptTx.getTx()));
+                if (waitStart != null && getLogger().isDebugEnabled()) {
+                    // What is left of the oracle round-trip after the seller sync, the rest has been saved.
+                    getLogger().debug("Seller sync took {} ms, then waited {} ms for the oracle",
+                            Duration.between(syncStart, waitStart).toMillis(),
+                            Duration.between(waitStart, getServiceHub().getClock().instant()).toMillis());
+                }
                 certifiedTx = acceptTx.withAdditionalSignature(oracleSig);
             } else {
                 certifiedTx = acceptTx;
@@ -1,6 +1,7 @@
 package com.template.proposal.flow;
 
 import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
 import com.r3.corda.lib.ci.workflows.SyncKeyMappingFlow;
 import com.r3.corda.lib.ci.workflows.SyncKeyMappingFlowHandler;
 import com.r3.corda.lib.tokens.contracts.states.NonFungibleToken;
@@ -15,16 +16,17 @@ import net.corda.core.flows.*;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
 import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.CordaSerializable;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 import net.corda.core.utilities.ProgressTracker.Step;
 import org.jetbrains.annotations.NotNull;
 
+import java.security.PublicKey;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 public interface SalesProposalOfferFlows {
 
@@ -244,6 +246,168 @@ public interface SalesProposalOfferFlows {
         }
     }
 
+    /**
+     * One of the proposals to make in {@link OfferBulkFlow}.
+     */
+    @CordaSerializable
+    class OfferItem {
+        @NotNull
+        private final StateAndRef<NonFungibleToken> asset;
+        @NotNull
+        private final AbstractParty buyer;
+        @NotNull
+        private final Amount<IssuedTokenType> price;
+        @NotNull
+        private final Instant expirationDate;
+
+        public OfferItem(@NotNull final StateAndRef<NonFungibleToken> asset,
+                         @NotNull final AbstractParty buyer,
+                         @NotNull final Amount<IssuedTokenType> price,
+                         @NotNull final Instant expirationDate) {
+            //noinspection ConstantConditions
+            if (asset == null) throw new NullPointerException("The asset cannot be null");
+            //noinspection ConstantConditions
+            if (buyer == null) throw new NullPointerException("The buyer cannot be null");
+            //noinspection ConstantConditions
+            if (price == null) throw new NullPointerException("The price cannot be null");
+            //noinspection ConstantConditions
+            if (expirationDate == null) throw new NullPointerException("The expirationDate cannot be null");
+            this.asset = asset;
+            this.buyer = buyer;
+            this.price = price;
+            this.expirationDate = expirationDate;
+        }
+
+        @NotNull
+        public StateAndRef<NonFungibleToken> getAsset() {
+            return asset;
+        }
+
+        @NotNull
+        public AbstractParty getBuyer() {
+            return buyer;
+        }
+
+        @NotNull
+        public Amount<IssuedTokenType> getPrice() {
+            return price;
+        }
+
+        @NotNull
+        public Instant getExpirationDate() {
+            return expirationDate;
+        }
+    }
+
+    /**
+     * Makes many proposals in a single transaction, so a single notarisation and a single finality round-trip. All the
+     * assets need to be on the same notary, and all the buyers on the same host, because the whole transaction is
+     * sent to each participant and the proposals should not be disclosed to other buyers' hosts.
+     * Its handler is {@link OfferBulkHandlerFlow}.
+     */
+    @StartableByRPC
+    @InitiatingFlow
+    class OfferBulkFlow extends FlowLogic<SignedTransaction> {
+
+        private final static Step GENERATING_TRANSACTION = new Step("Generating transaction based on parameters.");
+        private final static Step VERIFYING_TRANSACTION = new Step("Verifying contract constraints.");
+        private final static Step SIGNING_TRANSACTION = new Step("Signing transaction with our private keys.");
+        private final static Step FINALISING_TRANSACTION = new Step("Obtaining notary signature and recording transaction.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(
+                    GENERATING_TRANSACTION,
+                    VERIFYING_TRANSACTION,
+                    SIGNING_TRANSACTION,
+                    FINALISING_TRANSACTION);
+        }
+
+        @NotNull
+        private final List<OfferItem> items;
+        @NotNull
+        private final ProgressTracker progressTracker;
+
+        public OfferBulkFlow(@NotNull final List<OfferItem> items,
+                             @NotNull final ProgressTracker progressTracker) {
+            //noinspection ConstantConditions
+            if (items == null) throw new NullPointerException("The items cannot be null");
+            if (items.isEmpty()) throw new IllegalArgumentException("There should be at least one item");
+            //noinspection ConstantConditions
+            if (progressTracker == null) throw new NullPointerException("The progressTracker cannot be null");
+            this.items = ImmutableList.copyOf(items);
+            this.progressTracker = progressTracker;
+        }
+
+        public OfferBulkFlow(@NotNull final List<OfferItem> items) {
+            this(items, tracker());
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+            final Party notary = items.get(0).getAsset().getState().getNotary();
+            final Set<StateRef> assetRefs = new HashSet<>();
+            // The same seller may appear many times, yet needs to sign and be synced only once.
+            final Map<PublicKey, AbstractParty> sellers = new LinkedHashMap<>();
+            Party buyerHost = null;
+            Instant earliestExpiration = null;
+            final TransactionBuilder builder = new TransactionBuilder(notary);
+            for (final OfferItem item : items) {
+                if (!item.getAsset().getState().getNotary().equals(notary))
+                    throw new FlowException("All assets should be on the same notary");
+                if (!assetRefs.add(item.getAsset().getRef()))
+                    throw new FlowException("The same asset cannot be offered twice");
+                final Party itemBuyerHost = getServiceHub().getIdentityService()
+                        .requireWellKnownPartyFromAnonymous(item.getBuyer());
+                if (buyerHost == null) buyerHost = itemBuyerHost;
+                else if (!buyerHost.equals(itemBuyerHost))
+                    throw new FlowException("All buyers should be on the same host");
+                final SalesProposal proposal = new SalesProposal(new UniqueIdentifier(), item.getAsset(),
+                        item.getBuyer(), item.getPrice(), item.getExpirationDate());
+                sellers.put(proposal.getSeller().getOwningKey(), proposal.getSeller());
+                if (earliestExpiration == null || item.getExpirationDate().isBefore(earliestExpiration))
+                    earliestExpiration = item.getExpirationDate();
+                builder.addOutputState(proposal)
+                        .addReferenceState(new ReferencedStateAndRef<>(item.getAsset()));
+            }
+            builder.addCommand(new SalesProposalContract.Commands.Offer(), new ArrayList<>(sellers.keySet()))
+                    .setTimeWindow(TimeWindow.untilOnly(earliestExpiration.minus(Duration.ofSeconds(1))));
+
+            progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
+            builder.verify(getServiceHub());
+
+            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            final SignedTransaction offerTx = getServiceHub().signInitialTransaction(builder, sellers.keySet());
+
+            final FlowSession buyerSession = initiateFlow(buyerHost);
+
+            // Inform on potentially missing knowledge about the sellers.
+            subFlow(new SyncKeyMappingFlow(buyerSession, new ArrayList<>(sellers.values())));
+
+            // Inform buyer.
+            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            return subFlow(new FinalityFlow(
+                    offerTx,
+                    Collections.singletonList(buyerSession),
+                    FINALISING_TRANSACTION.childProgressTracker()));
+        }
+    }
+
+    @InitiatedBy(OfferBulkFlow.class)
+    class OfferBulkHandlerFlow extends OfferHandlerFlow {
+
+        public OfferBulkHandlerFlow(@NotNull final FlowSession sellerSession) {
+            super(sellerSession);
+        }
+    }
+
     @InitiatedBy(OfferSimpleFlow.class)
     class OfferSimpleHandlerFlow extends OfferHandlerFlow {
 
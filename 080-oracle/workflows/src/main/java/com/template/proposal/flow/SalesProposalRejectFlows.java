@@ -1,6 +1,7 @@
 package com.template.proposal.flow;
 
 import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
 import com.template.proposal.state.SalesProposal;
 import com.template.proposal.state.SalesProposalContract;
 import net.corda.core.contracts.StateAndRef;
@@ -14,8 +15,10 @@ import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 import org.jetbrains.annotations.NotNull;
 
+import java.security.PublicKey;
 import java.time.Duration;
-import java.util.Collections;
+import java.time.Instant;
+import java.util.*;
 import java.util.stream.Collectors;
 
 public interface SalesProposalRejectFlows {
@@ -88,6 +91,73 @@ public interface SalesProposalRejectFlows {
         }
     }
 
+    /**
+     * Rejects many proposals by their ids, as the buyer or the seller, with as few transactions as there are notaries.
+     * Each transaction has a single session per counterparty host.
+     * Its handler is {@link RejectBatchSimpleHandlerFlow}.
+     */
+    @InitiatingFlow
+    @StartableByRPC
+    class RejectBatchSimpleFlow extends FlowLogic<List<SignedTransaction>> {
+
+        private final static ProgressTracker.Step FETCHING_PROPOSALS = new ProgressTracker.Step("Fetching proposals from the vault.");
+        private final static ProgressTracker.Step PASSING_ON = new ProgressTracker.Step("Passing on to RejectBatchFlow, per notary.");
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(FETCHING_PROPOSALS, PASSING_ON);
+        }
+
+        @NotNull
+        private final List<UniqueIdentifier> proposalIds;
+        @NotNull
+        private final ProgressTracker progressTracker;
+
+        public RejectBatchSimpleFlow(
+                @NotNull final List<UniqueIdentifier> proposalIds,
+                @NotNull final ProgressTracker progressTracker) {
+            //noinspection ConstantConditions
+            if (proposalIds == null) throw new NullPointerException("The proposalIds cannot be null");
+            if (proposalIds.isEmpty()) throw new IllegalArgumentException("The proposalIds cannot be empty");
+            //noinspection ConstantConditions
+            if (progressTracker == null) throw new NullPointerException("The progressTracker cannot be null");
+            this.proposalIds = ImmutableList.copyOf(proposalIds);
+            this.progressTracker = progressTracker;
+        }
+
+        public RejectBatchSimpleFlow(@NotNull final List<UniqueIdentifier> proposalIds) {
+            this(proposalIds, tracker());
+        }
+
+        @NotNull
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public List<SignedTransaction> call() throws FlowException {
+            progressTracker.setCurrentStep(FETCHING_PROPOSALS);
+            final SalesProposalUtils utils = new SalesProposalUtils(this);
+            final Map<Party, List<StateAndRef<SalesProposal>>> byNotary = new LinkedHashMap<>();
+            for (final UniqueIdentifier proposalId : proposalIds) {
+                final StateAndRef<SalesProposal> proposal = utils.findBy(proposalId.getId());
+                byNotary.computeIfAbsent(proposal.getState().getNotary(), it -> new ArrayList<>()).add(proposal);
+            }
+            final List<List<StateAndRef<SalesProposal>>> batches = new ArrayList<>(byNotary.values());
+
+            progressTracker.setCurrentStep(PASSING_ON);
+            final List<SignedTransaction> rejectTxs = new ArrayList<>();
+            // We need to use `for` instead of `.forEach` because we would need to annotate the lambda with
+            // @Suspendable.
+            for (final List<StateAndRef<SalesProposal>> batch : batches) {
+                rejectTxs.add(subFlow(new RejectBatchFlow(batch)));
+            }
+            return rejectTxs;
+        }
+    }
+
     /**
      * Its handler is {@link RejectHandlerFlow}.
      */
@@ -180,6 +250,119 @@ public interface SalesProposalRejectFlows {
         }
     }
 
+    /**
+     * Rejects many proposals in a single transaction. For each proposal, we reject as the seller if it is our key,
+     * otherwise as the buyer. All proposals need to have the same notary.
+     * Its handler is {@link RejectHandlerFlow}, one per counterparty host.
+     */
+    class RejectBatchFlow extends FlowLogic<SignedTransaction> {
+
+        private final static ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction based on parameters.");
+        private final static ProgressTracker.Step VERIFYING_TRANSACTION = new ProgressTracker.Step("Verifying contract constraints.");
+        private final static ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private keys.");
+        private final static ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(
+                    GENERATING_TRANSACTION,
+                    VERIFYING_TRANSACTION,
+                    SIGNING_TRANSACTION,
+                    FINALISING_TRANSACTION);
+        }
+
+        @NotNull
+        private final List<StateAndRef<SalesProposal>> proposals;
+        @NotNull
+        private final ProgressTracker progressTracker;
+
+        public RejectBatchFlow(@NotNull final List<StateAndRef<SalesProposal>> proposals,
+                               @NotNull final ProgressTracker progressTracker) {
+            //noinspection ConstantConditions
+            if (proposals == null) throw new NullPointerException("The proposals cannot be null");
+            if (proposals.isEmpty()) throw new IllegalArgumentException("The proposals cannot be empty");
+            //noinspection ConstantConditions
+            if (progressTracker == null) throw new NullPointerException("The progressTracker cannot be null");
+            this.proposals = ImmutableList.copyOf(proposals);
+            this.progressTracker = progressTracker;
+        }
+
+        public RejectBatchFlow(@NotNull final List<StateAndRef<SalesProposal>> proposals) {
+            this(proposals, tracker());
+        }
+
+        @NotNull
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+            final Set<Party> notaries = proposals.stream()
+                    .map(it -> it.getState().getNotary())
+                    .collect(Collectors.toSet());
+            if (notaries.size() != 1) throw new FlowException("There must be only 1 notary, not " + notaries.size());
+            final TransactionBuilder builder = new TransactionBuilder(notaries.iterator().next());
+            final Set<PublicKey> rejecterKeys = new HashSet<>();
+            final Set<AbstractParty> rejectees = new HashSet<>();
+            Instant latestSellerExpiration = null;
+            for (final StateAndRef<SalesProposal> proposal : proposals) {
+                final SalesProposal proposalState = proposal.getState().getData();
+                builder.addInputState(proposal);
+                if (isMyKey(proposalState.getSeller())) {
+                    rejecterKeys.add(proposalState.getSeller().getOwningKey());
+                    rejectees.add(proposalState.getBuyer());
+                    if (latestSellerExpiration == null
+                            || latestSellerExpiration.isBefore(proposalState.getExpirationDate()))
+                        latestSellerExpiration = proposalState.getExpirationDate();
+                } else if (isMyKey(proposalState.getBuyer())) {
+                    rejecterKeys.add(proposalState.getBuyer().getOwningKey());
+                    rejectees.add(proposalState.getSeller());
+                } else {
+                    throw new FlowException("We are neither the seller nor the buyer of " +
+                            proposalState.getLinearId());
+                }
+            }
+            builder.addCommand(new SalesProposalContract.Commands.Reject(), new ArrayList<>(rejecterKeys));
+            if (latestSellerExpiration != null) {
+                builder.setTimeWindow(TimeWindow.fromOnly(latestSellerExpiration.plus(Duration.ofSeconds(1))));
+            }
+
+            progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
+            builder.verify(getServiceHub());
+
+            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            final SignedTransaction rejectTx = getServiceHub().signInitialTransaction(builder, rejecterKeys);
+
+            // Resolve the other hosts, a single session each.
+            final Set<Party> rejecteeHosts = new HashSet<>();
+            for (final AbstractParty rejectee : rejectees) {
+                rejecteeHosts.add(getServiceHub().getIdentityService().requireWellKnownPartyFromAnonymous(rejectee));
+            }
+            rejecteeHosts.remove(getOurIdentity());
+            final List<FlowSession> rejecteeSessions = new ArrayList<>();
+            for (final Party host : rejecteeHosts) {
+                rejecteeSessions.add(initiateFlow(host));
+            }
+
+            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            return subFlow(new FinalityFlow(rejectTx, rejecteeSessions, FINALISING_TRANSACTION.childProgressTracker()));
+        }
+
+        private boolean isMyKey(@NotNull final AbstractParty who) {
+            return getServiceHub().getKeyManagementService()
+                    .filterMyKeys(Collections.singleton(who.getOwningKey())).iterator().hasNext();
+        }
+    }
+
     @SuppressWarnings("unused")
     @InitiatedBy(RejectSimpleFlow.class)
     class RejectSimpleHandlerFlow extends RejectHandlerFlow {
@@ -190,8 +373,18 @@ public interface SalesProposalRejectFlows {
         }
     }
 
+    @SuppressWarnings("unused")
+    @InitiatedBy(RejectBatchSimpleFlow.class)
+    class RejectBatchSimpleHandlerFlow extends RejectHandlerFlow {
+
+        @SuppressWarnings("unused")
+        public RejectBatchSimpleHandlerFlow(@NotNull final FlowSession rejecterSession) {
+            super(rejecterSession);
+        }
+    }
+
     /**
-     * It is the handler of {@link RejectFlow}.
+     * It is the handler of {@link RejectFlow} and {@link RejectBatchFlow}.
      */
     class RejectHandlerFlow extends FlowLogic<SignedTransaction> {
 
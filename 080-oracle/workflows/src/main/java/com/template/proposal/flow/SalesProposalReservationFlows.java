@@ -0,0 +1,51 @@
+package com.template.proposal.flow;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.r3.corda.lib.tokens.contracts.states.FungibleToken;
+import com.r3.corda.lib.tokens.workflows.utilities.QueryUtilitiesKt;
+import com.template.proposal.service.PaymentReservationService;
+import com.template.proposal.state.SalesProposal;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByService;
+import net.corda.core.node.services.vault.QueryCriteria;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+public interface SalesProposalReservationFlows {
+
+    /**
+     * Soft-locks, with the proposal's linear id, enough of the buyer's tokens to pay for the proposal. It is started
+     * by {@link PaymentReservationService}, and it is local, there is no counterparty.
+     */
+    @StartableByService
+    class ReserveFlow extends FlowLogic<List<StateAndRef<FungibleToken>>> {
+
+        @NotNull
+        private final StateAndRef<SalesProposal> proposalRef;
+
+        public ReserveFlow(@NotNull final StateAndRef<SalesProposal> proposalRef) {
+            //noinspection ConstantConditions
+            if (proposalRef == null) throw new NullPointerException("The proposalRef cannot be null");
+            this.proposalRef = proposalRef;
+        }
+
+        @Suspendable
+        @NotNull
+        @Override
+        public List<StateAndRef<FungibleToken>> call() throws FlowException {
+            // It may have been accepted or rejected in the meantime, in which case nobody would release the tokens.
+            final QueryCriteria stillThere = new QueryCriteria.VaultQueryCriteria()
+                    .withStateRefs(Collections.singletonList(proposalRef.getRef()));
+            if (getServiceHub().getVaultService().queryBy(SalesProposal.class, stillThere).getStates().isEmpty())
+                return Collections.emptyList();
+            final SalesProposal proposal = proposalRef.getState().getData();
+            return new SalesProposalUtils(this).reserve(proposal, QueryUtilitiesKt.heldTokenAmountCriteria(
+                    proposal.getPrice().getToken().getTokenType(), proposal.getBuyer()));
+        }
+    }
+
+}
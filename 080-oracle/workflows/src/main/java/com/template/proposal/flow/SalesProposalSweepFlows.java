@@ -0,0 +1,137 @@
+package com.template.proposal.flow;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.proposal.flow.SalesProposalRejectFlows.RejectBatchFlow;
+import com.template.proposal.flow.SalesProposalRejectFlows.RejectHandlerFlow;
+import com.template.proposal.service.SalesProposalSweeper;
+import com.template.proposal.state.SalesProposal;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.utilities.ProgressTracker;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public interface SalesProposalSweepFlows {
+
+    /**
+     * Started by {@link SalesProposalSweeper} once a bucket of expirations is over. If it is the first to claim the
+     * bucket, it rejects the proposals of the bucket, where we are the seller. They are grouped by notary and
+     * buyer host, so that each transaction needs a single notary and a single counterparty session, and chunked to
+     * {@link SalesProposalSweeper#getBatchSize()}. The proposals whose buyer host is unknown are skipped, and recorded
+     * so that {@link SalesProposalSweeper} sweeps the bucket again later.
+     * Its handler is {@link SweepHandlerFlow}.
+     */
+    @InitiatingFlow
+    @StartableByService
+    class SweepFlow extends FlowLogic<Integer> {
+
+        private final static ProgressTracker.Step CLAIMING_BUCKET = new ProgressTracker.Step("Claiming the bucket.");
+        private final static ProgressTracker.Step FETCHING_PROPOSALS = new ProgressTracker.Step("Fetching expired proposals from the vault.");
+        private final static ProgressTracker.Step REJECTING = new ProgressTracker.Step("Rejecting in batches.");
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(CLAIMING_BUCKET, FETCHING_PROPOSALS, REJECTING);
+        }
+
+        @NotNull
+        private final Instant bucketEnd;
+        @NotNull
+        private final ProgressTracker progressTracker;
+
+        public SweepFlow(@NotNull final Instant bucketEnd,
+                         @NotNull final ProgressTracker progressTracker) {
+            //noinspection ConstantConditions
+            if (bucketEnd == null) throw new NullPointerException("The bucketEnd cannot be null");
+            //noinspection ConstantConditions
+            if (progressTracker == null) throw new NullPointerException("The progressTracker cannot be null");
+            this.bucketEnd = bucketEnd;
+            this.progressTracker = progressTracker;
+        }
+
+        public SweepFlow(@NotNull final Instant bucketEnd) {
+            this(bucketEnd, tracker());
+        }
+
+        @NotNull
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        /**
+         * @return The number of proposals rejected.
+         */
+        @Suspendable
+        @Override
+        public Integer call() throws FlowException {
+            progressTracker.setCurrentStep(CLAIMING_BUCKET);
+            final SalesProposalSweeper sweeper = getServiceHub().cordaService(SalesProposalSweeper.class);
+            // Already swept, or being swept.
+            if (!sweeper.claim(bucketEnd)) return 0;
+
+            try {
+                progressTracker.setCurrentStep(FETCHING_PROPOSALS);
+                final List<StateAndRef<SalesProposal>> expired = sweeper.findExpiredSoldByMe(
+                        bucketEnd, getServiceHub().getClock().instant());
+                // Key: notary, then buyer host.
+                final Map<Party, Map<Party, List<StateAndRef<SalesProposal>>>> groups = new LinkedHashMap<>();
+                int skipped = 0;
+                for (final StateAndRef<SalesProposal> proposal : expired) {
+                    final Party buyerHost = getServiceHub().getIdentityService()
+                            .wellKnownPartyFromAnonymous(proposal.getState().getData().getBuyer());
+                    if (buyerHost == null) {
+                        getLogger().warn("Unknown host of buyer of " + proposal.getState().getData().getLinearId());
+                        skipped++;
+                        continue;
+                    }
+                    groups.computeIfAbsent(proposal.getState().getNotary(), it -> new LinkedHashMap<>())
+                            .computeIfAbsent(buyerHost, it -> new ArrayList<>())
+                            .add(proposal);
+                }
+
+                // Plain lists of plain lists, as they are checkpointed when the flow suspends.
+                final int batchSize = sweeper.getBatchSize();
+                final List<List<StateAndRef<SalesProposal>>> batches = new ArrayList<>();
+                groups.values().forEach(byHost -> byHost.values().forEach(group -> {
+                    for (int from = 0; from < group.size(); from += batchSize) {
+                        batches.add(new ArrayList<>(group.subList(from, Math.min(group.size(), from + batchSize))));
+                    }
+                }));
+
+                progressTracker.setCurrentStep(REJECTING);
+                int rejected = 0;
+                // We need to use `for` instead of `.forEach` because we would need to annotate the lambda with
+                // @Suspendable.
+                for (final List<StateAndRef<SalesProposal>> batch : batches) {
+                    subFlow(new RejectBatchFlow(batch));
+                    rejected += batch.size();
+                }
+                if (0 < skipped) sweeper.recordSkipped(bucketEnd, skipped);
+                getLogger().info("Swept " + rejected + " expired proposals at bucket " + bucketEnd +
+                        ", skipped " + skipped);
+                return rejected;
+            } catch (FlowException | RuntimeException e) {
+                sweeper.release(bucketEnd);
+                throw e;
+            }
+        }
+    }
+
+    @SuppressWarnings("unused")
+    @InitiatedBy(SweepFlow.class)
+    class SweepHandlerFlow extends RejectHandlerFlow {
+
+        @SuppressWarnings("unused")
+        public SweepHandlerFlow(@NotNull final FlowSession rejecterSession) {
+            super(rejecterSession);
+        }
+    }
+
+}
@@ -6,17 +6,21 @@ import com.r3.corda.lib.tokens.contracts.types.IssuedTokenType;
 import com.r3.corda.lib.tokens.contracts.types.TokenType;
 import com.r3.corda.lib.tokens.selection.TokenQueryBy;
 import com.r3.corda.lib.tokens.selection.database.selector.DatabaseTokenSelection;
+import com.template.proposal.service.InMemoryTokenSelector;
+import com.template.proposal.service.PaymentReservationService;
 import com.template.proposal.state.SalesProposal;
 import kotlin.Pair;
 import kotlin.jvm.functions.Function1;
 import net.corda.core.contracts.Amount;
 import net.corda.core.contracts.StateAndRef;
+import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.FlowException;
 import net.corda.core.flows.FlowLogic;
 import net.corda.core.node.services.vault.QueryCriteria;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
@@ -32,6 +36,50 @@ public class SalesProposalUtils {
         this.flow = flow;
     }
 
+    /**
+     * Where the tokens that pay for a proposal come from.
+     */
+    public enum TokenSource {
+        RESERVED, IN_MEMORY, DATABASE
+    }
+
+    /**
+     * The buyer's tokens to spend, and the tokens to create, the price and the change, along with where the spent ones
+     * come from.
+     */
+    public static final class Move {
+        @NotNull
+        private final List<StateAndRef<FungibleToken>> inputs;
+        @NotNull
+        private final List<FungibleToken> outputs;
+        @NotNull
+        private final TokenSource source;
+
+        public Move(
+                @NotNull final List<StateAndRef<FungibleToken>> inputs,
+                @NotNull final List<FungibleToken> outputs,
+                @NotNull final TokenSource source) {
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.source = source;
+        }
+
+        @NotNull
+        public List<StateAndRef<FungibleToken>> getInputs() {
+            return inputs;
+        }
+
+        @NotNull
+        public List<FungibleToken> getOutputs() {
+            return outputs;
+        }
+
+        @NotNull
+        public TokenSource getSource() {
+            return source;
+        }
+    }
+
     @NotNull
     public StateAndRef<SalesProposal> findBy(@NotNull final UUID uuid) throws FlowException {
         final QueryCriteria proposalCriteria = new QueryCriteria.LinearStateQueryCriteria()
@@ -43,11 +91,61 @@ public class SalesProposalUtils {
         return proposals.get(0);
     }
 
+    /**
+     * When {@link PaymentReservationService} is enabled and has reserved enough tokens for this proposal, they are
+     * used without any selection. Otherwise, the tokens are selected, under the proposal's id when reservations are
+     * enabled so that the ones still reserved can be picked:
+     * - in memory, if {@link InMemoryTokenSelector} is enabled and the caller says that heldByBuyer only asks for the
+     * tokens held by the buyer, which is what the in-memory buckets hold.
+     * - in the database otherwise, so that any other heldByBuyer, for instance that of an account, is honoured.
+     *
+     * @param plainHolder Whether heldByBuyer selects the tokens by their holder only, so that the in-memory buckets
+     *                    can stand in for it.
+     */
+    @Suspendable
+    @NotNull
+    public Move generateMove(
+            @NotNull final SalesProposal proposal,
+            @NotNull final QueryCriteria heldByBuyer,
+            final boolean plainHolder) throws FlowException {
+        final PaymentReservationService reservations = flow.getServiceHub()
+                .cordaService(PaymentReservationService.class);
+        final UUID lockId;
+        if (reservations.isEnabled()) {
+            final List<StateAndRef<FungibleToken>> reserved = reservations.findReserved(proposal);
+            if (!reserved.isEmpty())
+                return new Move(reserved, generatePayment(proposal, reserved), TokenSource.RESERVED);
+            lockId = proposal.getLinearId().getId();
+        } else lockId = flow.getRunId().getUuid();
+        final InMemoryTokenSelector inMemory = flow.getServiceHub().cordaService(InMemoryTokenSelector.class);
+        if (inMemory.isEnabled() && plainHolder) {
+            final List<StateAndRef<FungibleToken>> selected = inMemory.select(proposal.getBuyer(),
+                    proposal.getPrice().getToken(), proposal.getPrice().getQuantity(), lockId);
+            return new Move(selected, generatePayment(proposal, selected), TokenSource.IN_MEMORY);
+        }
+        final Pair<List<StateAndRef<FungibleToken>>, List<FungibleToken>> selected =
+                generateMove(proposal, heldByBuyer, lockId);
+        return new Move(selected.getFirst(), selected.getSecond(), TokenSource.DATABASE);
+    }
+
+    /**
+     * Soft-locks the tokens that pay for the proposal, under the proposal's id.
+     * @return The locked tokens.
+     */
     @Suspendable
     @NotNull
-    public Pair<List<StateAndRef<FungibleToken>>, List<FungibleToken>> generateMove(
+    public List<StateAndRef<FungibleToken>> reserve(
             @NotNull final SalesProposal proposal,
             @NotNull final QueryCriteria heldByBuyer) {
+        return generateMove(proposal, heldByBuyer, proposal.getLinearId().getId()).getFirst();
+    }
+
+    @Suspendable
+    @NotNull
+    private Pair<List<StateAndRef<FungibleToken>>, List<FungibleToken>> generateMove(
+            @NotNull final SalesProposal proposal,
+            @NotNull final QueryCriteria heldByBuyer,
+            @NotNull final UUID lockId) {
         final IssuedTokenType issuedCurrency = proposal.getPrice().getToken();
         final Amount<TokenType> priceInCurrency = new Amount<>(
                 proposal.getPrice().getQuantity(),
@@ -65,7 +163,27 @@ public class SalesProposalUtils {
                         issuedCurrency.getIssuer(),
                         (Function1<? super StateAndRef<? extends FungibleToken>, Boolean> & Serializable) it -> true,
                         heldByBuyer),
-                flow.getRunId().getUuid());
+                lockId);
+    }
+
+    /**
+     * @param inputs Of the buyer, and enough to pay for the proposal.
+     * @return The price, held by the seller, and the change, if any, held by the buyer.
+     */
+    @NotNull
+    private static List<FungibleToken> generatePayment(
+            @NotNull final SalesProposal proposal,
+            @NotNull final List<StateAndRef<FungibleToken>> inputs) {
+        final long total = inputs.stream()
+                .mapToLong(it -> it.getState().getData().getAmount().getQuantity())
+                .reduce(0L, Math::addExact);
+        final SecureHash jarHash = inputs.get(0).getState().getData().getTokenTypeJarHash();
+        final List<FungibleToken> outputs = new ArrayList<>(2);
+        outputs.add(new FungibleToken(proposal.getPrice(), proposal.getSeller(), jarHash));
+        final long change = total - proposal.getPrice().getQuantity();
+        if (0 < change) outputs.add(new FungibleToken(
+                new Amount<>(change, proposal.getPrice().getToken()), proposal.getBuyer(), jarHash));
+        return outputs;
     }
 
 }
@@ -0,0 +1,144 @@
+package com.template.proposal.service;
+
+import com.template.proposal.service.SalesProposalServiceMetrics.Histogram;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The measures of one {@link CoinSelectionStrategy} on one node, published in the platform MBean server under
+ * {@link #getObjectName()}. The strategies that are not in use are only measured when {@link InMemoryTokenSelector}
+ * is asked to compare them, and then have no transaction sizes.
+ */
+public class CoinSelectionMetrics implements CoinSelectionMetricsMBean {
+
+    private final static Logger log = LoggerFactory.getLogger(CoinSelectionMetrics.class);
+
+    @NotNull
+    private final CoinSelectionStrategy strategy;
+    private final boolean active;
+    @NotNull
+    private final ObjectName objectName;
+    private final AtomicLong selections = new AtomicLong();
+    private final AtomicLong insufficient = new AtomicLong();
+    private final AtomicLong changeFree = new AtomicLong();
+    @NotNull
+    private final Histogram inputCounts = new Histogram();
+    @NotNull
+    private final Histogram transactionSizes = new Histogram();
+
+    CoinSelectionMetrics(
+            @NotNull final CoinSelectionStrategy strategy,
+            final boolean active,
+            @NotNull final String nodeName) {
+        this.strategy = strategy;
+        this.active = active;
+        try {
+            this.objectName = new ObjectName(SalesProposalServiceMetrics.DOMAIN + ":type=CoinSelection,node="
+                    + ObjectName.quote(nodeName) + ",strategy=" + strategy.name());
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Invalid node name " + nodeName, e);
+        }
+    }
+
+    @NotNull
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Replaces any previous registration under the same name, as happens when a node is restarted in the same JVM.
+     */
+    void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            // Metrics are not worth failing the node for.
+            log.error("Failed to register " + objectName, e);
+        }
+    }
+
+    void unregister() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.error("Failed to unregister " + objectName, e);
+        }
+    }
+
+    void selected(final int inputCount, final boolean exact) {
+        selections.incrementAndGet();
+        inputCounts.record(inputCount);
+        if (exact) changeFree.incrementAndGet();
+    }
+
+    void insufficient() {
+        insufficient.incrementAndGet();
+    }
+
+    void transactionSize(final long bytes) {
+        transactionSizes.record(bytes);
+    }
+
+    @Override
+    public String getStrategy() {
+        return strategy.name();
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public long getSelections() {
+        return selections.get();
+    }
+
+    @Override
+    public long getInsufficient() {
+        return insufficient.get();
+    }
+
+    @Override
+    public double getInputCountMean() {
+        return inputCounts.getMean();
+    }
+
+    @Override
+    public long getInputCountMax() {
+        return inputCounts.getMax();
+    }
+
+    @Override
+    public long getInputCountP95() {
+        return inputCounts.getPercentile(0.95);
+    }
+
+    @Override
+    public long getChangeFree() {
+        return changeFree.get();
+    }
+
+    @Override
+    public long getTransactionSizeCount() {
+        return transactionSizes.getCount();
+    }
+
+    @Override
+    public double getTransactionSizeMean() {
+        return transactionSizes.getMean();
+    }
+
+    @Override
+    public long getTransactionSizeMax() {
+        return transactionSizes.getMax();
+    }
+}
@@ -0,0 +1,36 @@
+package com.template.proposal.service;
+
+/**
+ * What {@link CoinSelectionMetrics} exposes over JMX, for one {@link CoinSelectionStrategy}. The transaction sizes are
+ * in bytes.
+ */
+public interface CoinSelectionMetricsMBean {
+
+    String getStrategy();
+
+    /**
+     * @return Whether it is the strategy in use, as opposed to one only evaluated for comparison.
+     */
+    boolean isActive();
+
+    long getSelections();
+
+    long getInsufficient();
+
+    double getInputCountMean();
+
+    long getInputCountMax();
+
+    long getInputCountP95();
+
+    /**
+     * @return The number of selections that matched the quantity exactly, so needed no change.
+     */
+    long getChangeFree();
+
+    long getTransactionSizeCount();
+
+    double getTransactionSizeMean();
+
+    long getTransactionSizeMax();
+}
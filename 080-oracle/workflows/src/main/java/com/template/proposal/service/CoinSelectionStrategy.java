@@ -0,0 +1,121 @@
+package com.template.proposal.service;
+
+import com.r3.corda.lib.tokens.contracts.states.FungibleToken;
+import net.corda.core.contracts.StateAndRef;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How {@link InMemoryTokenSelector} picks, among the free tokens, those that pay a quantity. Fewer inputs make smaller
+ * transactions that are faster to verify, and no change saves an output.
+ */
+public enum CoinSelectionStrategy {
+
+    /**
+     * Takes the largest tokens until the quantity is reached, which minimises the number of inputs of a greedy pick.
+     */
+    LARGEST_FIRST {
+        @Nullable
+        @Override
+        public List<StateAndRef<FungibleToken>> select(
+                @NotNull final List<StateAndRef<FungibleToken>> largestFirst,
+                final long quantity) {
+            final List<StateAndRef<FungibleToken>> selected = new ArrayList<>();
+            long sum = 0L;
+            for (final StateAndRef<FungibleToken> token : largestFirst) {
+                if (quantity <= sum) break;
+                selected.add(token);
+                sum = Math.addExact(sum, quantityOf(token));
+            }
+            return quantity <= sum ? selected : null;
+        }
+    },
+
+    /**
+     * Takes the smallest single token that reaches the quantity, so as to keep the large ones. If there is none, it
+     * falls back to {@link #LARGEST_FIRST}.
+     */
+    SMALLEST_SUFFICIENT {
+        @Nullable
+        @Override
+        public List<StateAndRef<FungibleToken>> select(
+                @NotNull final List<StateAndRef<FungibleToken>> largestFirst,
+                final long quantity) {
+            StateAndRef<FungibleToken> smallest = null;
+            for (final StateAndRef<FungibleToken> token : largestFirst) {
+                if (quantityOf(token) < quantity) break;
+                smallest = token;
+            }
+            if (smallest != null) return Collections.singletonList(smallest);
+            return LARGEST_FIRST.select(largestFirst, quantity);
+        }
+    },
+
+    /**
+     * Looks, depth-first, for tokens whose sum is exactly the quantity, so that there is no change output. The search
+     * is iterative, so that its depth is not limited by the stack, and bounded by {@link #BNB_MAX_TRIES}. If it finds
+     * no exact match, it falls back to {@link #LARGEST_FIRST}.
+     */
+    BRANCH_AND_BOUND {
+        @Nullable
+        @Override
+        public List<StateAndRef<FungibleToken>> select(
+                @NotNull final List<StateAndRef<FungibleToken>> largestFirst,
+                final long quantity) {
+            final int count = largestFirst.size();
+            // remaining[i] is the sum of the tokens from i onwards, to prune branches that cannot reach the quantity.
+            final long[] remaining = new long[count + 1];
+            for (int i = count - 1; 0 <= i; i--) {
+                remaining[i] = Math.addExact(remaining[i + 1], quantityOf(largestFirst.get(i)));
+            }
+            if (remaining[0] < quantity) return null;
+            // The indices of the tokens included so far, in increasing order.
+            final int[] included = new int[count];
+            int depth = 0;
+            int index = 0;
+            long sum = 0L;
+            int tries = 0;
+            while (sum != quantity) {
+                if (index < count && sum < quantity && quantity <= sum + remaining[index]) {
+                    if (BNB_MAX_TRIES < ++tries) return LARGEST_FIRST.select(largestFirst, quantity);
+                    // Including first favours the larger tokens, hence fewer inputs.
+                    included[depth++] = index;
+                    sum += quantityOf(largestFirst.get(index));
+                    index++;
+                } else {
+                    // Backtrack by excluding the last included token instead.
+                    if (depth == 0) return LARGEST_FIRST.select(largestFirst, quantity);
+                    final int last = included[--depth];
+                    sum -= quantityOf(largestFirst.get(last));
+                    index = last + 1;
+                }
+            }
+            final List<StateAndRef<FungibleToken>> selected = new ArrayList<>(depth);
+            for (int i = 0; i < depth; i++) {
+                selected.add(largestFirst.get(included[i]));
+            }
+            return selected;
+        }
+    };
+
+    public static final int BNB_MAX_TRIES = 100_000;
+
+    /**
+     * @param largestFirst The free tokens, sorted by decreasing amount.
+     * @param quantity The quantity to reach.
+     * @return The selected tokens, or null if they are not enough.
+     */
+    @Nullable
+    public abstract List<StateAndRef<FungibleToken>> select(
+            @NotNull final List<StateAndRef<FungibleToken>> largestFirst,
+            final long quantity);
+
+    private static long quantityOf(@NotNull final StateAndRef<FungibleToken> token) {
+        return token.getState().getData().getAmount().getQuantity();
+    }
+
+}
@@ -0,0 +1,280 @@
+package com.template.proposal.service;
+
+import com.r3.corda.lib.tokens.contracts.states.FungibleToken;
+import com.r3.corda.lib.tokens.contracts.types.IssuedTokenType;
+import com.r3.corda.lib.tokens.selection.InsufficientBalanceException;
+import kotlin.Pair;
+import kotlin.Unit;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.messaging.DataFeed;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import net.corda.core.transactions.SignedTransaction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.MAX_PAGE_SIZE;
+
+/**
+ * When enabled with {@link #ENABLED_KEY} in the CorDapp configuration, this service keeps the unconsumed
+ * {@link FungibleToken}s in memory, per holder and issued token type, sorted by amount, so that selecting them does not
+ * need to query, or soft-lock in, the database.
+ * - It is loaded and kept up to date by a single vault feed, so there is no gap between the snapshot and the updates.
+ * - A selected token is leased to the lock id for {@link #LEASE_MILLIS_KEY}, after which it can be selected again if
+ * the lock holder did not spend it, nor {@link #release(UUID)} it.
+ * - Which tokens are selected is decided by the {@link CoinSelectionStrategy} set with {@link #STRATEGY_KEY}, by
+ * default {@link CoinSelectionStrategy#LARGEST_FIRST}. Each strategy is measured by its {@link CoinSelectionMetrics},
+ * and, with {@link #COMPARE_STRATEGIES_KEY}, the strategies not in use are evaluated on the same selections.
+ * - The tokens reserved for another proposal by {@link PaymentReservationService} are not selected. It keeps its
+ * reservations in memory, so a selection does not query the database at all.
+ * - The leases are not persisted, and are not seen by {@code DatabaseTokenSelection}. Conversely, the soft locks taken
+ * by other flows, other than reservations, are not seen here. So on a given node, all the flows that spend the same
+ * tokens should use the same kind of selection. In any case, the notary remains the arbiter of double spends.
+ */
+@CordaService
+public class InMemoryTokenSelector extends SingletonSerializeAsToken {
+
+    public static final String ENABLED_KEY = "inMemoryTokenSelector.enabled";
+    public static final String LEASE_MILLIS_KEY = "inMemoryTokenSelector.leaseMillis";
+    public static final String STRATEGY_KEY = "inMemoryTokenSelector.strategy";
+    public static final String COMPARE_STRATEGIES_KEY = "inMemoryTokenSelector.compareStrategies";
+    private static final long DEFAULT_LEASE_MILLIS = 60_000L;
+    private final static Logger log = LoggerFactory.getLogger(InMemoryTokenSelector.class);
+    /**
+     * Largest first, then by ref, so that 2 tokens of the same amount are both kept.
+     */
+    private static final Comparator<StateAndRef<FungibleToken>> BY_AMOUNT_DESC =
+            Comparator.<StateAndRef<FungibleToken>>comparingLong(
+                    it -> it.getState().getData().getAmount().getQuantity())
+                    .reversed()
+                    .thenComparing(it -> it.getRef().toString());
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    private final boolean enabled;
+    private final long leaseMillis;
+    @NotNull
+    private final CoinSelectionStrategy strategy;
+    /**
+     * Whether to also measure what the other strategies would have selected.
+     */
+    private final boolean compareStrategies;
+    @NotNull
+    private final Map<CoinSelectionStrategy, CoinSelectionMetrics> metrics =
+            new EnumMap<>(CoinSelectionStrategy.class);
+    /**
+     * Key: the holder and the issued token type.
+     */
+    @NotNull
+    private final Map<Pair<AbstractParty, IssuedTokenType>, Bucket> buckets = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unused")
+    public InMemoryTokenSelector(@NotNull final AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.enabled = config.exists(ENABLED_KEY) && config.getBoolean(ENABLED_KEY);
+        this.leaseMillis = config.exists(LEASE_MILLIS_KEY)
+                ? config.getLong(LEASE_MILLIS_KEY) : DEFAULT_LEASE_MILLIS;
+        this.strategy = config.exists(STRATEGY_KEY)
+                ? CoinSelectionStrategy.valueOf(config.getString(STRATEGY_KEY))
+                : CoinSelectionStrategy.LARGEST_FIRST;
+        this.compareStrategies = config.exists(COMPARE_STRATEGIES_KEY) && config.getBoolean(COMPARE_STRATEGIES_KEY);
+        if (!enabled) return;
+        final String nodeName = serviceHub.getMyInfo().getLegalIdentities().get(0).getName().toString();
+        for (final CoinSelectionStrategy it : CoinSelectionStrategy.values()) {
+            final CoinSelectionMetrics strategyMetrics = new CoinSelectionMetrics(it, it == strategy, nodeName);
+            metrics.put(it, strategyMetrics);
+            if (it == strategy || compareStrategies) strategyMetrics.register();
+        }
+        // So that the MBeans do not outlive the node.
+        serviceHub.registerUnloadHandler(() -> {
+            metrics.values().forEach(CoinSelectionMetrics::unregister);
+            return Unit.INSTANCE;
+        });
+        final DataFeed<Vault.Page<FungibleToken>, Vault.Update<FungibleToken>> feed = serviceHub.getVaultService()
+                .trackBy(FungibleToken.class,
+                        new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED),
+                        new PageSpecification(DEFAULT_PAGE_NUM, MAX_PAGE_SIZE));
+        feed.getSnapshot().getStates().forEach(this::add);
+        feed.getUpdates().subscribe(
+                update -> {
+                    update.getConsumed().forEach(this::remove);
+                    update.getProduced().forEach(this::add);
+                },
+                error -> log.error("In FungibleToken updates", error));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @NotNull
+    private Bucket getBucket(@NotNull final AbstractParty holder, @NotNull final IssuedTokenType issuedTokenType) {
+        return buckets.computeIfAbsent(new Pair<>(holder, issuedTokenType), it -> new Bucket());
+    }
+
+    private void add(@NotNull final StateAndRef<FungibleToken> token) {
+        final FungibleToken data = token.getState().getData();
+        getBucket(data.getHolder(), data.getIssuedTokenType()).add(token);
+    }
+
+    private void remove(@NotNull final StateAndRef<FungibleToken> token) {
+        final FungibleToken data = token.getState().getData();
+        getBucket(data.getHolder(), data.getIssuedTokenType()).remove(token);
+    }
+
+    /**
+     * @param holder The holder of the tokens to select.
+     * @param issuedTokenType The issued token type of the tokens to select.
+     * @param quantity The quantity, in the token type's smallest unit, to reach.
+     * @param lockId The id to which the selected tokens are leased. The tokens reserved under it can be selected.
+     * @return The tokens, leased to lockId, whose sum reaches the quantity.
+     * @throws InsufficientBalanceException When the free tokens do not reach the quantity.
+     */
+    @NotNull
+    public List<StateAndRef<FungibleToken>> select(
+            @NotNull final AbstractParty holder,
+            @NotNull final IssuedTokenType issuedTokenType,
+            final long quantity,
+            @NotNull final UUID lockId) throws InsufficientBalanceException {
+        if (!enabled) throw new IllegalStateException("The in-memory token selector is not enabled");
+        final PaymentReservationService reservations = serviceHub.cordaService(PaymentReservationService.class);
+        final Instant now = serviceHub.getClock().instant();
+        return getBucket(holder, issuedTokenType)
+                .select(quantity, lockId, reservations, now, now.plusMillis(leaseMillis));
+    }
+
+    /**
+     * Frees, ahead of their expiry, the tokens leased to the lock id and not spent.
+     */
+    public void release(@NotNull final UUID lockId) {
+        buckets.values().forEach(it -> it.release(lockId));
+    }
+
+    private void measure(
+            @NotNull final CoinSelectionStrategy measured,
+            @Nullable final List<StateAndRef<FungibleToken>> selected,
+            final long quantity) {
+        final CoinSelectionMetrics strategyMetrics = metrics.get(measured);
+        if (selected == null) {
+            strategyMetrics.insufficient();
+            return;
+        }
+        final long sum = selected.stream()
+                .mapToLong(it -> it.getState().getData().getAmount().getQuantity())
+                .reduce(0L, Math::addExact);
+        strategyMetrics.selected(selected.size(), sum == quantity);
+    }
+
+    /**
+     * To be called with the transaction that spends the selected tokens, so as to compare the sizes that the
+     * strategies produce.
+     */
+    public void recordTransaction(@NotNull final SignedTransaction tx) {
+        if (!enabled) return;
+        metrics.get(strategy).transactionSize(tx.getTxBits().getSize());
+    }
+
+    @NotNull
+    public CoinSelectionStrategy getStrategy() {
+        return strategy;
+    }
+
+    @NotNull
+    public CoinSelectionMetrics getMetrics(@NotNull final CoinSelectionStrategy of) {
+        return metrics.get(of);
+    }
+
+    /**
+     * @return The quantity held, leased or not.
+     */
+    public long getBalance(@NotNull final AbstractParty holder, @NotNull final IssuedTokenType issuedTokenType) {
+        return getBucket(holder, issuedTokenType).getBalance();
+    }
+
+    /**
+     * The unconsumed tokens of one holder and issued token type. All accesses are synchronized, they are short.
+     */
+    private class Bucket {
+        @NotNull
+        private final NavigableSet<StateAndRef<FungibleToken>> tokens = new TreeSet<>(BY_AMOUNT_DESC);
+        @NotNull
+        private final Map<StateRef, Lease> leases = new HashMap<>();
+
+        synchronized void add(@NotNull final StateAndRef<FungibleToken> token) {
+            tokens.add(token);
+        }
+
+        synchronized void remove(@NotNull final StateAndRef<FungibleToken> token) {
+            tokens.remove(token);
+            leases.remove(token.getRef());
+        }
+
+        synchronized void release(@NotNull final UUID lockId) {
+            leases.values().removeIf(it -> it.lockId.equals(lockId));
+        }
+
+        synchronized long getBalance() {
+            return tokens.stream()
+                    .mapToLong(it -> it.getState().getData().getAmount().getQuantity())
+                    .reduce(0L, Math::addExact);
+        }
+
+        @NotNull
+        synchronized List<StateAndRef<FungibleToken>> select(
+                final long quantity,
+                @NotNull final UUID lockId,
+                @NotNull final PaymentReservationService reservations,
+                @NotNull final Instant now,
+                @NotNull final Instant leaseEnd) throws InsufficientBalanceException {
+            final List<StateAndRef<FungibleToken>> free = new ArrayList<>(tokens.size());
+            for (final StateAndRef<FungibleToken> token : tokens) {
+                final UUID reservedFor = reservations.getReservedFor(token.getRef());
+                if (reservedFor != null && !reservedFor.equals(lockId)) continue;
+                final Lease lease = leases.get(token.getRef());
+                // Tokens already leased to the same lock id can be selected again.
+                if (lease != null && !lease.lockId.equals(lockId) && now.isBefore(lease.expiresAt)) continue;
+                free.add(token);
+            }
+            if (compareStrategies) {
+                for (final CoinSelectionStrategy other : CoinSelectionStrategy.values()) {
+                    if (other != strategy) measure(other, other.select(free, quantity), quantity);
+                }
+            }
+            final List<StateAndRef<FungibleToken>> selected = strategy.select(free, quantity);
+            measure(strategy, selected, quantity);
+            if (selected == null) {
+                throw new InsufficientBalanceException("Insufficient spendable states identified for " + quantity);
+            }
+            selected.forEach(it -> leases.put(it.getRef(), new Lease(lockId, leaseEnd)));
+            return selected;
+        }
+    }
+
+    private static class Lease {
+        @NotNull
+        final UUID lockId;
+        @NotNull
+        final Instant expiresAt;
+
+        Lease(@NotNull final UUID lockId, @NotNull final Instant expiresAt) {
+            this.lockId = lockId;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
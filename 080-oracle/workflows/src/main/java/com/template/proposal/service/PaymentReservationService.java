@@ -0,0 +1,241 @@
+package com.template.proposal.service;
+
+import com.r3.corda.lib.tokens.contracts.states.FungibleToken;
+import com.template.proposal.flow.SalesProposalReservationFlows.ReserveFlow;
+import com.template.proposal.state.SalesProposal;
+import kotlin.Unit;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * When enabled with {@link #ENABLED_KEY} in the CorDapp configuration, this service reserves the payment of each
+ * {@link SalesProposal} we receive as the buyer, so that the accept does not have to select tokens, and does not
+ * compete with other flows for them.
+ * - The tokens are soft-locked by {@link ReserveFlow}, with the proposal's linear id as the lock id. Being in the
+ * vault, the reservation survives restarts.
+ * - They are released in the same database transaction as the one that consumes the proposal, whether it is accepted,
+ * rejected or swept after expiry.
+ * - They are also kept in memory, from the vault on start and then as they are reserved and released, so that
+ * {@link InMemoryTokenSelector} can tell them with {@link #getReservedFor(StateRef)}, without asking the database.
+ */
+@CordaService
+public class PaymentReservationService extends SingletonSerializeAsToken {
+
+    public static final String ENABLED_KEY = "paymentReservation.enabled";
+    private static final int PAGE_SIZE = 200;
+    /**
+     * The pages of an unsorted query may overlap.
+     */
+    private static final Sort BY_STATE_REF = new Sort(Collections.singletonList(new Sort.SortColumn(
+            new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF), Sort.Direction.ASC)));
+    private final static Logger log = LoggerFactory.getLogger(PaymentReservationService.class);
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    private final boolean enabled;
+    /**
+     * The proposals, where we are the buyer, seen in a raw update and waiting for it to be committed.
+     */
+    @NotNull
+    private final Set<UniqueIdentifier> toReserve = ConcurrentHashMap.newKeySet();
+    /**
+     * Value: the linear id of the proposal for which the token is reserved, which is also its soft lock id.
+     */
+    @NotNull
+    private final Map<StateRef, UUID> reservedFor = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unused")
+    public PaymentReservationService(@NotNull final AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.enabled = config.exists(ENABLED_KEY) && config.getBoolean(ENABLED_KEY);
+        if (!enabled) return;
+        final String reserverName = "payment-reserver-" +
+                serviceHub.getMyInfo().getLegalIdentities().get(0).getName().getOrganisation();
+        final ExecutorService reserver = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, reserverName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        serviceHub.registerUnloadHandler(() -> {
+            reserver.shutdownNow();
+            return Unit.INSTANCE;
+        });
+        seedReserved();
+        serviceHub.getVaultService().getRawUpdates().subscribe(
+                this::handleRawUpdate,
+                error -> log.error("In raw updates", error));
+        // The reservations are only started once the proposal has been committed.
+        serviceHub.getVaultService().getUpdates().subscribe(
+                update -> update.getProduced().forEach(it -> {
+                    if (it.getState().getData() instanceof SalesProposal
+                            && toReserve.remove(((SalesProposal) it.getState().getData()).getLinearId())) {
+                        //noinspection unchecked
+                        final StateAndRef<SalesProposal> proposal = (StateAndRef<SalesProposal>) (StateAndRef<?>) it;
+                        reserver.execute(() -> reserve(proposal));
+                    }
+                }),
+                error -> log.error("In updates", error));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Picks up the reservations made before a restart. Of the tokens soft-locked in the vault, only those locked under
+     * the id of a proposal still open are reservations, the others are locked by flows.
+     */
+    private void seedReserved() {
+        final Map<StateRef, UUID> locked = new HashMap<>();
+        final QueryCriteria lockedCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                .withSoftLockingCondition(new QueryCriteria.SoftLockingCondition(
+                        QueryCriteria.SoftLockingType.LOCKED_ONLY, Collections.emptyList()));
+        int pageNumber = DEFAULT_PAGE_NUM;
+        Vault.Page<FungibleToken> page;
+        do {
+            page = serviceHub.getVaultService().queryBy(FungibleToken.class, lockedCriteria,
+                    new PageSpecification(pageNumber, PAGE_SIZE), BY_STATE_REF);
+            for (final Vault.StateMetadata it : page.getStatesMetadata()) {
+                //noinspection ConstantConditions
+                locked.put(it.getRef(), UUID.fromString(it.getLockId()));
+            }
+            pageNumber++;
+        } while (page.getStates().size() == PAGE_SIZE);
+        if (locked.isEmpty()) return;
+
+        final Set<UUID> openProposals = new HashSet<>();
+        final QueryCriteria proposalCriteria = new QueryCriteria.LinearStateQueryCriteria()
+                .withUuid(new ArrayList<>(new HashSet<>(locked.values())));
+        pageNumber = DEFAULT_PAGE_NUM;
+        Vault.Page<SalesProposal> proposalPage;
+        do {
+            proposalPage = serviceHub.getVaultService().queryBy(SalesProposal.class, proposalCriteria,
+                    new PageSpecification(pageNumber, PAGE_SIZE), BY_STATE_REF);
+            proposalPage.getStates().forEach(it -> openProposals.add(it.getState().getData().getLinearId().getId()));
+            pageNumber++;
+        } while (proposalPage.getStates().size() == PAGE_SIZE);
+        locked.forEach((ref, lockId) -> {
+            if (openProposals.contains(lockId)) reservedFor.put(ref, lockId);
+        });
+    }
+
+    /**
+     * Called within the database transaction of the update, which is needed to tell our keys.
+     */
+    private void handleRawUpdate(@NotNull final Vault.Update<ContractState> update) {
+        update.getConsumed().forEach(it -> {
+            if (it.getState().getData() instanceof SalesProposal) {
+                final UUID lockId = ((SalesProposal) it.getState().getData()).getLinearId().getId();
+                // Releasing a lock that was never taken does nothing.
+                serviceHub.getVaultService().softLockRelease(lockId, null);
+                reservedFor.values().removeIf(lockId::equals);
+            } else if (it.getState().getData() instanceof FungibleToken) {
+                reservedFor.remove(it.getRef());
+            }
+        });
+        update.getProduced().forEach(it -> {
+            if (it.getState().getData() instanceof SalesProposal) {
+                final SalesProposal proposal = (SalesProposal) it.getState().getData();
+                if (isMyKey(proposal.getBuyer())) toReserve.add(proposal.getLinearId());
+            }
+        });
+    }
+
+    private void reserve(@NotNull final StateAndRef<SalesProposal> proposal) {
+        serviceHub.startFlow(new ReserveFlow(proposal))
+                .getReturnValue()
+                .toCompletableFuture()
+                .whenComplete((reserved, error) -> {
+                    // The accept will select the tokens itself.
+                    if (error != null) log.warn("Could not reserve payment of "
+                            + proposal.getState().getData().getLinearId(), error);
+                    else {
+                        recordReserved(proposal.getState().getData().getLinearId().getId(), reserved);
+                        log.debug("Reserved " + reserved.size() + " tokens for "
+                                + proposal.getState().getData().getLinearId());
+                    }
+                });
+    }
+
+    /**
+     * @param lockId The id under which the tokens have been soft-locked in the vault.
+     */
+    void recordReserved(@NotNull final UUID lockId, @NotNull final List<StateAndRef<FungibleToken>> reserved) {
+        reserved.forEach(it -> reservedFor.put(it.getRef(), lockId));
+    }
+
+    /**
+     * @return The id of the proposal for which this token is reserved, or null if it is not.
+     */
+    @Nullable
+    public UUID getReservedFor(@NotNull final StateRef token) {
+        return reservedFor.get(token);
+    }
+
+    /**
+     * Has to be called within a database transaction, typically from a flow. The reserved tokens are fetched page by
+     * page, and only until they cover the price.
+     * @param proposal The proposal whose payment may have been reserved.
+     * @return The tokens reserved for this proposal, or an empty list if they are not, or no longer, enough to pay.
+     */
+    @NotNull
+    public List<StateAndRef<FungibleToken>> findReserved(@NotNull final SalesProposal proposal) {
+        final UUID lockId = proposal.getLinearId().getId();
+        final QueryCriteria reservedCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                .withSoftLockingCondition(new QueryCriteria.SoftLockingCondition(
+                        QueryCriteria.SoftLockingType.SPECIFIED, Collections.singletonList(lockId)));
+        final long price = proposal.getPrice().getQuantity();
+        final List<StateAndRef<FungibleToken>> reserved = new ArrayList<>();
+        long total = 0L;
+        int pageNumber = DEFAULT_PAGE_NUM;
+        List<StateAndRef<FungibleToken>> page;
+        do {
+            page = serviceHub.getVaultService()
+                    .queryBy(FungibleToken.class, reservedCriteria,
+                            new PageSpecification(pageNumber, PAGE_SIZE), BY_STATE_REF)
+                    .getStates();
+            for (final StateAndRef<FungibleToken> it : page) {
+                final FungibleToken token = it.getState().getData();
+                if (!token.getHolder().equals(proposal.getBuyer())) continue;
+                if (!token.getIssuedTokenType().equals(proposal.getPrice().getToken())) continue;
+                reserved.add(it);
+                total = Math.addExact(total, token.getAmount().getQuantity());
+                if (price <= total) return reserved;
+            }
+            pageNumber++;
+        } while (page.size() == PAGE_SIZE);
+        return Collections.emptyList();
+    }
+
+    private boolean isMyKey(@NotNull final AbstractParty who) {
+        return serviceHub.getKeyManagementService()
+                .filterMyKeys(Collections.singletonList(who.getOwningKey()))
+                .iterator()
+                .hasNext();
+    }
+
+}
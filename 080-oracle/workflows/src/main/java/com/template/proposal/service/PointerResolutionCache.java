@@ -0,0 +1,175 @@
+package com.template.proposal.service;
+
+import kotlin.Unit;
+import net.corda.core.contracts.*;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This service keeps the result of resolving pointers, so that the flows and services that resolve the same pointers
+ * over and over do not go to the database each time.
+ * - A {@link StaticPointer} always resolves to the same state, so its entries are only ever evicted for space.
+ * - A {@link LinearPointer} resolves to the latest version, so its entries are evicted when the vault records that
+ * this version has been consumed.
+ * The capacities can be set in the CorDapp configuration with {@link #STATIC_CAPACITY_KEY} and
+ * {@link #LINEAR_CAPACITY_KEY}. The hits and misses are published over JMX by its {@link PointerResolutionCacheMetrics}.
+ */
+@CordaService
+public class PointerResolutionCache extends SingletonSerializeAsToken {
+
+    public static final String STATIC_CAPACITY_KEY = "pointerResolutionCache.staticCapacity";
+    public static final String LINEAR_CAPACITY_KEY = "pointerResolutionCache.linearCapacity";
+    private static final int DEFAULT_CAPACITY = 10_000;
+    private final static Logger log = LoggerFactory.getLogger(PointerResolutionCache.class);
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    @NotNull
+    private final Map<StateRef, StateAndRef<ContractState>> staticResolved;
+    @NotNull
+    private final Map<UniqueIdentifier, StateAndRef<LinearState>> linearResolved;
+    /**
+     * Incremented on each eviction caused by the vault, so that a resolution that raced with it is not cached.
+     */
+    private final AtomicLong linearGeneration = new AtomicLong();
+    private final AtomicLong staticHits = new AtomicLong();
+    private final AtomicLong staticMisses = new AtomicLong();
+    private final AtomicLong linearHits = new AtomicLong();
+    private final AtomicLong linearMisses = new AtomicLong();
+    @NotNull
+    private final PointerResolutionCacheMetrics metrics;
+
+    @SuppressWarnings("unused")
+    public PointerResolutionCache(@NotNull final AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.staticResolved = createLru(config.exists(STATIC_CAPACITY_KEY)
+                ? config.getInt(STATIC_CAPACITY_KEY) : DEFAULT_CAPACITY);
+        this.linearResolved = createLru(config.exists(LINEAR_CAPACITY_KEY)
+                ? config.getInt(LINEAR_CAPACITY_KEY) : DEFAULT_CAPACITY);
+        // The raw updates come before the commit, so that nobody picks the consumed version from here while the
+        // transaction commits. The updates come after the commit, so that an entry cached in between, from the
+        // database not yet updated, is evicted too.
+        serviceHub.getVaultService().getRawUpdates().subscribe(
+                this::evictConsumed,
+                error -> log.error("In raw updates", error));
+        serviceHub.getVaultService().getUpdates().subscribe(
+                this::evictConsumed,
+                error -> log.error("In updates", error));
+        this.metrics = new PointerResolutionCacheMetrics(this,
+                serviceHub.getMyInfo().getLegalIdentities().get(0).getName().toString());
+        metrics.register();
+        // So that the MBean does not outlive the node.
+        serviceHub.registerUnloadHandler(() -> {
+            metrics.unregister();
+            return Unit.INSTANCE;
+        });
+    }
+
+    @NotNull
+    private static <K, V> Map<K, V> createLru(final int capacity) {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+                return capacity < size();
+            }
+        });
+    }
+
+    private void evictConsumed(@NotNull final Vault.Update<ContractState> update) {
+        update.getConsumed().forEach(it -> {
+            if (it.getState().getData() instanceof LinearState) {
+                linearGeneration.incrementAndGet();
+                linearResolved.remove(((LinearState) it.getState().getData()).getLinearId());
+            }
+        });
+    }
+
+    /**
+     * Equivalent to {@link StaticPointer#resolve}.
+     */
+    @NotNull
+    public <T extends ContractState> StateAndRef<T> resolve(@NotNull final StaticPointer<T> pointer)
+            throws TransactionResolutionException {
+        final StateAndRef<ContractState> cached = staticResolved.get(pointer.getPointer());
+        // The same StateRef could be asked with a different type, in which case let the pointer decide what to do.
+        if (cached != null && pointer.getType().isInstance(cached.getState().getData())) {
+            staticHits.incrementAndGet();
+            //noinspection unchecked
+            return (StateAndRef<T>) cached;
+        }
+        staticMisses.incrementAndGet();
+        final StateAndRef<T> resolved = pointer.resolve(serviceHub);
+        //noinspection unchecked
+        staticResolved.put(pointer.getPointer(), (StateAndRef<ContractState>) resolved);
+        return resolved;
+    }
+
+    /**
+     * Equivalent to {@link LinearPointer#resolve}.
+     */
+    @NotNull
+    public <T extends LinearState> StateAndRef<T> resolve(@NotNull final LinearPointer<T> pointer) {
+        final StateAndRef<LinearState> cached = linearResolved.get(pointer.getPointer());
+        if (cached != null && pointer.getType().isInstance(cached.getState().getData())) {
+            linearHits.incrementAndGet();
+            //noinspection unchecked
+            return (StateAndRef<T>) cached;
+        }
+        linearMisses.incrementAndGet();
+        final long generation = linearGeneration.get();
+        final StateAndRef<T> resolved = pointer.resolve(serviceHub);
+        // If the vault evicted anything in the meantime, what we got may already be consumed.
+        if (generation == linearGeneration.get()) {
+            //noinspection unchecked
+            linearResolved.put(pointer.getPointer(), (StateAndRef<LinearState>) resolved);
+        }
+        return resolved;
+    }
+
+    public long getStaticHitCount() {
+        return staticHits.get();
+    }
+
+    public long getStaticMissCount() {
+        return staticMisses.get();
+    }
+
+    public long getLinearHitCount() {
+        return linearHits.get();
+    }
+
+    public long getLinearMissCount() {
+        return linearMisses.get();
+    }
+
+    /**
+     * @return The ratio of hits over all resolutions, static and linear, or 0 when there has been none.
+     */
+    public double getHitRatio() {
+        final long hits = staticHits.get() + linearHits.get();
+        final long total = hits + staticMisses.get() + linearMisses.get();
+        return total == 0 ? 0 : ((double) hits) / total;
+    }
+
+    public int getSize() {
+        return staticResolved.size() + linearResolved.size();
+    }
+
+    @NotNull
+    public PointerResolutionCacheMetrics getMetrics() {
+        return metrics;
+    }
+
+}
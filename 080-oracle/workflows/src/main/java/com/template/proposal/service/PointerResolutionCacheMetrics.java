@@ -0,0 +1,90 @@
+package com.template.proposal.service;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * The hit ratio of a {@link PointerResolutionCache}, published in the platform MBean server under
+ * {@link #getObjectName()}, one per node. The values are read from the cache when asked.
+ */
+public class PointerResolutionCacheMetrics implements PointerResolutionCacheMetricsMBean {
+
+    private final static Logger log = LoggerFactory.getLogger(PointerResolutionCacheMetrics.class);
+
+    @NotNull
+    private final PointerResolutionCache cache;
+    @NotNull
+    private final ObjectName objectName;
+
+    PointerResolutionCacheMetrics(@NotNull final PointerResolutionCache cache, @NotNull final String nodeName) {
+        this.cache = cache;
+        try {
+            this.objectName = new ObjectName(SalesProposalServiceMetrics.DOMAIN + ":type=PointerResolutionCache,node="
+                    + ObjectName.quote(nodeName));
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Invalid node name " + nodeName, e);
+        }
+    }
+
+    @NotNull
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Replaces any previous registration under the same name, as happens when a node is restarted in the same JVM.
+     */
+    void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            // Metrics are not worth failing the node for.
+            log.error("Failed to register " + objectName, e);
+        }
+    }
+
+    void unregister() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.error("Failed to unregister " + objectName, e);
+        }
+    }
+
+    @Override
+    public long getStaticHitCount() {
+        return cache.getStaticHitCount();
+    }
+
+    @Override
+    public long getStaticMissCount() {
+        return cache.getStaticMissCount();
+    }
+
+    @Override
+    public long getLinearHitCount() {
+        return cache.getLinearHitCount();
+    }
+
+    @Override
+    public long getLinearMissCount() {
+        return cache.getLinearMissCount();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return cache.getHitRatio();
+    }
+
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+}
@@ -0,0 +1,22 @@
+package com.template.proposal.service;
+
+/**
+ * What {@link PointerResolutionCacheMetrics} exposes over JMX.
+ */
+public interface PointerResolutionCacheMetricsMBean {
+
+    long getStaticHitCount();
+
+    long getStaticMissCount();
+
+    long getLinearHitCount();
+
+    long getLinearMissCount();
+
+    /**
+     * @return The ratio of hits over all resolutions, static and linear, or 0 when there has been none.
+     */
+    double getHitRatio();
+
+    int getSize();
+}
@@ -4,12 +4,21 @@ import com.r3.corda.lib.tokens.contracts.states.EvolvableTokenType;
 import com.r3.corda.lib.tokens.contracts.types.TokenPointer;
 import com.r3.corda.lib.tokens.contracts.types.TokenType;
 import com.template.proposal.flow.InformTokenBuyerFlows;
+import com.template.proposal.service.SalesProposalTrackingSchemaV1.PendingNotification;
+import com.template.proposal.service.SalesProposalTrackingSchemaV1.TrackedBuyer;
 import com.template.proposal.state.SalesProposal;
+import kotlin.Unit;
+import kotlin.jvm.functions.Function1;
 import net.corda.core.contracts.*;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.crypto.SecureHash;
 import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.AnonymousParty;
 import net.corda.core.node.AppServiceHub;
 import net.corda.core.node.services.CordaService;
 import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
 import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.serialization.SingletonSerializeAsToken;
 import net.corda.core.transactions.SignedTransaction;
@@ -18,39 +27,206 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.persistence.EntityManager;
+import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
 
 /**
  * This service informs potential buyers of SalesProposals when the underlying token type has changed.
+ * The potential buyers per token type are kept in the {@link SalesProposalTrackingSchemaV1} table, not in memory.
+ * The table is seeded from the vault when it is empty, as on the first start, and then kept current by the updates.
+ * The notifications are started on a bounded pool whose size can be set in the CorDapp configuration with:
+ * - {@link #THREAD_COUNT_KEY}, the number of threads.
+ * - {@link #QUEUE_CAPACITY_KEY}, the number of notifications that can wait for a thread.
+ * - {@link #DROP_WHEN_FULL_KEY}, whether to drop, and log, a notification when the queue is full, instead of having
+ * the retrier thread start it. A dropped notification stays in the table and is picked up at the next poll.
+ *
+ * The notifications themselves are written to the {@link PendingNotification} table in the same database transaction
+ * as the token type update, and deleted only once the buyer has been informed. A failed notification is retried
+ * after an exponential backoff with jitter, which can be set with:
+ * - {@link #RETRY_BASE_MILLIS_KEY}, the delay before the first retry.
+ * - {@link #RETRY_MAX_MILLIS_KEY}, the cap on the delay.
+ * - {@link #MAX_ATTEMPTS_KEY}, the number of attempts after which the notification is marked as dead. It is kept so
+ * that it can be inspected with {@link #getDeadNotifications()} and retried with {@link #reviveDeadNotifications()}.
+ * - {@link #POLL_MILLIS_KEY}, how often the table is checked for notifications that are due.
+ * - {@link #DELIVERY_TIMEOUT_MILLIS_KEY}, how long to wait for the flow of a notification before counting it as a
+ * failed attempt, as the flow waits for as long as the buyer is unreachable. The flow is not started again, the next
+ * attempts wait on it, so that there is at most one flow per notification.
+ *
+ * What it does is measured by its {@link SalesProposalServiceMetrics}, published over JMX.
  */
 @CordaService
 public class SalesProposalService extends SingletonSerializeAsToken {
 
-    private static final int THREAD_COUNT = 4;
+    public static final String THREAD_COUNT_KEY = "salesProposalService.threadCount";
+    public static final String QUEUE_CAPACITY_KEY = "salesProposalService.queueCapacity";
+    public static final String DROP_WHEN_FULL_KEY = "salesProposalService.dropWhenFull";
+    public static final String RETRY_BASE_MILLIS_KEY = "salesProposalService.retryBaseMillis";
+    public static final String RETRY_MAX_MILLIS_KEY = "salesProposalService.retryMaxMillis";
+    public static final String MAX_ATTEMPTS_KEY = "salesProposalService.maxAttempts";
+    public static final String POLL_MILLIS_KEY = "salesProposalService.pollMillis";
+    public static final String DELIVERY_TIMEOUT_MILLIS_KEY = "salesProposalService.deliveryTimeoutMillis";
+    private static final int DEFAULT_THREAD_COUNT = 4;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1_000;
+    private static final long DEFAULT_RETRY_BASE_MILLIS = 1_000L;
+    private static final long DEFAULT_RETRY_MAX_MILLIS = 600_000L;
+    private static final int DEFAULT_MAX_ATTEMPTS = 20;
+    private static final long DEFAULT_POLL_MILLIS = 5_000L;
+    private static final long DEFAULT_DELIVERY_TIMEOUT_MILLIS = 60_000L;
+    private static final int MAX_DUE_PER_POLL = 100;
+    private static final int SEED_PAGE_SIZE = 1_000;
     private final static Logger log = LoggerFactory.getLogger(SalesProposalService.class);
-    private final static Executor executor = Executors.newFixedThreadPool(THREAD_COUNT);
 
     @NotNull
     private final AppServiceHub serviceHub;
+    @NotNull
+    private final ThreadPoolExecutor executor;
+    /**
+     * Does all the work on the {@link PendingNotification} table, outside of vault transactions.
+     */
+    @NotNull
+    private final ScheduledExecutorService retrier;
+    private final long retryBaseMillis;
+    private final long retryMaxMillis;
+    private final int maxAttempts;
+    private final long deliveryTimeoutMillis;
+    /**
+     * The ids of the {@link PendingNotification}s that have been handed to {@link #executor} and whose flow has not
+     * completed yet, so that they are not started twice.
+     */
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
     /**
-     * Map key: The EvolvableTokenType.
-     * Map value: The potential buyer.
+     * The flows started for {@link PendingNotification}s, by id, until an attempt has seen them complete. A flow to an
+     * unreachable buyer outlives the attempt that timed out, so the next attempt waits on it again instead of starting
+     * another one that would deliver a duplicate.
      */
+    private final Map<Long, CompletableFuture<?>> flows = new ConcurrentHashMap<>();
     @NotNull
-    private final Map<StateAndRef<? extends EvolvableTokenType>, List<AbstractParty>> trackedTypesToBuyers;
+    private final SalesProposalServiceMetrics metrics;
+    private final AtomicLong droppedCount = new AtomicLong();
 
     @SuppressWarnings("unused")
     public SalesProposalService(@NotNull final AppServiceHub serviceHub) {
         this.serviceHub = serviceHub;
-        this.trackedTypesToBuyers = new HashMap<>();
+        this.metrics = new SalesProposalServiceMetrics(this,
+                serviceHub.getMyInfo().getLegalIdentities().get(0).getName().toString());
+        this.executor = createExecutor(serviceHub);
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.retryBaseMillis = config.exists(RETRY_BASE_MILLIS_KEY)
+                ? config.getLong(RETRY_BASE_MILLIS_KEY) : DEFAULT_RETRY_BASE_MILLIS;
+        this.retryMaxMillis = config.exists(RETRY_MAX_MILLIS_KEY)
+                ? config.getLong(RETRY_MAX_MILLIS_KEY) : DEFAULT_RETRY_MAX_MILLIS;
+        this.maxAttempts = config.exists(MAX_ATTEMPTS_KEY)
+                ? config.getInt(MAX_ATTEMPTS_KEY) : DEFAULT_MAX_ATTEMPTS;
+        this.deliveryTimeoutMillis = config.exists(DELIVERY_TIMEOUT_MILLIS_KEY)
+                ? config.getLong(DELIVERY_TIMEOUT_MILLIS_KEY) : DEFAULT_DELIVERY_TIMEOUT_MILLIS;
+        final long pollMillis = config.exists(POLL_MILLIS_KEY)
+                ? config.getLong(POLL_MILLIS_KEY) : DEFAULT_POLL_MILLIS;
+        final String retrierName = "sales-proposal-retrier-" +
+                serviceHub.getMyInfo().getLegalIdentities().get(0).getName().getOrganisation();
+        this.retrier = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, retrierName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        metrics.register();
+        // So that the threads and the MBean do not outlive the node.
+        serviceHub.registerUnloadHandler(() -> {
+            retrier.shutdownNow();
+            executor.shutdownNow();
+            metrics.unregister();
+            return Unit.INSTANCE;
+        });
+        seedTracking();
         trackAndNotify();
+        // This also picks up the notifications left over from before a restart.
+        retrier.scheduleWithFixedDelay(this::sendDueNotifications, 0L, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @NotNull
+    private ThreadPoolExecutor createExecutor(@NotNull final AppServiceHub serviceHub) {
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        final int threadCount = config.exists(THREAD_COUNT_KEY)
+                ? config.getInt(THREAD_COUNT_KEY) : DEFAULT_THREAD_COUNT;
+        final int queueCapacity = config.exists(QUEUE_CAPACITY_KEY)
+                ? config.getInt(QUEUE_CAPACITY_KEY) : DEFAULT_QUEUE_CAPACITY;
+        final boolean dropWhenFull = config.exists(DROP_WHEN_FULL_KEY) && config.getBoolean(DROP_WHEN_FULL_KEY);
+        // The name helps when reading thread dumps. There is one pool per node, even when sharing a JVM.
+        final String namePrefix = "sales-proposal-notifier-" +
+                serviceHub.getMyInfo().getLegalIdentities().get(0).getName().getOrganisation() + "-";
+        final AtomicInteger threadIndex = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, namePrefix + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        final RejectedExecutionHandler whenFull;
+        if (dropWhenFull) {
+            whenFull = (runnable, pool) -> {
+                droppedCount.incrementAndGet();
+                // It stays in the table, so it will be picked up again at the next poll.
+                if (runnable instanceof Delivery) inFlight.remove(((Delivery) runnable).notificationId);
+                log.warn("Notification queue is full, dropping a notification until the next poll");
+            };
+        } else {
+            // Slows down the retrier, which is the only one to submit, instead of piling up notifications.
+            whenFull = new ThreadPoolExecutor.CallerRunsPolicy();
+        }
+        return new ThreadPoolExecutor(threadCount, threadCount,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory,
+                whenFull);
+    }
+
+    /**
+     * Tracks the open proposals already in the vault, when nothing is tracked yet. This happens on the first start
+     * with the tracking table, and is cheap otherwise. It runs before the updates are observed, while no flow can
+     * record a proposal, so that no proposal is tracked twice.
+     */
+    void seedTracking() {
+        final long tracked = serviceHub.withEntityManager((Function1<EntityManager, Long>) entityManager ->
+                entityManager.createQuery("SELECT COUNT(t) FROM " + TrackedBuyer.class.getName() + " t", Long.class)
+                        .getSingleResult());
+        if (0L < tracked) return;
+        final QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        int pageNumber = DEFAULT_PAGE_NUM;
+        long seen = 0;
+        long total;
+        boolean pageEmpty;
+        do {
+            final Vault.Page<SalesProposal> page = serviceHub.getVaultService().queryBy(
+                    SalesProposal.class, criteria, new PageSpecification(pageNumber, SEED_PAGE_SIZE));
+            total = page.getTotalStatesAvailable();
+            seen += page.getStates().size();
+            pageEmpty = page.getStates().isEmpty();
+            for (final StateAndRef<SalesProposal> it : page.getStates()) {
+                try {
+                    putProposal(it.getState().getData());
+                } catch (TransactionResolutionException e) {
+                    log.error("Failed to resolve asset", e);
+                }
+            }
+            pageNumber++;
+        } while (seen < total && !pageEmpty);
     }
 
     private void trackAndNotify() {
-        // We track before we collect the current stuff.
-        // It would be more pleasant to have 2 trackBy, but this does not work as they compete for the db connection.
+        // The raw updates are observed within the database transaction that records the states, so the tracked
+        // buyers are updated atomically with the vault. And, because they are persisted, the vault is only scanned
+        // when the table is empty.
+        serviceHub.getVaultService().getRawUpdates().subscribe(
+                this::updateTracking,
+                error -> log.error("In ContractState raw tracking", error),
+                () -> log.info("ContractState raw updates closed!"));
+        // The notifications are only sent once the transaction has been committed.
         serviceHub.getVaultService()
                 .trackBy(
                         ContractState.class,
@@ -59,44 +235,26 @@ public class SalesProposalService extends SingletonSerializeAsToken {
                 this::handleUpdate,
                 error -> log.error("In ContractState tracking", error),
                 () -> log.info("ContractState updates closed!"));
-        serviceHub.getVaultService().queryBy(SalesProposal.class).getStates()
-                .forEach(it -> {
-                    try {
-                        putProposal(it.getState().getData());
-                    } catch (TransactionResolutionException e) {
-                        log.error("Failed to resolve asset", e);
-                    }
-                });
     }
 
-    private void handleUpdate(@NotNull final Vault.Update<ContractState> update) {
-        // For EvolvableTokenType, we care only about the "net" result. For the same id, there may be more than 1 consumed,
-        // but if there is any consumed, then there is a single produced.
+    /**
+     * Called within the database transaction of the update.
+     */
+    private void updateTracking(@NotNull final Vault.Update<ContractState> update) {
+        // For EvolvableTokenType, we care only about the "net" result. For the same id, there may be more than 1
+        // consumed, but if there is any consumed, then there is a single produced.
         // Map key: EvolvableTokenType linear id
-        // Map value: Tracked and consumed EvolvableTokenType
-        final Map<UniqueIdentifier, StateAndRef<EvolvableTokenType>> toNotify = new HashMap<>();
+        // Map value: Consumed EvolvableTokenType
+        final Map<UniqueIdentifier, StateAndRef<EvolvableTokenType>> consumedTypes = new HashMap<>();
         // We need to look at consumed first to build the pair in the map.
         update.getConsumed().forEach(it -> {
             if (it.getState().getData() instanceof SalesProposal) {
-                try {
-                    removeProposal((SalesProposal) it.getState().getData());
-                } catch (TransactionResolutionException e) {
-                    log.error("Failed to resolve asset", e);
-                }
+                removeProposal((SalesProposal) it.getState().getData());
             } else if (it.getState().getData() instanceof EvolvableTokenType) {
                 final StateAndRef<EvolvableTokenType> consumed = convertToType(it);
-                if (trackedTypesToBuyers.get(consumed) != null) {
-                    final UniqueIdentifier id = consumed.getState().getData().getLinearId();
-                    assert toNotify.get(id) == null; // Because it should be the first time we see it.
-                    // We will need to notify
-                    toNotify.put(id, consumed);
-                }
+                consumedTypes.put(consumed.getState().getData().getLinearId(), consumed);
             }
         });
-        // Clean the outdated information if a consumed SalesProposal removed a tracking.
-        toNotify.forEach((id, state) -> {
-            if (trackedTypesToBuyers.get(state) == null) toNotify.remove(id);
-        });
         update.getProduced().forEach(it -> {
             if (it.getState().getData() instanceof SalesProposal) {
                 try {
@@ -106,17 +264,38 @@ public class SalesProposalService extends SingletonSerializeAsToken {
                 }
             } else if (it.getState().getData() instanceof EvolvableTokenType) {
                 final StateAndRef<EvolvableTokenType> produced = convertToType(it);
-                final UniqueIdentifier id = produced.getState().getData().getLinearId();
-                final StateAndRef<EvolvableTokenType> consumed = toNotify.get(id);
+                final StateAndRef<EvolvableTokenType> consumed = consumedTypes.remove(
+                        produced.getState().getData().getLinearId());
                 if (consumed != null) {
-                    trackedTypesToBuyers.put(produced, trackedTypesToBuyers.get(consumed));
-                    notifyUpdate(consumed, produced);
-                    toNotify.remove(id);
+                    enqueueNotifications(consumed.getRef(), produced);
+                    moveTracking(consumed.getRef(), produced.getRef());
                 }
             }
         });
         // The remaining ones have exited the ledger for good. At the moment, this is impossible.
-        toNotify.forEach((id, state) -> trackedTypesToBuyers.remove(state));
+        consumedTypes.forEach((id, state) -> removeTracking(state.getRef()));
+    }
+
+    /**
+     * Called once the update has been committed.
+     */
+    private void handleUpdate(@NotNull final Vault.Update<ContractState> update) {
+        final boolean relevant = update.getConsumed().stream().anyMatch(it -> isTracked(it.getState().getData()))
+                || update.getProduced().stream().anyMatch(it -> isTracked(it.getState().getData()));
+        if (relevant) {
+            metrics.updateProcessed();
+        } else {
+            metrics.updateFilteredOut();
+            return;
+        }
+        // The notifications, if any, have been enqueued with the update, no need to wait for the next poll.
+        final boolean hasNewType = update.getProduced().stream()
+                .anyMatch(it -> it.getState().getData() instanceof EvolvableTokenType);
+        if (hasNewType) retrier.execute(this::sendDueNotifications);
+    }
+
+    private static boolean isTracked(@NotNull final ContractState state) {
+        return state instanceof SalesProposal || state instanceof EvolvableTokenType;
     }
 
     @NotNull
@@ -145,12 +324,11 @@ public class SalesProposalService extends SingletonSerializeAsToken {
     @Nullable
     public StateAndRef<EvolvableTokenType> getTokenType(@NotNull final SalesProposal proposal)
             throws TransactionResolutionException {
-        final TokenType type = proposal.getAsset().resolve(serviceHub).getState().getData().getTokenType();
+        final PointerResolutionCache resolver = serviceHub.cordaService(PointerResolutionCache.class);
+        final TokenType type = resolver.resolve(proposal.getAsset()).getState().getData().getTokenType();
         if (!type.isPointer()) return null;
         //noinspection unchecked
-        return ((TokenPointer<EvolvableTokenType>) type)
-                .getPointer()
-                .resolve(serviceHub);
+        return resolver.resolve(((TokenPointer<EvolvableTokenType>) type).getPointer());
     }
 
     private void putProposal(@NotNull final SalesProposal proposal) throws TransactionResolutionException {
@@ -159,49 +337,307 @@ public class SalesProposalService extends SingletonSerializeAsToken {
         final StateAndRef<EvolvableTokenType> tokenType = getTokenType(proposal);
         // If it is not evolvable, there is nothing to track.
         if (tokenType == null) return;
-        final List<AbstractParty> buyers = trackedTypesToBuyers.get(tokenType);
-        if (buyers == null) {
-            trackedTypesToBuyers.put(tokenType, new ArrayList<>(Collections.singletonList(proposal.getBuyer())));
-        } else {
-            buyers.add(proposal.getBuyer());
+        serviceHub.withEntityManager(entityManager -> {
+            entityManager.persist(new TrackedBuyer(
+                    proposal.getLinearId().getId().toString(),
+                    tokenType.getRef().toString(),
+                    proposal.getBuyer().getOwningKey().getEncoded()));
+        });
+    }
+
+    private void removeProposal(@NotNull final SalesProposal proposal) {
+        // If it was not tracked in the first place, nothing is deleted.
+        serviceHub.withEntityManager(entityManager -> {
+            entityManager.createQuery("DELETE FROM " + TrackedBuyer.class.getName() +
+                    " t WHERE t.proposalId = :proposalId")
+                    .setParameter("proposalId", proposal.getLinearId().getId().toString())
+                    .executeUpdate();
+        });
+    }
+
+    private void moveTracking(@NotNull final StateRef consumed, @NotNull final StateRef produced) {
+        serviceHub.withEntityManager(entityManager -> {
+            entityManager.createQuery("UPDATE " + TrackedBuyer.class.getName() +
+                    " t SET t.tokenTypeRef = :produced WHERE t.tokenTypeRef = :consumed")
+                    .setParameter("produced", produced.toString())
+                    .setParameter("consumed", consumed.toString())
+                    .executeUpdate();
+        });
+    }
+
+    private void removeTracking(@NotNull final StateRef tokenType) {
+        serviceHub.withEntityManager(entityManager -> {
+            entityManager.createQuery("DELETE FROM " + TrackedBuyer.class.getName() +
+                    " t WHERE t.tokenTypeRef = :tokenType")
+                    .setParameter("tokenType", tokenType.toString())
+                    .executeUpdate();
+        });
+    }
+
+    /**
+     * Called within the database transaction of the update, before the tracking is moved to the produced one.
+     */
+    private void enqueueNotifications(
+            @NotNull final StateRef consumed,
+            @NotNull final StateAndRef<EvolvableTokenType> produced) {
+        final Instant now = serviceHub.getClock().instant();
+        serviceHub.withEntityManager(entityManager -> {
+            final List<TrackedBuyer> buyers = entityManager.createQuery("SELECT t FROM " +
+                    TrackedBuyer.class.getName() + " t WHERE t.tokenTypeRef = :tokenType ORDER BY t.id",
+                    TrackedBuyer.class)
+                    .setParameter("tokenType", consumed.toString())
+                    .getResultList();
+            buyers.forEach(it -> entityManager.persist(new PendingNotification(
+                    produced.getState().getData().getLinearId().toString(),
+                    produced.getRef().getTxhash().toString(),
+                    it.getBuyerKey(),
+                    now)));
+            if (!buyers.isEmpty()) metrics.buyersOfType(buyers.size());
+        });
+    }
+
+    /**
+     * Runs on {@link #retrier}.
+     */
+    private void sendDueNotifications() {
+        try {
+            final List<PendingNotification> due = serviceHub.withEntityManager(
+                    (Function1<EntityManager, List<PendingNotification>>) entityManager ->
+                            entityManager.createQuery("SELECT n FROM " + PendingNotification.class.getName() +
+                                    " n WHERE n.dead = false AND n.nextAttemptAt <= :now ORDER BY n.nextAttemptAt",
+                                    PendingNotification.class)
+                                    .setParameter("now", serviceHub.getClock().instant())
+                                    .setMaxResults(MAX_DUE_PER_POLL)
+                                    .getResultList());
+            for (final PendingNotification notification : due) {
+                if (inFlight.add(notification.getId())) executor.execute(new Delivery(notification));
+            }
+        } catch (Exception e) {
+            // So that the scheduled task is not cancelled.
+            log.error("Failed to send due notifications", e);
         }
     }
 
-    private void removeProposal(@NotNull final SalesProposal proposal) throws TransactionResolutionException {
-        final StateAndRef<EvolvableTokenType> tokenType = getTokenType(proposal);
-        // If it is not evolvable, nothing was tracked in the first place.
-        if (tokenType == null) return;
-        trackedTypesToBuyers.remove(tokenType);
-    }
-
-    private void notifyUpdate(
-            @NotNull final StateAndRef<EvolvableTokenType> consumed,
-            @NotNull final StateAndRef<EvolvableTokenType> replacement) {
-        final UniqueIdentifier stateId = consumed.getState().getData().getLinearId();
-        final List<AbstractParty> buyers = trackedTypesToBuyers.get(consumed);
-        final SignedTransaction tx = serviceHub.getValidatedTransactions().getTransaction(
-                replacement.getRef().getTxhash());
-        assert buyers != null;
-        assert tx != null; // Should never happen.
-        for (final AbstractParty buyer : buyers)
-            executor.execute(() ->
-                    serviceHub.startTrackedFlow(new InformTokenBuyerFlows.Send(buyer, tx))
-                            .getProgress()
-                            .subscribe(
-                                    result -> log.info("Notified buyer " + buyer + " of change of " + stateId +
-                                            "with result " + result),
-                                    e -> log.error("Failed to notify buyer " + buyer + " of change of " + stateId, e),
-                                    () -> trackedTypesToBuyers.remove(consumed)
-                            ));
+    /**
+     * Starts the flow for a single {@link PendingNotification}, unless one is already in {@link #flows}. It is a named
+     * class so that it can be recognised when rejected by {@link #executor}. The attempt ends with the flow or with the
+     * timeout, whichever comes first. A timed out flow keeps running, and its outcome goes to the next attempt.
+     */
+    private class Delivery implements Runnable {
+        private final long notificationId;
+        @NotNull
+        private final String tokenTypeId;
+        @NotNull
+        private final SecureHash txHash;
+        @NotNull
+        private final AbstractParty buyer;
+        @NotNull
+        private final Instant createdAt;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        Delivery(@NotNull final PendingNotification notification) {
+            this.notificationId = notification.getId();
+            this.tokenTypeId = notification.getTokenTypeId();
+            this.txHash = SecureHash.parse(notification.getTxHash());
+            this.buyer = new AnonymousParty(Crypto.decodePublicKey(notification.getBuyerKey()));
+            this.createdAt = notification.getCreatedAt();
+        }
+
+        @Override
+        public void run() {
+            final SignedTransaction tx = serviceHub.getValidatedTransactions().getTransaction(txHash);
+            if (tx == null) {
+                retrier.execute(() -> recordFailure(this, "Transaction " + txHash + " not found"));
+                return;
+            }
+            try {
+                CompletableFuture<?> flow = flows.get(notificationId);
+                if (flow == null) {
+                    metrics.notificationStarted();
+                    flow = serviceHub.startFlow(new InformTokenBuyerFlows.Send(buyer, tx))
+                            .getReturnValue()
+                            .toCompletableFuture();
+                    flows.put(notificationId, flow);
+                } else {
+                    log.debug("Waiting again on the notification flow to buyer " + buyer);
+                }
+                final ScheduledFuture<?> timeout = retrier.schedule(() -> {
+                    // The flow stays in flows for the next attempt.
+                    if (settled.compareAndSet(false, true)) {
+                        recordFailure(this, "Timed out after " + deliveryTimeoutMillis + " ms");
+                    }
+                }, deliveryTimeoutMillis, TimeUnit.MILLISECONDS);
+                flow
+                        // Back on the retrier as the flow thread is no place for database work.
+                        .whenCompleteAsync((result, error) -> {
+                            if (!settled.compareAndSet(false, true)) return;
+                            timeout.cancel(false);
+                            flows.remove(notificationId);
+                            if (error == null) {
+                                recordSuccess(this);
+                            } else {
+                                recordFailure(this, String.valueOf(error.getMessage()));
+                            }
+                        }, retrier);
+            } catch (Exception e) {
+                if (settled.compareAndSet(false, true)) {
+                    retrier.execute(() -> recordFailure(this, String.valueOf(e.getMessage())));
+                }
+            }
+        }
+    }
+
+    private void recordSuccess(@NotNull final Delivery delivery) {
+        try {
+            serviceHub.withEntityManager(entityManager -> {
+                final PendingNotification notification = entityManager.find(
+                        PendingNotification.class, delivery.notificationId);
+                if (notification != null) entityManager.remove(notification);
+            });
+            metrics.notificationSucceeded(
+                    serviceHub.getClock().millis() - delivery.createdAt.toEpochMilli());
+            log.info("Notified buyer " + delivery.buyer + " of change of " + delivery.tokenTypeId);
+        } finally {
+            inFlight.remove(delivery.notificationId);
+        }
+    }
+
+    private void recordFailure(@NotNull final Delivery delivery, @NotNull final String error) {
+        try {
+            serviceHub.withEntityManager(entityManager -> {
+                final PendingNotification notification = entityManager.find(
+                        PendingNotification.class, delivery.notificationId);
+                if (notification == null) return;
+                final int attempts = notification.getAttempts() + 1;
+                metrics.notificationFailed(maxAttempts <= attempts);
+                if (maxAttempts <= attempts) {
+                    notification.recordFailure(error, null);
+                    log.error("Giving up on notifying buyer " + delivery.buyer + " of change of " +
+                            delivery.tokenTypeId + " after " + attempts + " attempts: " + error);
+                } else {
+                    final long delay = backoffMillis(attempts, retryBaseMillis, retryMaxMillis);
+                    notification.recordFailure(error, serviceHub.getClock().instant().plusMillis(delay));
+                    log.warn("Failed to notify buyer " + delivery.buyer + " of change of " + delivery.tokenTypeId +
+                            ", attempt " + attempts + ", retrying in " + delay + " ms: " + error);
+                }
+            });
+        } finally {
+            inFlight.remove(delivery.notificationId);
+        }
+    }
+
+    /**
+     * The delay doubles with each attempt, up to the cap. Only its upper half is randomised, so that retries of
+     * notifications that failed together are spread out, while never coming back sooner than half the delay.
+     *
+     * @param attempts The number of attempts so far, at least 1.
+     * @return The delay in milliseconds before the next attempt.
+     */
+    static long backoffMillis(final int attempts, final long baseMillis, final long maxMillis) {
+        // Capping the shift prevents overflow.
+        final long exponential = baseMillis << Math.min(attempts - 1, 30);
+        final long capped = 0 < exponential && exponential < maxMillis ? exponential : maxMillis;
+        final long half = capped / 2;
+        return half + ThreadLocalRandom.current().nextLong(capped - half + 1);
+    }
+
+    /**
+     * @return The number of notifications waiting for a thread.
+     */
+    public int getNotificationQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return The approximate number of threads currently starting notifications.
+     */
+    public int getNotificationActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return The number of notifications dropped because the queue was full.
+     */
+    public long getNotificationDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return The number of notifications not yet delivered and not given up on.
+     */
+    public long getPendingNotificationCount() {
+        return serviceHub.withEntityManager((Function1<EntityManager, Long>) entityManager ->
+                entityManager.createQuery("SELECT COUNT(n) FROM " + PendingNotification.class.getName() +
+                        " n WHERE n.dead = false", Long.class)
+                        .getSingleResult());
+    }
+
+    /**
+     * @return How long ago, in milliseconds, the oldest notification not yet delivered was recorded, or 0 if none.
+     */
+    public long getOldestPendingNotificationAgeMillis() {
+        final Instant oldest = serviceHub.withEntityManager((Function1<EntityManager, Instant>) entityManager ->
+                entityManager.createQuery("SELECT MIN(n.createdAt) FROM " + PendingNotification.class.getName() +
+                        " n WHERE n.dead = false", Instant.class)
+                        .getSingleResult());
+        return oldest == null ? 0L : Math.max(0L, serviceHub.getClock().millis() - oldest.toEpochMilli());
+    }
+
+    @NotNull
+    public SalesProposalServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The notifications that were given up on after {@link #MAX_ATTEMPTS_KEY} attempts.
+     */
+    @NotNull
+    public List<PendingNotification> getDeadNotifications() {
+        return serviceHub.withEntityManager(
+                (Function1<EntityManager, List<PendingNotification>>) entityManager ->
+                        entityManager.createQuery("SELECT n FROM " + PendingNotification.class.getName() +
+                                " n WHERE n.dead = true ORDER BY n.id", PendingNotification.class)
+                                .getResultList());
+    }
+
+    /**
+     * Puts the dead notifications back in the queue, for instance once the buyer is known to be reachable again.
+     *
+     * @return The number of notifications revived.
+     */
+    public int reviveDeadNotifications() {
+        final Instant now = serviceHub.getClock().instant();
+        final int revived = serviceHub.withEntityManager((Function1<EntityManager, Integer>) entityManager -> {
+            final List<PendingNotification> dead = entityManager.createQuery("SELECT n FROM " +
+                    PendingNotification.class.getName() + " n WHERE n.dead = true", PendingNotification.class)
+                    .getResultList();
+            dead.forEach(it -> it.revive(now));
+            return dead.size();
+        });
+        if (0 < revived) retrier.execute(this::sendDueNotifications);
+        return revived;
     }
 
     public int getTokenTypeCount() {
-        return trackedTypesToBuyers.size();
+        return serviceHub.withEntityManager((Function1<EntityManager, Long>) entityManager ->
+                entityManager.createQuery("SELECT COUNT(DISTINCT t.tokenTypeRef) FROM " +
+                        TrackedBuyer.class.getName() + " t", Long.class)
+                        .getSingleResult())
+                .intValue();
     }
 
     @Nullable
     public List<AbstractParty> getBuyersOf(@NotNull final StateAndRef<? extends EvolvableTokenType> tokenType) {
-        return trackedTypesToBuyers.get(tokenType);
+        final List<TrackedBuyer> tracked = serviceHub.withEntityManager(
+                (Function1<EntityManager, List<TrackedBuyer>>) entityManager ->
+                        entityManager.createQuery("SELECT t FROM " + TrackedBuyer.class.getName() +
+                                " t WHERE t.tokenTypeRef = :tokenType ORDER BY t.id", TrackedBuyer.class)
+                                .setParameter("tokenType", tokenType.getRef().toString())
+                                .getResultList());
+        if (tracked.isEmpty()) return null;
+        return tracked.stream()
+                .map(it -> new AnonymousParty(Crypto.decodePublicKey(it.getBuyerKey())))
+                .collect(Collectors.toList());
     }
 
-}
\ No newline at end of file
+}
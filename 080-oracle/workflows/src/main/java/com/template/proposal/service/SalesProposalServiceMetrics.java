@@ -0,0 +1,252 @@
+package com.template.proposal.service;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The counters and histograms of a {@link SalesProposalService}, published in the platform MBean server under
+ * {@link #getObjectName()}, one per node, so that JMX tools, or the node's Jolokia agent, can collect them. The gauges
+ * read the live values from the service when asked.
+ */
+public class SalesProposalServiceMetrics implements SalesProposalServiceMetricsMBean {
+
+    public static final String DOMAIN = "com.template.proposal";
+    private final static Logger log = LoggerFactory.getLogger(SalesProposalServiceMetrics.class);
+
+    @NotNull
+    private final SalesProposalService service;
+    @NotNull
+    private final ObjectName objectName;
+    private final AtomicLong updatesProcessed = new AtomicLong();
+    private final AtomicLong updatesFilteredOut = new AtomicLong();
+    private final AtomicLong notificationsStarted = new AtomicLong();
+    private final AtomicLong notificationsSucceeded = new AtomicLong();
+    private final AtomicLong notificationsFailed = new AtomicLong();
+    private final AtomicLong notificationsDead = new AtomicLong();
+    @NotNull
+    private final Histogram buyersPerType = new Histogram();
+    /**
+     * From the recording of the token type update to the successful notification of the buyer.
+     */
+    @NotNull
+    private final Histogram notificationLatency = new Histogram();
+
+    SalesProposalServiceMetrics(@NotNull final SalesProposalService service, @NotNull final String nodeName) {
+        this.service = service;
+        try {
+            this.objectName = new ObjectName(DOMAIN + ":type=SalesProposalService,node=" + ObjectName.quote(nodeName));
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Invalid node name " + nodeName, e);
+        }
+    }
+
+    @NotNull
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Replaces any previous registration under the same name, as happens when a node is restarted in the same JVM.
+     */
+    void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            // Metrics are not worth failing the node for.
+            log.error("Failed to register " + objectName, e);
+        }
+    }
+
+    void unregister() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.error("Failed to unregister " + objectName, e);
+        }
+    }
+
+    void updateProcessed() {
+        updatesProcessed.incrementAndGet();
+    }
+
+    void updateFilteredOut() {
+        updatesFilteredOut.incrementAndGet();
+    }
+
+    void buyersOfType(final int count) {
+        buyersPerType.record(count);
+    }
+
+    void notificationStarted() {
+        notificationsStarted.incrementAndGet();
+    }
+
+    void notificationSucceeded(final long latencyMillis) {
+        notificationsSucceeded.incrementAndGet();
+        notificationLatency.record(latencyMillis);
+    }
+
+    void notificationFailed(final boolean dead) {
+        notificationsFailed.incrementAndGet();
+        if (dead) notificationsDead.incrementAndGet();
+    }
+
+    @Override
+    public long getUpdatesProcessed() {
+        return updatesProcessed.get();
+    }
+
+    @Override
+    public long getUpdatesFilteredOut() {
+        return updatesFilteredOut.get();
+    }
+
+    @Override
+    public int getTrackedTokenTypes() {
+        return service.getTokenTypeCount();
+    }
+
+    @Override
+    public long getBuyersPerTypeCount() {
+        return buyersPerType.getCount();
+    }
+
+    @Override
+    public double getBuyersPerTypeMean() {
+        return buyersPerType.getMean();
+    }
+
+    @Override
+    public long getBuyersPerTypeMax() {
+        return buyersPerType.getMax();
+    }
+
+    @Override
+    public long getNotificationsStarted() {
+        return notificationsStarted.get();
+    }
+
+    @Override
+    public long getNotificationsSucceeded() {
+        return notificationsSucceeded.get();
+    }
+
+    @Override
+    public long getNotificationsFailed() {
+        return notificationsFailed.get();
+    }
+
+    @Override
+    public long getNotificationsDead() {
+        return notificationsDead.get();
+    }
+
+    @Override
+    public long getNotificationsPending() {
+        return service.getPendingNotificationCount();
+    }
+
+    @Override
+    public long getNotificationQueueDepth() {
+        return service.getNotificationQueueDepth();
+    }
+
+    @Override
+    public int getNotificationActiveCount() {
+        return service.getNotificationActiveCount();
+    }
+
+    @Override
+    public long getNotificationDroppedCount() {
+        return service.getNotificationDroppedCount();
+    }
+
+    @Override
+    public long getOldestPendingNotificationAgeMillis() {
+        return service.getOldestPendingNotificationAgeMillis();
+    }
+
+    @Override
+    public double getNotificationLatencyMean() {
+        return notificationLatency.getMean();
+    }
+
+    @Override
+    public long getNotificationLatencyP50() {
+        return notificationLatency.getPercentile(0.50);
+    }
+
+    @Override
+    public long getNotificationLatencyP95() {
+        return notificationLatency.getPercentile(0.95);
+    }
+
+    @Override
+    public long getNotificationLatencyP99() {
+        return notificationLatency.getPercentile(0.99);
+    }
+
+    @Override
+    public long getNotificationLatencyMax() {
+        return notificationLatency.getMax();
+    }
+
+    /**
+     * A lock-free histogram of non-negative values in power-of-2 buckets. The percentiles are therefore approximate,
+     * reported as the upper bound of their bucket, which is good enough to alert on.
+     */
+    static class Histogram {
+        /**
+         * Bucket i holds the values whose highest bit is i - 1, bucket 0 holds 0.
+         */
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(final long value) {
+            final long positive = Math.max(0L, value);
+            buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(positive));
+            count.incrementAndGet();
+            sum.addAndGet(positive);
+            max.accumulateAndGet(positive, Math::max);
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        double getMean() {
+            final long current = count.get();
+            return current == 0 ? 0 : ((double) sum.get()) / current;
+        }
+
+        long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @param quantile Between 0 and 1.
+         */
+        long getPercentile(final double quantile) {
+            final long total = count.get();
+            if (total == 0) return 0;
+            final long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (rank <= seen) return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+            }
+            return max.get();
+        }
+    }
+}
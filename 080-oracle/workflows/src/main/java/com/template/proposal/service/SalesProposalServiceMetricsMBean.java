@@ -0,0 +1,47 @@
+package com.template.proposal.service;
+
+/**
+ * What {@link SalesProposalServiceMetrics} exposes over JMX. The latencies are in milliseconds.
+ */
+public interface SalesProposalServiceMetricsMBean {
+
+    long getUpdatesProcessed();
+
+    long getUpdatesFilteredOut();
+
+    int getTrackedTokenTypes();
+
+    long getBuyersPerTypeCount();
+
+    double getBuyersPerTypeMean();
+
+    long getBuyersPerTypeMax();
+
+    long getNotificationsStarted();
+
+    long getNotificationsSucceeded();
+
+    long getNotificationsFailed();
+
+    long getNotificationsDead();
+
+    long getNotificationsPending();
+
+    long getNotificationQueueDepth();
+
+    int getNotificationActiveCount();
+
+    long getNotificationDroppedCount();
+
+    long getOldestPendingNotificationAgeMillis();
+
+    double getNotificationLatencyMean();
+
+    long getNotificationLatencyP50();
+
+    long getNotificationLatencyP95();
+
+    long getNotificationLatencyP99();
+
+    long getNotificationLatencyMax();
+}
@@ -0,0 +1,288 @@
+package com.template.proposal.service;
+
+import com.template.proposal.flow.SalesProposalSweepFlows.SweepFlow;
+import com.template.proposal.service.SalesProposalSweeperSchemaV1.ClaimedBucket;
+import com.template.proposal.state.SalesProposal;
+import com.template.proposal.state.SalesProposalSchemaV1;
+import kotlin.Unit;
+import kotlin.jvm.functions.Function1;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * This service drives the sweeps of expired {@link SalesProposal}s. Every {@link #SWEEP_MILLIS_KEY}, it asks the
+ * expiration index for the proposals, where we are the seller, that have expired, and starts one
+ * {@link SweepFlow} per {@link SalesProposal#EXPIRY_BUCKET} they fall in, instead of one flow per proposal. A sweep
+ * has to {@link #claim(Instant)} its bucket first, so that a bucket is not swept twice when its sweep is still
+ * running at the next poll, or was done before a restart. The claims are kept in the
+ * {@link SalesProposalSweeperSchemaV1} table, so that they survive restarts.
+ * The proposals that a sweep had to skip, because the host of their buyer was unknown, are swept again later, by
+ * starting a new sweep of their bucket.
+ * It can be set in the CorDapp configuration with:
+ * - {@link #BATCH_SIZE_KEY}, the number of proposals rejected per transaction.
+ * - {@link #SWEEP_MILLIS_KEY}, how often the expired proposals are looked for.
+ * - {@link #RETRY_SKIPPED_MILLIS_KEY}, how often the buckets with skipped proposals are swept again.
+ */
+@CordaService
+public class SalesProposalSweeper extends SingletonSerializeAsToken {
+
+    public static final String BATCH_SIZE_KEY = "salesProposalSweeper.batchSize";
+    public static final String SWEEP_MILLIS_KEY = "salesProposalSweeper.sweepMillis";
+    public static final String RETRY_SKIPPED_MILLIS_KEY = "salesProposalSweeper.retrySkippedMillis";
+    private static final int DEFAULT_BATCH_SIZE = 200;
+    private static final long DEFAULT_SWEEP_MILLIS = SalesProposal.EXPIRY_BUCKET.toMillis();
+    private static final long DEFAULT_RETRY_SKIPPED_MILLIS = 300_000L;
+    private static final int PAGE_SIZE = 1_000;
+    /**
+     * The pages of an unsorted query may overlap.
+     */
+    private static final Sort BY_STATE_REF = new Sort(Collections.singletonList(new Sort.SortColumn(
+            new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF), Sort.Direction.ASC)));
+    /**
+     * How long a bucket is remembered as claimed, long enough for its sweep to have ended. Past that, a proposal
+     * left in the bucket gets the bucket swept again.
+     */
+    private static final Duration CLAIM_RETENTION = Duration.ofHours(1);
+    private final static Logger log = LoggerFactory.getLogger(SalesProposalSweeper.class);
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    private final int batchSize;
+    /**
+     * The buckets claimed since the start, so that concurrent sweeps of a bucket do not both wait on the database.
+     */
+    @NotNull
+    private final Set<Instant> claimedBuckets = ConcurrentHashMap.newKeySet();
+    /**
+     * Starts the sweeps, and does the database work that has to outlive the transaction of a failing sweep, and the
+     * retries.
+     */
+    @NotNull
+    private final ScheduledExecutorService retrier;
+
+    @SuppressWarnings("unused")
+    public SalesProposalSweeper(@NotNull final AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.batchSize = config.exists(BATCH_SIZE_KEY) ? config.getInt(BATCH_SIZE_KEY) : DEFAULT_BATCH_SIZE;
+        final long sweepMillis = config.exists(SWEEP_MILLIS_KEY)
+                ? config.getLong(SWEEP_MILLIS_KEY) : DEFAULT_SWEEP_MILLIS;
+        final long retrySkippedMillis = config.exists(RETRY_SKIPPED_MILLIS_KEY)
+                ? config.getLong(RETRY_SKIPPED_MILLIS_KEY) : DEFAULT_RETRY_SKIPPED_MILLIS;
+        final String retrierName = "sales-proposal-sweeper-" +
+                serviceHub.getMyInfo().getLegalIdentities().get(0).getName().getOrganisation();
+        this.retrier = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, retrierName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        // So that the thread does not outlive the node.
+        serviceHub.registerUnloadHandler(() -> {
+            retrier.shutdownNow();
+            return Unit.INSTANCE;
+        });
+        // This also picks up the proposals that expired while the node was down.
+        retrier.scheduleWithFixedDelay(() -> {
+            try {
+                sweepDueBuckets();
+            } catch (Exception e) {
+                // So that the scheduled task is not cancelled.
+                log.error("Failed to sweep the expired proposals", e);
+            }
+        }, 0L, sweepMillis, TimeUnit.MILLISECONDS);
+        retrier.scheduleWithFixedDelay(() -> {
+            try {
+                retrySkipped();
+            } catch (Exception e) {
+                // So that the scheduled task is not cancelled.
+                log.error("Failed to retry the skipped proposals", e);
+            }
+        }, retrySkippedMillis, retrySkippedMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Called from the sweep, so the claim is recorded with its transaction.
+     *
+     * @param bucketEnd The end of the bucket to sweep.
+     * @return Whether the caller is the first to claim it, and therefore has to do the sweep.
+     */
+    public boolean claim(@NotNull final Instant bucketEnd) {
+        final Instant now = serviceHub.getClock().instant();
+        final Instant forgetBefore = now.minus(CLAIM_RETENTION);
+        claimedBuckets.removeIf(it -> it.isBefore(forgetBefore));
+        if (!claimedBuckets.add(bucketEnd)) return false;
+        return serviceHub.withEntityManager((Function1<EntityManager, Boolean>) entityManager -> {
+            // The buckets with skipped proposals are kept until they are retried.
+            entityManager.createQuery("DELETE FROM " + ClaimedBucket.class.getName() +
+                    " c WHERE c.claimedAt < :forgetBefore AND c.skipped = 0")
+                    .setParameter("forgetBefore", forgetBefore)
+                    .executeUpdate();
+            // Claimed before a restart.
+            if (entityManager.find(ClaimedBucket.class, bucketEnd) != null) return false;
+            entityManager.persist(new ClaimedBucket(bucketEnd, now));
+            return true;
+        });
+    }
+
+    /**
+     * Called from the sweep, so that its bucket is swept again later.
+     *
+     * @param skipped The number of proposals that could not be rejected.
+     */
+    public void recordSkipped(@NotNull final Instant bucketEnd, final int skipped) {
+        serviceHub.withEntityManager(entityManager -> {
+            final ClaimedBucket claimed = entityManager.find(ClaimedBucket.class, bucketEnd);
+            if (claimed != null) claimed.setSkipped(skipped);
+        });
+    }
+
+    /**
+     * So that the next sweep of this bucket tries again, when the claimer failed. The claim is removed on
+     * {@link #retrier}, as the transaction of the failed sweep is rolled back.
+     */
+    public void release(@NotNull final Instant bucketEnd) {
+        retrier.execute(() -> {
+            try {
+                serviceHub.withEntityManager(entityManager -> {
+                    final ClaimedBucket claimed = entityManager.find(ClaimedBucket.class, bucketEnd);
+                    if (claimed != null) entityManager.remove(claimed);
+                });
+            } finally {
+                claimedBuckets.remove(bucketEnd);
+            }
+        });
+    }
+
+    /**
+     * Runs on {@link #retrier}. Starts a sweep of each bucket that has expired proposals, where we are the seller,
+     * unless it was claimed since the start. The sweep checks the claims kept in the database.
+     *
+     * @return The number of sweeps started.
+     */
+    int sweepDueBuckets() {
+        final Set<Instant> dueBuckets = new TreeSet<>();
+        for (final StateAndRef<SalesProposal> it : findExpiredSoldByMe(serviceHub.getClock().instant())) {
+            dueBuckets.add(SalesProposal.getExpiryBucketEnd(it.getState().getData().getExpirationDate()));
+        }
+        dueBuckets.removeAll(claimedBuckets);
+        for (final Instant bucketEnd : dueBuckets) {
+            serviceHub.startFlow(new SweepFlow(bucketEnd));
+        }
+        return dueBuckets.size();
+    }
+
+    /**
+     * Runs on {@link #retrier}. Starts a new sweep of each bucket that has skipped proposals, after releasing it.
+     *
+     * @return The number of buckets swept again.
+     */
+    int retrySkipped() {
+        final List<Instant> skippedBuckets = serviceHub.withEntityManager(
+                (Function1<EntityManager, List<Instant>>) entityManager -> {
+                    final List<ClaimedBucket> skipped = entityManager.createQuery("SELECT c FROM " +
+                            ClaimedBucket.class.getName() + " c WHERE 0 < c.skipped ORDER BY c.bucketEnd",
+                            ClaimedBucket.class)
+                            .getResultList();
+                    final List<Instant> bucketEnds = new ArrayList<>();
+                    for (final ClaimedBucket it : skipped) {
+                        bucketEnds.add(it.getBucketEnd());
+                        entityManager.remove(it);
+                    }
+                    return bucketEnds;
+                });
+        for (final Instant bucketEnd : skippedBuckets) {
+            claimedBuckets.remove(bucketEnd);
+            serviceHub.startFlow(new SweepFlow(bucketEnd));
+        }
+        return skippedBuckets.size();
+    }
+
+    /**
+     * @param now The time at which the sweep happens.
+     * @return The unconsumed proposals, where we are the seller, that have expired long enough ago to be rejected.
+     */
+    @NotNull
+    public List<StateAndRef<SalesProposal>> findExpiredSoldByMe(@NotNull final Instant now) {
+        // The seller's time window starts 1 second after the expiration.
+        return findSoldByMe(SalesProposalSchemaV1.expiringBefore(now.minus(Duration.ofSeconds(1))));
+    }
+
+    /**
+     * @param bucketEnd The end of the bucket to sweep.
+     * @param now       The time at which the sweep happens.
+     * @return The unconsumed proposals of the bucket, where we are the seller, that have expired long enough ago to
+     * be rejected.
+     */
+    @NotNull
+    public List<StateAndRef<SalesProposal>> findExpiredSoldByMe(
+            @NotNull final Instant bucketEnd,
+            @NotNull final Instant now) {
+        final Instant expiredBefore = now.minus(Duration.ofSeconds(1));
+        return findSoldByMe(SalesProposalSchemaV1.expiringFrom(bucketEnd.minus(SalesProposal.EXPIRY_BUCKET))
+                .and(SalesProposalSchemaV1.expiringBefore(
+                        expiredBefore.isBefore(bucketEnd) ? expiredBefore : bucketEnd)));
+    }
+
+    @NotNull
+    private List<StateAndRef<SalesProposal>> findSoldByMe(@NotNull final QueryCriteria criteria) {
+        final List<StateAndRef<SalesProposal>> found = new ArrayList<>();
+        // The expiration is filtered by the database, on its index. Whether we are the seller is checked on the
+        // results, because our keys, of all our accounts, are too many to be listed in the query.
+        int pageNumber = DEFAULT_PAGE_NUM;
+        long seen = 0;
+        long total;
+        boolean pageEmpty;
+        do {
+            final Vault.Page<SalesProposal> page = serviceHub.getVaultService().queryBy(
+                    SalesProposal.class, criteria, new PageSpecification(pageNumber, PAGE_SIZE), BY_STATE_REF);
+            total = page.getTotalStatesAvailable();
+            seen += page.getStates().size();
+            pageEmpty = page.getStates().isEmpty();
+            for (final StateAndRef<SalesProposal> it : page.getStates()) {
+                if (isMyKey(it.getState().getData().getSeller().getOwningKey())) found.add(it);
+            }
+            pageNumber++;
+            // The vault may change while we page through it.
+        } while (seen < total && !pageEmpty);
+        return found;
+    }
+
+    private boolean isMyKey(@NotNull final PublicKey key) {
+        return serviceHub.getKeyManagementService()
+                .filterMyKeys(Collections.singletonList(key))
+                .iterator()
+                .hasNext();
+    }
+
+}
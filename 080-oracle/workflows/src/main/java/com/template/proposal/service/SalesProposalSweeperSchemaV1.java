@@ -0,0 +1,82 @@
+package com.template.proposal.service;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.schemas.MappedSchema;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * The table in which {@link SalesProposalSweeper} keeps the buckets it has claimed, so that a restart neither sweeps
+ * a bucket twice nor forgets the proposals it had to skip.
+ */
+public class SalesProposalSweeperSchemaV1 extends MappedSchema {
+
+    public SalesProposalSweeperSchemaV1() {
+        super(SalesProposalSweeperSchema.class, 1, ImmutableList.of(ClaimedBucket.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "sales-proposal-sweeper.changelog-master";
+    }
+
+    /**
+     * The family of schemas, in case we need to evolve it.
+     */
+    public static class SalesProposalSweeperSchema {
+    }
+
+    /**
+     * One row per bucket claimed, kept while its sweep may still be running, or until the proposals it skipped have
+     * been retried.
+     */
+    @Entity
+    @Table(name = "sales_proposal_claimed_buckets",
+            indexes = @Index(name = "sales_proposal_claimed_skipped_idx", columnList = "skipped"))
+    public static class ClaimedBucket implements Serializable {
+
+        @Id
+        @Column(name = "bucket_end", nullable = false)
+        private Instant bucketEnd;
+        @Column(name = "claimed_at", nullable = false)
+        private Instant claimedAt;
+        /**
+         * The number of proposals that the sweep could not reject, because the host of their buyer was unknown.
+         */
+        @Column(name = "skipped", nullable = false)
+        private int skipped;
+
+        /**
+         * Required by Hibernate.
+         */
+        public ClaimedBucket() {
+        }
+
+        public ClaimedBucket(@NotNull final Instant bucketEnd, @NotNull final Instant claimedAt) {
+            this.bucketEnd = bucketEnd;
+            this.claimedAt = claimedAt;
+            this.skipped = 0;
+        }
+
+        public Instant getBucketEnd() {
+            return bucketEnd;
+        }
+
+        public Instant getClaimedAt() {
+            return claimedAt;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public void setSkipped(final int skipped) {
+            this.skipped = skipped;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.template.proposal.service;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.schemas.MappedSchema;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * The tables in which {@link SalesProposalService} keeps what it tracks, and what it has yet to send, so that it
+ * survives restarts without a rescan of the vault.
+ */
+public class SalesProposalTrackingSchemaV1 extends MappedSchema {
+
+    public SalesProposalTrackingSchemaV1() {
+        super(SalesProposalTrackingSchema.class, 1, ImmutableList.of(TrackedBuyer.class, PendingNotification.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "sales-proposal-tracking.changelog-master";
+    }
+
+    /**
+     * The family of schemas, in case we need to evolve it.
+     */
+    public static class SalesProposalTrackingSchema {
+    }
+
+    /**
+     * One row per SalesProposal, where we are the seller, whose asset is of an evolvable token type.
+     */
+    @Entity
+    @Table(name = "sales_proposal_tracked_buyers",
+            indexes = @Index(name = "sales_proposal_tracked_type_idx", columnList = "token_type_ref"))
+    public static class TrackedBuyer implements Serializable {
+
+        /**
+         * Generated so that buyers are listed in the order in which they were tracked.
+         */
+        @Id
+        @GeneratedValue
+        @Column(name = "id")
+        private Long id;
+        @Column(name = "proposal_id", nullable = false, unique = true)
+        private String proposalId;
+        /**
+         * The {@link net.corda.core.contracts.StateRef#toString()} of the current version of the token type.
+         */
+        @Column(name = "token_type_ref", nullable = false)
+        private String tokenTypeRef;
+        @Column(name = "buyer_key", nullable = false, length = 1024)
+        private byte[] buyerKey;
+
+        /**
+         * Required by Hibernate.
+         */
+        public TrackedBuyer() {
+        }
+
+        public TrackedBuyer(
+                @NotNull final String proposalId,
+                @NotNull final String tokenTypeRef,
+                @NotNull final byte[] buyerKey) {
+            this.proposalId = proposalId;
+            this.tokenTypeRef = tokenTypeRef;
+            this.buyerKey = buyerKey;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getProposalId() {
+            return proposalId;
+        }
+
+        public String getTokenTypeRef() {
+            return tokenTypeRef;
+        }
+
+        public byte[] getBuyerKey() {
+            return buyerKey;
+        }
+    }
+
+    /**
+     * One row per buyer that has yet to be informed of a new version of a token type. A row is deleted once the buyer
+     * has been informed, and marked as dead once we have given up.
+     */
+    @Entity
+    @Table(name = "sales_proposal_pending_notifications",
+            indexes = @Index(name = "sales_proposal_pending_due_idx", columnList = "dead, next_attempt_at"))
+    public static class PendingNotification implements Serializable {
+
+        @Id
+        @GeneratedValue
+        @Column(name = "id")
+        private Long id;
+        @Column(name = "token_type_id", nullable = false)
+        private String tokenTypeId;
+        /**
+         * The {@link net.corda.core.crypto.SecureHash#toString()} of the transaction to send.
+         */
+        @Column(name = "tx_hash", nullable = false)
+        private String txHash;
+        @Column(name = "buyer_key", nullable = false, length = 1024)
+        private byte[] buyerKey;
+        /**
+         * When the token type update was recorded.
+         */
+        @Column(name = "created_at", nullable = false)
+        private Instant createdAt;
+        @Column(name = "attempts", nullable = false)
+        private int attempts;
+        @Column(name = "next_attempt_at", nullable = false)
+        private Instant nextAttemptAt;
+        @Column(name = "dead", nullable = false)
+        private boolean dead;
+        @Column(name = "last_error", length = 1024)
+        private String lastError;
+
+        /**
+         * Required by Hibernate.
+         */
+        public PendingNotification() {
+        }
+
+        public PendingNotification(
+                @NotNull final String tokenTypeId,
+                @NotNull final String txHash,
+                @NotNull final byte[] buyerKey,
+                @NotNull final Instant nextAttemptAt) {
+            this.tokenTypeId = tokenTypeId;
+            this.txHash = txHash;
+            this.buyerKey = buyerKey;
+            this.createdAt = nextAttemptAt;
+            this.attempts = 0;
+            this.nextAttemptAt = nextAttemptAt;
+            this.dead = false;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getTokenTypeId() {
+            return tokenTypeId;
+        }
+
+        public String getTxHash() {
+            return txHash;
+        }
+
+        public byte[] getBuyerKey() {
+            return buyerKey;
+        }
+
+        public Instant getCreatedAt() {
+            return createdAt;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public Instant getNextAttemptAt() {
+            return nextAttemptAt;
+        }
+
+        public boolean isDead() {
+            return dead;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        /**
+         * @param error The reason of the failure, trimmed to fit the column.
+         * @param next  When to try again, or null to give up.
+         */
+        public void recordFailure(@NotNull final String error, @Nullable final Instant next) {
+            this.attempts++;
+            this.lastError = error.length() <= 1024 ? error : error.substring(0, 1024);
+            if (next == null) {
+                this.dead = true;
+            } else {
+                this.nextAttemptAt = next;
+            }
+        }
+
+        /**
+         * Puts a dead notification back in the queue, with a fresh count of attempts.
+         */
+        public void revive(@NotNull final Instant next) {
+            this.attempts = 0;
+            this.dead = false;
+            this.nextAttemptAt = next;
+        }
+    }
+}
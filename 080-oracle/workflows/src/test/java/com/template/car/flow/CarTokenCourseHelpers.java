@@ -8,10 +8,19 @@ import net.corda.testing.node.TestCordapp;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collections;
+import java.util.Map;
 
 public interface CarTokenCourseHelpers {
     @NotNull
     static MockNetworkParameters prepareMockNetworkParameters() {
+        return prepareMockNetworkParameters(Collections.emptyMap());
+    }
+
+    /**
+     * @param workflowsConfig The CorDapp configuration of this project's workflows.
+     */
+    @NotNull
+    static MockNetworkParameters prepareMockNetworkParameters(@NotNull final Map<String, Object> workflowsConfig) {
         return new MockNetworkParameters()
                 .withNotarySpecs(Collections.singletonList(new MockNetworkNotarySpec(CarTokenTypeConstants.NOTARY)))
                 .withCordappsForAllNodes(ImmutableList.of(
@@ -23,7 +32,7 @@ public interface CarTokenCourseHelpers {
                         TestCordapp.findCordapp("com.r3.corda.lib.accounts.workflows"),
                         TestCordapp.findCordapp("com.r3.corda.lib.ci.workflows"),
                         TestCordapp.findCordapp("com.template.car.state"),
-                        TestCordapp.findCordapp("com.template.car.flow"),
+                        TestCordapp.findCordapp("com.template.car.flow").withConfig(workflowsConfig),
                         TestCordapp.findCordapp("com.template.diligence.state"),
                         TestCordapp.findCordapp("com.template.diligence.flow")))
                 .withNetworkParameters(ParametersUtilitiesKt.testNetworkParameters(
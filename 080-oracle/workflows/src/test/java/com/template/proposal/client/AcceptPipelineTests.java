@@ -0,0 +1,140 @@
+package com.template.proposal.client;
+
+import com.template.proposal.flow.SalesProposalAcceptFlows.AcceptSimpleFlow;
+import kotlin.jvm.functions.Function1;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.StateMachineRunId;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandleImpl;
+import net.corda.core.transactions.SignedTransaction;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AcceptPipelineTests {
+
+    /**
+     * The return value of a started flow, which the test completes at will.
+     */
+    private static class StubFuture<V> extends CompletableFuture<V> implements CordaFuture<V> {
+        @Override
+        public <W> void then(@NotNull final Function1<? super CordaFuture<? extends V>, ? extends W> callback) {
+            whenComplete((value, error) -> callback.invoke(this));
+        }
+    }
+
+    /**
+     * The flows started, by proposal id.
+     */
+    private final Map<UniqueIdentifier, StubFuture<SignedTransaction>> started = new ConcurrentHashMap<>();
+    /**
+     * Counted down at each start.
+     */
+    private final List<CountDownLatch> starts = Arrays.asList(
+            new CountDownLatch(1), new CountDownLatch(2), new CountDownLatch(3));
+
+    @NotNull
+    private CordaRPCOps rpcOps() {
+        return (CordaRPCOps) Proxy.newProxyInstance(
+                CordaRPCOps.class.getClassLoader(),
+                new Class[]{CordaRPCOps.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("startFlowDynamic")) throw new UnsupportedOperationException();
+                    assertEquals(AcceptSimpleFlow.class, args[0]);
+                    final UniqueIdentifier proposalId = (UniqueIdentifier) ((Object[]) args[1])[0];
+                    if (proposalId.getExternalId() != null) throw new IllegalArgumentException("Cannot start");
+                    final StubFuture<SignedTransaction> future = new StubFuture<>();
+                    started.put(proposalId, future);
+                    starts.forEach(CountDownLatch::countDown);
+                    return new FlowHandleImpl<>(StateMachineRunId.Companion.createRandom(), future);
+                });
+    }
+
+    @Test
+    public void itKeepsAtMostMaxInFlightRunningAndReportsEachError() throws Exception {
+        final AcceptPipeline pipeline = new AcceptPipeline(rpcOps(), 2);
+        final List<UniqueIdentifier> ids = Arrays.asList(
+                new UniqueIdentifier(), new UniqueIdentifier(), new UniqueIdentifier());
+        final Map<UniqueIdentifier, Throwable> failed = new ConcurrentHashMap<>();
+        final CountDownLatch allDone = new CountDownLatch(ids.size());
+        final Thread submitter = new Thread(() -> {
+            try {
+                pipeline.submitAll(ids, new AcceptPipeline.Listener() {
+                    @Override
+                    public void onAccepted(@NotNull final UniqueIdentifier proposalId,
+                                           @NotNull final SignedTransaction tx) {
+                        allDone.countDown();
+                    }
+
+                    @Override
+                    public void onFailed(@NotNull final UniqueIdentifier proposalId, @NotNull final Throwable error) {
+                        failed.put(proposalId, error);
+                        allDone.countDown();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+
+        // The third one waits for a slot, which only a completion frees.
+        assertTrue(starts.get(1).await(5, TimeUnit.SECONDS));
+        assertEquals(2, started.size());
+        assertEquals(2, pipeline.getInFlight());
+
+        started.get(ids.get(0)).completeExceptionally(new FlowException("Proposal not found"));
+        assertTrue(starts.get(2).await(5, TimeUnit.SECONDS));
+        submitter.join(5_000);
+        assertFalse(submitter.isAlive());
+        assertEquals(3, started.size());
+
+        started.get(ids.get(1)).completeExceptionally(new FlowException("Insufficient balance"));
+        started.get(ids.get(2)).completeExceptionally(new FlowException("Notary error"));
+        assertTrue(allDone.await(5, TimeUnit.SECONDS));
+        pipeline.awaitIdle();
+        assertEquals(0, pipeline.getInFlight());
+        assertEquals(new HashSet<>(ids), failed.keySet());
+        assertEquals("Proposal not found", failed.get(ids.get(0)).getMessage());
+    }
+
+    @Test
+    public void aFailureToStartFreesTheSlot() throws Exception {
+        final AcceptPipeline pipeline = new AcceptPipeline(rpcOps(), 1);
+        try {
+            pipeline.submit(new UniqueIdentifier("cannot start")).get();
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals(0, pipeline.getInFlight());
+        final UniqueIdentifier proposalId = new UniqueIdentifier();
+        assertFalse(pipeline.submit(proposalId).isDone());
+        assertEquals(Collections.singleton(proposalId), started.keySet());
+    }
+
+    @Test
+    public void theSlotIsFreedOnlyOnceTheResultIsDelivered() throws Exception {
+        final AcceptPipeline pipeline = new AcceptPipeline(rpcOps(), 1);
+        final UniqueIdentifier proposalId = new UniqueIdentifier();
+        final List<Integer> inFlightWhenDelivered = new ArrayList<>();
+        pipeline.submit(proposalId).whenComplete((tx, error) -> inFlightWhenDelivered.add(pipeline.getInFlight()));
+
+        started.get(proposalId).completeExceptionally(new FlowException("Proposal not found"));
+        pipeline.awaitIdle();
+        assertEquals(Collections.singletonList(1), inFlightWhenDelivered);
+        assertEquals(0, pipeline.getInFlight());
+    }
+
+}
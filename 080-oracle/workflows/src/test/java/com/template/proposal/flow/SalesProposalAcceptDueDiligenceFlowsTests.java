@@ -1,5 +1,6 @@
 package com.template.proposal.flow;
 
+import co.paralleluniverse.fibers.Suspendable;
 import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
 import com.r3.corda.lib.accounts.workflows.flows.CreateAccount;
 import com.r3.corda.lib.accounts.workflows.flows.RequestKeyForAccount;
@@ -21,6 +22,7 @@ import com.template.car.flow.UsdTokenConstants;
 import com.template.car.state.CarTokenType;
 import com.template.diligence.flow.DiligenceOracle;
 import com.template.diligence.flow.DiligenceOracleInternalFlows;
+import com.template.diligence.flow.DueDiligenceOracleFlows.Certify;
 import com.template.diligence.flow.DueDiligenceOracleFlows.Prepare;
 import com.template.diligence.state.DiligenceOracleUtilities;
 import com.template.diligence.state.DueDiligence;
@@ -32,7 +34,9 @@ import net.corda.core.concurrent.CordaFuture;
 import net.corda.core.contracts.Amount;
 import net.corda.core.contracts.StateAndRef;
 import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.TransactionSignature;
 import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowSession;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.AnonymousParty;
 import net.corda.core.identity.CordaX500Name;
@@ -48,6 +52,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.security.PublicKey;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -56,6 +61,7 @@ import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class SalesProposalAcceptDueDiligenceFlowsTests {
     private final MockNetwork network;
@@ -302,6 +308,90 @@ public class SalesProposalAcceptDueDiligenceFlowsTests {
         assertEquals(11_000_00, sellersMoney);
     }
 
+    /**
+     * An oracle that takes its time, so that its signature only arrives once the buyer has synced with the seller.
+     */
+    public static class LateAnswer extends Certify.Answer {
+
+        public LateAnswer(@NotNull final FlowSession requesterSession) {
+            super(requesterSession);
+        }
+
+        @NotNull
+        @Suspendable
+        @Override
+        public TransactionSignature call() throws FlowException {
+            // Far longer than the seller sync takes on a mock network.
+            sleep(Duration.ofSeconds(2));
+            return super.call();
+        }
+    }
+
+    @Test
+    public void buyerCanAcceptWhenOracleAnswersAfterTheSellerSync() throws Throwable {
+        dmv.registerInitiatedFlow(Certify.SendRequest.class, LateAnswer.class);
+        // Seller is on alice.
+        final StateAndRef<AccountInfo> seller = createAccount(alice, "carly");
+        final AnonymousParty sellerParty = requestNewKey(alice, seller.getState().getData());
+        informKeys(alice, Collections.singletonList(sellerParty.getOwningKey()), Collections.singletonList(bmwDealer));
+        // Buyer is on bob.
+        final StateAndRef<AccountInfo> buyer = createAccount(bob, "dan");
+        final AnonymousParty buyerParty = requestNewKey(bob, buyer.getState().getData());
+        informKeys(bob, Collections.singletonList(buyerParty.getOwningKey()), Arrays.asList(alice, usMint));
+        // The car.
+        final StateAndRef<CarTokenType> bmwType = createNewBmw("abc124", "BMW",
+                Collections.singletonList(dealerParty))
+                .getCoreTransaction().outRefsOfType(CarTokenType.class).get(0);
+        final StateAndRef<NonFungibleToken> bmw1 = issueCarTo(
+                bmwType.getState().getData().toPointer(CarTokenType.class),
+                sellerParty)
+                .getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0);
+        // Seller makes an offer.
+        final OfferSimpleFlow offerFlow = new OfferSimpleFlow(
+                bmw1.getState().getData().getLinearId(), buyerParty, 11_000L, "USD",
+                usMintParty, 3600);
+        final CordaFuture<SignedTransaction> offerFuture = alice.startFlow(offerFlow);
+        network.runNetwork();
+        final StateAndRef<SalesProposal> proposal = offerFuture.get().getTx().outRef(0);
+        // Issue dollars to Buyer.
+        issueDollars(buyerParty, 20_000L);
+
+        // Buyer creates a DueDiligence
+        final Prepare.PrepareFlow flow = new Prepare.PrepareFlow(
+                Collections.singletonList(buyerParty), bmw1.getState().getData().getLinearId(),
+                notaryParty, oracleParty);
+        final CordaFuture<StateAndRef<DueDiligence>> prepareFuture = bob.startFlow(flow);
+        network.runNetwork();
+        final StateAndRef<DueDiligence> dueDil = prepareFuture.get();
+
+        // Oracle says clear.
+        setStatus(bmw1.getState().getData().getLinearId(), DiligenceOracleUtilities.Status.Clear);
+
+        // Buyer accepts.
+        final AcceptSimpleFlow acceptFlow = new AcceptSimpleFlow(
+                proposal.getState().getData().getLinearId(),
+                dueDil.getState().getData().getLinearId(),
+                DiligenceOracleUtilities.Status.Clear
+        );
+        final CordaFuture<SignedTransaction> acceptFuture = bob.startFlow(acceptFlow);
+        // The oracle wakes up on its own, so the network needs pumping until then.
+        final long deadline = System.currentTimeMillis() + 30_000L;
+        while (!acceptFuture.isDone() && System.currentTimeMillis() < deadline) {
+            network.runNetwork();
+            Thread.sleep(50L);
+        }
+        if (!acceptFuture.isDone()) fail("The accept flow did not complete");
+        final SignedTransaction acceptTx = acceptFuture.get();
+
+        // The late signature was picked up.
+        assertEquals(oracleParty.getOwningKey(), acceptTx.getSigs().get(3).getBy());
+        // Alice got the transaction.
+        final SignedTransaction savedTx = alice.getServices().getValidatedTransactions()
+                .getTransaction(acceptTx.getId());
+        //noinspection ConstantConditions
+        assertEquals(proposal.getRef(), savedTx.getTx().getInputs().get(0));
+    }
+
     @Test(expected = CordaRuntimeException.class)
     public void buyerCannotAcceptLinkedSalesProposalWithDueDiligenceExpectingClear() throws Throwable {
         // Seller is on alice.
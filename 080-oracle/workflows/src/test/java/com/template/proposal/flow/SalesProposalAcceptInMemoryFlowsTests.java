@@ -0,0 +1,228 @@
+package com.template.proposal.flow;
+
+import com.google.common.collect.ImmutableMap;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import com.r3.corda.lib.accounts.workflows.flows.CreateAccount;
+import com.r3.corda.lib.accounts.workflows.flows.RequestKeyForAccount;
+import com.r3.corda.lib.ci.workflows.SyncKeyMappingInitiator;
+import com.r3.corda.lib.tokens.contracts.states.FungibleToken;
+import com.r3.corda.lib.tokens.contracts.states.NonFungibleToken;
+import com.r3.corda.lib.tokens.contracts.types.IssuedTokenType;
+import com.r3.corda.lib.tokens.contracts.types.TokenPointer;
+import com.r3.corda.lib.tokens.contracts.utilities.AmountUtilitiesKt;
+import com.r3.corda.lib.tokens.money.FiatCurrency;
+import com.r3.corda.lib.tokens.selection.InsufficientBalanceException;
+import com.r3.corda.lib.tokens.workflows.flows.rpc.IssueTokens;
+import com.template.car.flow.CarTokenCourseHelpers;
+import com.template.car.flow.CarTokenTypeConstants;
+import com.template.car.flow.IssueCarToHolderFlows.IssueCarToHolderFlow;
+import com.template.car.flow.IssueCarTokenTypeFlows.IssueCarTokenTypeFlow;
+import com.template.car.flow.UsdTokenConstants;
+import com.template.car.state.CarTokenType;
+import com.template.proposal.flow.SalesProposalAcceptFlows.AcceptSimpleFlow;
+import com.template.proposal.flow.SalesProposalOfferFlows.OfferSimpleFlow;
+import com.template.proposal.service.CoinSelectionMetrics;
+import com.template.proposal.service.InMemoryTokenSelector;
+import com.template.proposal.state.SalesProposal;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.NotaryException;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNodeParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestClock;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link AcceptSimpleFlow} when the buyer's node has {@link InMemoryTokenSelector} enabled.
+ */
+public class SalesProposalAcceptInMemoryFlowsTests {
+    private final MockNetwork network;
+    private final StartedMockNode notary;
+    private final StartedMockNode usMint;
+    private final StartedMockNode dmv;
+    private final StartedMockNode bmwDealer;
+    private final StartedMockNode alice;
+    private final StartedMockNode bob;
+    private final IssuedTokenType usMintUsd;
+
+    public SalesProposalAcceptInMemoryFlowsTests() {
+        network = new MockNetwork(CarTokenCourseHelpers.prepareMockNetworkParameters(
+                ImmutableMap.<String, Object>of(InMemoryTokenSelector.ENABLED_KEY, true)));
+        notary = network.getDefaultNotaryNode();
+        usMint = network.createNode(new MockNodeParameters()
+                .withLegalName(UsdTokenConstants.US_MINT));
+        dmv = network.createNode(new MockNodeParameters()
+                .withLegalName(CarTokenTypeConstants.DMV));
+        bmwDealer = network.createNode(new MockNodeParameters()
+                .withLegalName(CarTokenTypeConstants.BMW_DEALER));
+        alice = network.createNode(new MockNodeParameters()
+                .withLegalName(CordaX500Name.parse("O=Alice, L=Istanbul, C=TR")));
+        bob = network.createNode(new MockNodeParameters()
+                .withLegalName(CordaX500Name.parse("O=Bob, L=Paris, C=FR")));
+        usMintUsd = new IssuedTokenType(usMint.getInfo().getLegalIdentities().get(0),
+                FiatCurrency.Companion.getInstance("USD"));
+    }
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @NotNull
+    private AnonymousParty createAccountKey(
+            @NotNull final StartedMockNode host,
+            @NotNull final String name) throws Exception {
+        final CordaFuture<StateAndRef<? extends AccountInfo>> accountFuture = host.startFlow(
+                new CreateAccount(name));
+        network.runNetwork();
+        final CordaFuture<AnonymousParty> keyFuture = host.startFlow(
+                new RequestKeyForAccount(accountFuture.get().getState().getData()));
+        network.runNetwork();
+        return keyFuture.get();
+    }
+
+    private void informKeys(
+            @NotNull final StartedMockNode host,
+            @NotNull final List<PublicKey> who,
+            @NotNull final List<StartedMockNode> others) throws Exception {
+        for (StartedMockNode other : others) {
+            final CordaFuture<?> future = host.startFlow(new SyncKeyMappingInitiator(
+                    other.getInfo().getLegalIdentities().get(0),
+                    who.stream()
+                            .distinct()
+                            .map(AnonymousParty::new)
+                            .collect(Collectors.toList())));
+            network.runNetwork();
+            future.get();
+        }
+    }
+
+    /**
+     * @return The proposal, from an account on alice, to buyer, which is on bob.
+     */
+    @NotNull
+    private StateAndRef<SalesProposal> offerBmwTo(
+            @NotNull final AnonymousParty buyer,
+            final long expirationSeconds) throws Exception {
+        final AnonymousParty seller = createAccountKey(alice, "carly");
+        informKeys(alice, Collections.singletonList(seller.getOwningKey()), Collections.singletonList(bmwDealer));
+        final CordaFuture<SignedTransaction> typeFuture = dmv.startFlow(new IssueCarTokenTypeFlow(
+                notary.getInfo().getLegalIdentities().get(0), "abc124", "BMW",
+                Collections.singletonList(bmwDealer.getInfo().getLegalIdentities().get(0))));
+        network.runNetwork();
+        final StateAndRef<CarTokenType> bmwType = typeFuture.get()
+                .getCoreTransaction().outRefsOfType(CarTokenType.class).get(0);
+        final TokenPointer<CarTokenType> bmwPointer = bmwType.getState().getData().toPointer(CarTokenType.class);
+        final CordaFuture<SignedTransaction> carFuture = bmwDealer.startFlow(new IssueCarToHolderFlow(
+                bmwPointer, bmwDealer.getInfo().getLegalIdentities().get(0), seller));
+        network.runNetwork();
+        final StateAndRef<NonFungibleToken> bmw1 = carFuture.get()
+                .getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0);
+        final CordaFuture<SignedTransaction> offerFuture = alice.startFlow(new OfferSimpleFlow(
+                bmw1.getState().getData().getLinearId(), buyer, 11_000L, "USD",
+                usMint.getInfo().getLegalIdentities().get(0), expirationSeconds));
+        network.runNetwork();
+        return offerFuture.get().getTx().outRef(0);
+    }
+
+    private void issueDollarsTo(@NotNull final AbstractParty holder, final long amount) throws Exception {
+        final CordaFuture<SignedTransaction> future = usMint.startFlow(new IssueTokens(
+                Collections.singletonList(new FungibleToken(
+                        AmountUtilitiesKt.amount(amount, usMintUsd), holder, null)),
+                Collections.emptyList()));
+        network.runNetwork();
+        future.get();
+    }
+
+    @NotNull
+    private SignedTransaction accept(@NotNull final StateAndRef<SalesProposal> proposal) throws Throwable {
+        final CordaFuture<SignedTransaction> future = bob.startFlow(
+                new AcceptSimpleFlow(proposal.getState().getData().getLinearId()));
+        network.runNetwork();
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void buyerPaysWithTheTokensSelectedInMemory() throws Throwable {
+        final AnonymousParty buyer = createAccountKey(bob, "dan");
+        informKeys(bob, Collections.singletonList(buyer.getOwningKey()), Arrays.asList(alice, usMint));
+        final StateAndRef<SalesProposal> proposal = offerBmwTo(buyer, 3600);
+        issueDollarsTo(buyer, 20_000L);
+        issueDollarsTo(buyer, 5_000L);
+        final InMemoryTokenSelector selector = bob.getServices().cordaService(InMemoryTokenSelector.class);
+        final CoinSelectionMetrics metrics = selector.getMetrics(selector.getStrategy());
+        assertEquals(25_000_00L, selector.getBalance(buyer, usMintUsd));
+        assertEquals(0L, metrics.getSelections());
+
+        final SignedTransaction acceptTx = accept(proposal);
+
+        // The in-memory selection was used, and it measured the transaction it produced.
+        assertEquals(1L, metrics.getSelections());
+        assertEquals(1L, metrics.getTransactionSizeCount());
+        final long paid = acceptTx.getTx().outputsOfType(FungibleToken.class).stream()
+                .filter(it -> it.getHolder().equals(proposal.getState().getData().getSeller()))
+                .mapToLong(it -> it.getAmount().getQuantity())
+                .sum();
+        assertEquals(11_000_00L, paid);
+        // The buckets followed the spent tokens and the change.
+        assertEquals(14_000_00L, selector.getBalance(buyer, usMintUsd));
+    }
+
+    @Test
+    public void tokensSelectedInMemoryStayLeasedWhenTheAcceptFails() throws Throwable {
+        final AnonymousParty buyer = createAccountKey(bob, "dan");
+        informKeys(bob, Collections.singletonList(buyer.getOwningKey()), Arrays.asList(alice, usMint));
+        final StateAndRef<SalesProposal> proposal = offerBmwTo(buyer, 10);
+        issueDollarsTo(buyer, 20_000L);
+        final InMemoryTokenSelector selector = bob.getServices().cordaService(InMemoryTokenSelector.class);
+
+        // Pass the expiration, so that the notary refuses the accept after the selection.
+        ((TestClock) notary.getServices().getClock()).advanceBy(Duration.ofSeconds(11));
+        try {
+            accept(proposal);
+            fail("The notary should have refused the expired accept");
+        } catch (NotaryException e) {
+            // Expected.
+        }
+
+        assertEquals(1L, selector.getMetrics(selector.getStrategy()).getSelections());
+        assertEquals(20_000_00L, selector.getBalance(buyer, usMintUsd));
+        // The token is still leased to the failed flow, so it cannot be selected under another lock id.
+        try {
+            selector.select(buyer, usMintUsd, 20_000_00L, UUID.randomUUID());
+            fail("The leased token should not have been selected");
+        } catch (InsufficientBalanceException e) {
+            // Expected.
+        }
+    }
+
+}
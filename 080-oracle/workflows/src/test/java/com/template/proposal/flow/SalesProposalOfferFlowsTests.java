@@ -16,9 +16,12 @@ import com.template.car.flow.IssueCarTokenTypeFlows.IssueCarTokenTypeFlow;
 import com.template.car.flow.UpdateCarTokenTypeFlows.UpdateCarTokenTypeFlow;
 import com.template.car.flow.UsdTokenConstants;
 import com.template.car.state.CarTokenType;
+import com.template.proposal.flow.SalesProposalOfferFlows.OfferBulkFlow;
 import com.template.proposal.flow.SalesProposalOfferFlows.OfferFlowInitiating;
+import com.template.proposal.flow.SalesProposalOfferFlows.OfferItem;
 import com.template.proposal.flow.SalesProposalOfferFlows.OfferSimpleFlow;
 import com.template.proposal.state.SalesProposal;
+import com.template.proposal.state.SalesProposalSchemaV1;
 import net.corda.core.concurrent.CordaFuture;
 import net.corda.core.contracts.Amount;
 import net.corda.core.contracts.StateAndRef;
@@ -26,6 +29,8 @@ import net.corda.core.flows.NotaryException;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.AnonymousParty;
 import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
 import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.testing.node.MockNetwork;
@@ -39,12 +44,14 @@ import org.junit.Test;
 import java.security.PublicKey;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -363,4 +370,110 @@ public class SalesProposalOfferFlowsTests {
             throw e.getCause();
         }
     }
+
+    @Test
+    public void accountCanDoManySalesProposalsInOneTransaction() throws Exception {
+        // Seller is on alice.
+        final StateAndRef<AccountInfo> seller = createAccount(alice, "carly");
+        final AnonymousParty sellerParty = requestNewKey(alice, seller.getState().getData());
+        informKeys(alice, Collections.singletonList(sellerParty.getOwningKey()), Collections.singletonList(bmwDealer));
+        // Buyers are on bob.
+        final StateAndRef<AccountInfo> buyer1 = createAccount(bob, "dan");
+        final AnonymousParty buyer1Party = requestNewKey(bob, buyer1.getState().getData());
+        final StateAndRef<AccountInfo> buyer2 = createAccount(bob, "emma");
+        final AnonymousParty buyer2Party = requestNewKey(bob, buyer2.getState().getData());
+        informKeys(bob, Arrays.asList(buyer1Party.getOwningKey(), buyer2Party.getOwningKey()),
+                Collections.singletonList(alice));
+        // The cars.
+        final StateAndRef<CarTokenType> bmwType = createNewBmw("abc124", "BMW",
+                Collections.singletonList(bmwDealer.getInfo().getLegalIdentities().get(0)))
+                .getCoreTransaction().outRefsOfType(CarTokenType.class).get(0);
+        final StateAndRef<NonFungibleToken> bmw1 = issueCarTo(
+                bmwType.getState().getData().toPointer(CarTokenType.class),
+                sellerParty)
+                .getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0);
+        final StateAndRef<NonFungibleToken> bmw2 = issueCarTo(
+                bmwType.getState().getData().toPointer(CarTokenType.class),
+                sellerParty)
+                .getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0);
+        final Instant expiration = Instant.now().plus(Duration.ofHours(1));
+
+        final OfferBulkFlow offerFlow = new OfferBulkFlow(Arrays.asList(
+                new OfferItem(bmw1, buyer1Party, AmountUtilitiesKt.amount(11_000L, usMintDollars), expiration),
+                new OfferItem(bmw2, buyer2Party, AmountUtilitiesKt.amount(12_000L, usMintDollars), expiration)));
+        final CordaFuture<SignedTransaction> offerFuture = alice.startFlow(offerFlow);
+        network.runNetwork();
+        final SignedTransaction offerTx = offerFuture.get();
+
+        // Bob got the single transaction.
+        final SignedTransaction savedTx = bob.getServices().getValidatedTransactions().getTransaction(offerTx.getId());
+        //noinspection ConstantConditions
+        assertTrue(savedTx.getInputs().isEmpty());
+        assertEquals(2, savedTx.getCoreTransaction().getOutputs().size());
+        assertTrue(savedTx.getReferences().containsAll(Arrays.asList(bmwType.getRef(), bmw1.getRef(), bmw2.getRef())));
+        final List<StateAndRef<SalesProposal>> foundProposals = bob.getServices().getVaultService()
+                .queryBy(SalesProposal.class)
+                .getStates();
+        assertEquals(2, foundProposals.size());
+        final List<AbstractParty> foundBuyers = foundProposals.stream()
+                .map(it -> it.getState().getData().getBuyer())
+                .collect(Collectors.toList());
+        assertTrue(foundBuyers.containsAll(Arrays.asList(buyer1Party, buyer2Party)));
+    }
+
+    @Test
+    public void salesProposalsCanBeListedInTheDatabase() throws Exception {
+        final StateAndRef<AccountInfo> seller = createAccount(alice, "carly");
+        final AnonymousParty sellerParty = requestNewKey(alice, seller.getState().getData());
+        informKeys(alice, Collections.singletonList(sellerParty.getOwningKey()), Collections.singletonList(bmwDealer));
+        final StateAndRef<AccountInfo> buyer1 = createAccount(bob, "dan");
+        final AnonymousParty buyer1Party = requestNewKey(bob, buyer1.getState().getData());
+        final StateAndRef<AccountInfo> buyer2 = createAccount(bob, "emma");
+        final AnonymousParty buyer2Party = requestNewKey(bob, buyer2.getState().getData());
+        informKeys(bob, Arrays.asList(buyer1Party.getOwningKey(), buyer2Party.getOwningKey()),
+                Collections.singletonList(alice));
+        final StateAndRef<CarTokenType> bmwType = createNewBmw("abc124", "BMW",
+                Collections.singletonList(bmwDealer.getInfo().getLegalIdentities().get(0)))
+                .getCoreTransaction().outRefsOfType(CarTokenType.class).get(0);
+        final List<StateAndRef<NonFungibleToken>> bmws = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            bmws.add(issueCarTo(bmwType.getState().getData().toPointer(CarTokenType.class), sellerParty)
+                    .getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0));
+        }
+        final Instant inOneHour = Instant.now().plus(Duration.ofHours(1));
+        final CordaFuture<SignedTransaction> offerFuture = alice.startFlow(new OfferBulkFlow(Arrays.asList(
+                new OfferItem(bmws.get(0), buyer1Party, AmountUtilitiesKt.amount(11_000L, usMintDollars),
+                        inOneHour),
+                new OfferItem(bmws.get(1), buyer1Party, AmountUtilitiesKt.amount(12_000L, usMintDollars),
+                        inOneHour.plus(Duration.ofHours(1))),
+                new OfferItem(bmws.get(2), buyer2Party, AmountUtilitiesKt.amount(13_000L, usMintDollars),
+                        inOneHour))));
+        network.runNetwork();
+        offerFuture.get();
+
+        final QueryCriteria buyer1Within90Minutes = SalesProposalSchemaV1.boughtBy(buyer1Party)
+                .and(SalesProposalSchemaV1.expiringBefore(inOneHour.plus(Duration.ofMinutes(30))));
+        final List<StateAndRef<SalesProposal>> found = bob.transaction(() -> bob.getServices().getVaultService()
+                .queryBy(SalesProposal.class, buyer1Within90Minutes)
+                .getStates());
+        assertEquals(1, found.size());
+        assertTrue(found.get(0).getState().getData().isSameAsset(bmws.get(0)));
+
+        final Vault.Page<SalesProposal> firstPage = alice.transaction(() -> alice.getServices().getVaultService()
+                .queryBy(SalesProposal.class,
+                        SalesProposalSchemaV1.soldBy(sellerParty)
+                                .and(SalesProposalSchemaV1.pricedIn(usMintDollars)),
+                        new PageSpecification(DEFAULT_PAGE_NUM, 2)));
+        assertEquals(3L, firstPage.getTotalStatesAvailable());
+        assertEquals(2, firstPage.getStates().size());
+
+        final List<StateAndRef<SalesProposal>> upTo12k = alice.transaction(() -> alice.getServices()
+                .getVaultService()
+                .queryBy(SalesProposal.class,
+                        SalesProposalSchemaV1.pricedAtMost(AmountUtilitiesKt.amount(12_000L, usMintDollars)))
+                .getStates());
+        assertEquals(2, upTo12k.size());
+        assertTrue(upTo12k.stream().noneMatch(it -> it.getState().getData().isSameAsset(bmws.get(2))));
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.template.proposal.flow;
 
+import com.google.common.collect.ImmutableMap;
 import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
 import com.r3.corda.lib.accounts.workflows.flows.CreateAccount;
 import com.r3.corda.lib.accounts.workflows.flows.RequestKeyForAccount;
@@ -13,10 +14,11 @@ import com.template.car.flow.IssueCarTokenTypeFlows.IssueCarTokenTypeFlow;
 import com.template.car.flow.UsdTokenConstants;
 import com.template.car.state.CarTokenType;
 import com.template.proposal.flow.SalesProposalOfferFlows.OfferSimpleFlow;
-import com.template.proposal.flow.SalesProposalRejectFlows.RejectSimpleFlow;
+import com.template.proposal.service.SalesProposalSweeper;
 import com.template.proposal.state.SalesProposal;
 import net.corda.core.concurrent.CordaFuture;
 import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.AnonymousParty;
 import net.corda.core.identity.CordaX500Name;
@@ -34,11 +36,12 @@ import org.junit.Test;
 
 import java.security.PublicKey;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
-import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class SalesProposalRejectFlowsSchedulableTests {
@@ -51,8 +54,9 @@ public class SalesProposalRejectFlowsSchedulableTests {
     private final StartedMockNode bob;
 
     public SalesProposalRejectFlowsSchedulableTests() {
-        network = new MockNetwork(CarTokenCourseHelpers.prepareMockNetworkParameters()
-                // To accommodate the schedulable events.
+        network = new MockNetwork(CarTokenCourseHelpers.prepareMockNetworkParameters(ImmutableMap.of(
+                SalesProposalSweeper.SWEEP_MILLIS_KEY, 100))
+                // So that the sweeper can start its flows.
                 .withThreadPerNode(true));
         notary = network.getDefaultNotaryNode();
         usMint = network.createNode(new MockNodeParameters()
@@ -136,11 +140,16 @@ public class SalesProposalRejectFlowsSchedulableTests {
         return future.get();
     }
 
-    @Test
-    public void salesProposalSchedulableFlowNameIsCorrect() {
-        assertEquals(
-                RejectSimpleFlow.class.getName(),
-                SalesProposal.SCHEDULED_FLOW);
+    /**
+     * The sweeper polls on its own thread, so the network may be quiet before it has seen the expiration.
+     */
+    private void waitForTheSweep(@NotNull final StartedMockNode seller) throws InterruptedException {
+        for (int attempt = 0; attempt < 100 && !seller.getServices().getVaultService()
+                .queryBy(SalesProposal.class).getStates().isEmpty(); attempt++) {
+            Thread.sleep(50);
+            network.waitQuiescent();
+        }
+        network.waitQuiescent();
     }
 
     @Test
@@ -172,8 +181,8 @@ public class SalesProposalRejectFlowsSchedulableTests {
         // Advance a lot to be sure the network has figured it out.
         ((TestClock) notary.getServices().getClock()).advanceBy(Duration.ofSeconds(2500));
         ((TestClock) alice.getServices().getClock()).advanceBy(Duration.ofSeconds(2500));
-        network.waitQuiescent(); // Pump the network.
-        // Seller rejects automatically with the scheduled activity.
+        waitForTheSweep(alice);
+        // Seller rejects automatically with the sweep of the bucket.
 
         // Bob cannot find the proposal by linear id.
         final List<StateAndRef<SalesProposal>> foundProposals = bob.getServices().getVaultService().queryBy(
@@ -183,4 +192,51 @@ public class SalesProposalRejectFlowsSchedulableTests {
                 .getStates();
         assertTrue(foundProposals.isEmpty());
     }
+
+    @Test
+    public void sellerSweepsExpiredProposalsOfABucketInOneTransaction() throws Exception {
+        // Seller is on alice.
+        final StateAndRef<AccountInfo> seller = createAccount(alice, "carly");
+        final AnonymousParty sellerParty = requestNewKey(alice, seller.getState().getData());
+        informKeys(alice, Collections.singletonList(sellerParty.getOwningKey()), Collections.singletonList(bmwDealer));
+        // Buyer is on bob.
+        final StateAndRef<AccountInfo> buyer = createAccount(bob, "dan");
+        final AnonymousParty buyerParty = requestNewKey(bob, buyer.getState().getData());
+        informKeys(bob, Collections.singletonList(buyerParty.getOwningKey()), Collections.singletonList(alice));
+        // The car.
+        final StateAndRef<CarTokenType> bmwType = createNewBmw("abc124", "BMW",
+                Collections.singletonList(bmwDealer.getInfo().getLegalIdentities().get(0)))
+                .getCoreTransaction().outRefsOfType(CarTokenType.class).get(0);
+        final StateAndRef<NonFungibleToken> bmw1 = issueCarTo(
+                bmwType.getState().getData().toPointer(CarTokenType.class),
+                sellerParty)
+                .getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0);
+        // Seller makes 2 offers that expire together.
+        final List<StateAndRef<SalesProposal>> proposals = new ArrayList<>();
+        for (final long price : Arrays.asList(11_000L, 12_000L)) {
+            final CordaFuture<SignedTransaction> offerFuture = alice.startFlow(new OfferSimpleFlow(
+                    bmw1.getState().getData().getLinearId(), buyerParty, price, "USD",
+                    usMint.getInfo().getLegalIdentities().get(0), 100));
+            network.waitQuiescent();
+            proposals.add(offerFuture.get().getTx().outRef(0));
+        }
+
+        ((TestClock) notary.getServices().getClock()).advanceBy(Duration.ofSeconds(2500));
+        ((TestClock) alice.getServices().getClock()).advanceBy(Duration.ofSeconds(2500));
+        waitForTheSweep(alice);
+
+        // Bob has no proposal left.
+        final List<StateAndRef<SalesProposal>> foundProposals = bob.getServices().getVaultService()
+                .queryBy(SalesProposal.class)
+                .getStates();
+        assertTrue(foundProposals.isEmpty());
+        // And both were rejected in the same transaction.
+        final List<StateRef> proposalRefs = proposals.stream()
+                .map(StateAndRef::getRef)
+                .collect(Collectors.toList());
+        final boolean rejectedTogether = bob.transaction(() -> bob.getServices().getValidatedTransactions()
+                .track().getSnapshot().stream()
+                .anyMatch(tx -> tx.getTx().getInputs().containsAll(proposalRefs)));
+        assertTrue(rejectedTogether);
+    }
 }
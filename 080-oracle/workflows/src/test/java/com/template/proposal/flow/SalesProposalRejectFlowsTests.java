@@ -13,6 +13,7 @@ import com.template.car.flow.IssueCarTokenTypeFlows.IssueCarTokenTypeFlow;
 import com.template.car.flow.UsdTokenConstants;
 import com.template.car.state.CarTokenType;
 import com.template.proposal.flow.SalesProposalOfferFlows.OfferSimpleFlow;
+import com.template.proposal.flow.SalesProposalRejectFlows.RejectBatchSimpleFlow;
 import com.template.proposal.flow.SalesProposalRejectFlows.RejectSimpleFlow;
 import com.template.proposal.state.SalesProposal;
 import net.corda.core.concurrent.CordaFuture;
@@ -35,6 +36,8 @@ import org.junit.Test;
 
 import java.security.PublicKey;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -186,6 +189,56 @@ public class SalesProposalRejectFlowsTests {
         assertTrue(foundProposals.isEmpty());
     }
 
+    @Test
+    public void buyerAccountCanRejectManySalesProposalsInOneTransaction() throws Exception {
+        // Seller is on alice.
+        final StateAndRef<AccountInfo> seller = createAccount(alice, "carly");
+        final AnonymousParty sellerParty = requestNewKey(alice, seller.getState().getData());
+        informKeys(alice, Collections.singletonList(sellerParty.getOwningKey()), Collections.singletonList(bmwDealer));
+        // Buyer is on bob.
+        final StateAndRef<AccountInfo> buyer = createAccount(bob, "dan");
+        final AnonymousParty buyerParty = requestNewKey(bob, buyer.getState().getData());
+        informKeys(bob, Collections.singletonList(buyerParty.getOwningKey()), Collections.singletonList(alice));
+        // The car.
+        final StateAndRef<CarTokenType> bmwType = createNewBmw("abc124", "BMW",
+                Collections.singletonList(bmwDealer.getInfo().getLegalIdentities().get(0)))
+                .getCoreTransaction().outRefsOfType(CarTokenType.class).get(0);
+        final StateAndRef<NonFungibleToken> bmw1 = issueCarTo(
+                bmwType.getState().getData().toPointer(CarTokenType.class),
+                sellerParty)
+                .getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0);
+        // Seller makes 2 offers.
+        final List<StateAndRef<SalesProposal>> proposals = new ArrayList<>();
+        for (final long price : Arrays.asList(11_000L, 12_000L)) {
+            final CordaFuture<SignedTransaction> offerFuture = alice.startFlow(new OfferSimpleFlow(
+                    bmw1.getState().getData().getLinearId(), buyerParty, price, "USD",
+                    usMint.getInfo().getLegalIdentities().get(0), 3600));
+            network.runNetwork();
+            proposals.add(offerFuture.get().getTx().outRef(0));
+        }
+
+        // Buyer rejects both.
+        final RejectBatchSimpleFlow rejectFlow = new RejectBatchSimpleFlow(proposals.stream()
+                .map(it -> it.getState().getData().getLinearId())
+                .collect(Collectors.toList()));
+        final CordaFuture<List<SignedTransaction>> rejectFuture = bob.startFlow(rejectFlow);
+        network.runNetwork();
+        final List<SignedTransaction> rejectTxs = rejectFuture.get();
+        assertEquals(1, rejectTxs.size());
+
+        // Alice got the transaction.
+        final SignedTransaction savedTx = alice.getServices().getValidatedTransactions()
+                .getTransaction(rejectTxs.get(0).getId());
+        //noinspection ConstantConditions
+        assertTrue(savedTx.getCoreTransaction().getOutputs().isEmpty());
+        assertEquals(
+                proposals.stream().map(StateAndRef::getRef).collect(Collectors.toList()),
+                savedTx.getTx().getInputs());
+
+        // Alice has no proposal left.
+        assertTrue(alice.getServices().getVaultService().queryBy(SalesProposal.class).getStates().isEmpty());
+    }
+
     @Test
     public void sellerAccountCanRejectSalesProposalAndInformBuyerAccount() throws Exception {
         // Seller is on alice.
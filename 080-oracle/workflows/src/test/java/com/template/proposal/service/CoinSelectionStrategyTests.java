@@ -0,0 +1,112 @@
+package com.template.proposal.service;
+
+import com.r3.corda.lib.tokens.contracts.FungibleTokenContract;
+import com.r3.corda.lib.tokens.contracts.states.FungibleToken;
+import com.r3.corda.lib.tokens.contracts.types.IssuedTokenType;
+import com.r3.corda.lib.tokens.money.FiatCurrency;
+import net.corda.core.contracts.Amount;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.testing.core.TestIdentity;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CoinSelectionStrategyTests {
+
+    private final Party notary = new TestIdentity(
+            new CordaX500Name("Notary", "Washington D.C.", "US")).getParty();
+    private final Party usMint = new TestIdentity(
+            new CordaX500Name("US Mint", "Washington D.C.", "US")).getParty();
+    private final Party bob = new TestIdentity(
+            new CordaX500Name("Bob", "Paris", "FR")).getParty();
+    private final IssuedTokenType usMintUsd = new IssuedTokenType(usMint, FiatCurrency.Companion.getInstance("USD"));
+
+    /**
+     * @return Tokens of these quantities, which have to be in decreasing order.
+     */
+    @NotNull
+    private List<StateAndRef<FungibleToken>> tokensOf(@NotNull final Long... quantities) {
+        return Arrays.stream(quantities)
+                .map(it -> new StateAndRef<>(
+                        new TransactionState<>(
+                                new FungibleToken(new Amount<>(it, usMintUsd), bob, null),
+                                FungibleTokenContract.Companion.getContractId(),
+                                notary),
+                        new StateRef(SecureHash.randomSHA256(), 0)))
+                .collect(Collectors.toList());
+    }
+
+    @NotNull
+    private static List<Long> quantitiesOf(@NotNull final List<StateAndRef<FungibleToken>> tokens) {
+        return tokens.stream()
+                .map(it -> it.getState().getData().getAmount().getQuantity())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void largestFirstTakesTheFewestGreedily() {
+        final List<StateAndRef<FungibleToken>> tokens = tokensOf(70L, 50L, 20L, 10L);
+        assertEquals(Arrays.asList(70L, 50L),
+                quantitiesOf(CoinSelectionStrategy.LARGEST_FIRST.select(tokens, 100L)));
+        assertNull(CoinSelectionStrategy.LARGEST_FIRST.select(tokens, 151L));
+    }
+
+    @Test
+    public void smallestSufficientTakesASingleToken() {
+        final List<StateAndRef<FungibleToken>> tokens = tokensOf(70L, 50L, 20L, 10L);
+        assertEquals(Collections.singletonList(50L),
+                quantitiesOf(CoinSelectionStrategy.SMALLEST_SUFFICIENT.select(tokens, 45L)));
+        // None is enough on its own.
+        assertEquals(Arrays.asList(70L, 50L),
+                quantitiesOf(CoinSelectionStrategy.SMALLEST_SUFFICIENT.select(tokens, 100L)));
+        assertNull(CoinSelectionStrategy.SMALLEST_SUFFICIENT.select(tokens, 151L));
+    }
+
+    @Test
+    public void branchAndBoundFindsAnExactMatch() {
+        final List<StateAndRef<FungibleToken>> tokens = tokensOf(70L, 50L, 20L, 10L);
+        assertEquals(Arrays.asList(70L, 10L),
+                quantitiesOf(CoinSelectionStrategy.BRANCH_AND_BOUND.select(tokens, 80L)));
+        // There is no exact match.
+        assertEquals(Arrays.asList(70L, 50L),
+                quantitiesOf(CoinSelectionStrategy.BRANCH_AND_BOUND.select(tokens, 115L)));
+        assertNull(CoinSelectionStrategy.BRANCH_AND_BOUND.select(tokens, 151L));
+    }
+
+    @Test
+    public void branchAndBoundGoesDeeperThanTheStackWouldAllow() {
+        final List<Long> ones = new ArrayList<>(60_000);
+        for (int i = 0; i < 60_000; i++) ones.add(1L);
+        final List<StateAndRef<FungibleToken>> tokens = tokensOf(ones.toArray(new Long[0]));
+        final List<StateAndRef<FungibleToken>> selected = CoinSelectionStrategy.BRANCH_AND_BOUND.select(
+                tokens, 50_000L);
+        //noinspection ConstantConditions
+        assertEquals(50_000, selected.size());
+    }
+
+    @Test
+    public void branchAndBoundGivesUpAfterTheMaxTries() {
+        final List<Long> twos = new ArrayList<>(50_000);
+        for (int i = 0; i < 50_000; i++) twos.add(2L);
+        final List<StateAndRef<FungibleToken>> tokens = tokensOf(twos.toArray(new Long[0]));
+        // An odd quantity cannot be matched exactly, so it falls back to the largest first.
+        final List<StateAndRef<FungibleToken>> selected = CoinSelectionStrategy.BRANCH_AND_BOUND.select(
+                tokens, 50_001L);
+        //noinspection ConstantConditions
+        assertEquals(25_001, selected.size());
+    }
+
+}
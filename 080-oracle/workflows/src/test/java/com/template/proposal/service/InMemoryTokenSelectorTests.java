@@ -0,0 +1,143 @@
+package com.template.proposal.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.r3.corda.lib.tokens.contracts.states.FungibleToken;
+import com.r3.corda.lib.tokens.contracts.types.IssuedTokenType;
+import com.r3.corda.lib.tokens.contracts.utilities.AmountUtilitiesKt;
+import com.r3.corda.lib.tokens.money.FiatCurrency;
+import com.r3.corda.lib.tokens.selection.InsufficientBalanceException;
+import com.r3.corda.lib.tokens.workflows.flows.rpc.IssueTokens;
+import com.template.car.flow.CarTokenCourseHelpers;
+import com.template.car.flow.UsdTokenConstants;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.NonEmptySet;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNodeParameters;
+import net.corda.testing.node.StartedMockNode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class InMemoryTokenSelectorTests {
+    private final MockNetwork network;
+    private final StartedMockNode usMint;
+    private final StartedMockNode bob;
+    private final Party bobParty;
+    private final IssuedTokenType usMintUsd;
+
+    public InMemoryTokenSelectorTests() {
+        network = new MockNetwork(CarTokenCourseHelpers.prepareMockNetworkParameters(
+                ImmutableMap.<String, Object>of(InMemoryTokenSelector.ENABLED_KEY, true)));
+        usMint = network.createNode(new MockNodeParameters()
+                .withLegalName(UsdTokenConstants.US_MINT));
+        bob = network.createNode();
+        bobParty = bob.getInfo().getLegalIdentities().get(0);
+        usMintUsd = new IssuedTokenType(usMint.getInfo().getLegalIdentities().get(0),
+                FiatCurrency.Companion.getInstance("USD"));
+    }
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @NotNull
+    private StateAndRef<FungibleToken> issueDollarsToBob(final long amount) throws Exception {
+        final CordaFuture<SignedTransaction> future = usMint.startFlow(new IssueTokens(
+                Collections.singletonList(new FungibleToken(
+                        AmountUtilitiesKt.amount(amount, usMintUsd), bobParty, null)),
+                Collections.emptyList()));
+        network.runNetwork();
+        return future.get().getCoreTransaction().outRefsOfType(FungibleToken.class).get(0);
+    }
+
+    /**
+     * @return The quantities selected, or null if insufficient.
+     */
+    @Nullable
+    private List<Long> selectOnBob(final long quantity, @NotNull final UUID lockId) {
+        final InMemoryTokenSelector selector = bob.getServices().cordaService(InMemoryTokenSelector.class);
+        try {
+            return quantitiesOf(selector.select(bobParty, usMintUsd, quantity, lockId));
+        } catch (InsufficientBalanceException e) {
+            return null;
+        }
+    }
+
+    @NotNull
+    private static List<Long> quantitiesOf(@NotNull final List<StateAndRef<FungibleToken>> tokens) {
+        return tokens.stream()
+                .map(it -> it.getState().getData().getAmount().getQuantity())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void leasedTokensAreNotSelectedAgainUntilReleased() throws Exception {
+        issueDollarsToBob(20L);
+        issueDollarsToBob(50L);
+        issueDollarsToBob(70L);
+        final InMemoryTokenSelector selector = bob.getServices().cordaService(InMemoryTokenSelector.class);
+        assertEquals(14_000L, selector.getBalance(bobParty, usMintUsd));
+
+        final UUID lockA = UUID.randomUUID();
+        assertEquals(Collections.singletonList(70_00L), selectOnBob(60_00L, lockA));
+        final UUID lockB = UUID.randomUUID();
+        assertEquals(Arrays.asList(50_00L, 20_00L), selectOnBob(60_00L, lockB));
+        assertNull(selectOnBob(1L, UUID.randomUUID()));
+
+        selector.release(lockA);
+        assertEquals(Collections.singletonList(70_00L), selectOnBob(60_00L, UUID.randomUUID()));
+
+        final CoinSelectionMetrics metrics = selector.getMetrics(selector.getStrategy());
+        assertEquals(3L, metrics.getSelections());
+        assertEquals(1L, metrics.getInsufficient());
+        assertEquals(2L, metrics.getInputCountMax());
+    }
+
+    @Test
+    public void tokensReservedForOthersAreNotSelected() throws Exception {
+        issueDollarsToBob(20L);
+        final StateAndRef<FungibleToken> seventy = issueDollarsToBob(70L);
+        final UUID reservation = UUID.randomUUID();
+        bob.transaction(() -> {
+            bob.getServices().getVaultService().softLockReserve(reservation, NonEmptySet.of(seventy.getRef()));
+            return null;
+        });
+        // As the reservation flow would.
+        bob.getServices().cordaService(PaymentReservationService.class)
+                .recordReserved(reservation, Collections.singletonList(seventy));
+
+        assertNull(selectOnBob(60_00L, UUID.randomUUID()));
+        assertEquals(Collections.singletonList(20_00L), selectOnBob(10_00L, UUID.randomUUID()));
+        // Unless they are soft-locked under our own lock id.
+        assertEquals(Collections.singletonList(70_00L), selectOnBob(60_00L, reservation));
+    }
+
+    @Test
+    public void itFollowsTheVault() throws Exception {
+        final InMemoryTokenSelector selector = bob.getServices().cordaService(InMemoryTokenSelector.class);
+        assertEquals(0L, selector.getBalance(bobParty, usMintUsd));
+        issueDollarsToBob(20L);
+        assertEquals(20_00L, selector.getBalance(bobParty, usMintUsd));
+    }
+
+}
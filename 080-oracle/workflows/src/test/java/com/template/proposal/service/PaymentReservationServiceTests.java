@@ -0,0 +1,263 @@
+package com.template.proposal.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.r3.corda.lib.tokens.contracts.states.FungibleToken;
+import com.r3.corda.lib.tokens.contracts.states.NonFungibleToken;
+import com.r3.corda.lib.tokens.contracts.types.IssuedTokenType;
+import com.r3.corda.lib.tokens.contracts.utilities.AmountUtilitiesKt;
+import com.r3.corda.lib.tokens.money.FiatCurrency;
+import com.r3.corda.lib.tokens.workflows.flows.rpc.IssueTokens;
+import com.template.car.flow.CarTokenCourseHelpers;
+import com.template.car.flow.CarTokenTypeConstants;
+import com.template.car.flow.IssueCarToHolderFlows.IssueCarToHolderFlow;
+import com.template.car.flow.IssueCarTokenTypeFlows.IssueCarTokenTypeFlow;
+import com.template.car.flow.UsdTokenConstants;
+import com.template.car.state.CarTokenType;
+import com.template.proposal.flow.SalesProposalAcceptFlows.AcceptSimpleFlow;
+import com.template.proposal.flow.SalesProposalOfferFlows.OfferSimpleFlow;
+import com.template.proposal.flow.SalesProposalRejectFlows.RejectSimpleFlow;
+import com.template.proposal.flow.SalesProposalSweepFlows.SweepFlow;
+import com.template.proposal.state.SalesProposal;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.NonEmptySet;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNodeParameters;
+import net.corda.testing.node.StartedMockNode;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PaymentReservationServiceTests {
+    private final MockNetwork network;
+    private final StartedMockNode notary;
+    private final StartedMockNode usMint;
+    private final StartedMockNode dmv;
+    private final StartedMockNode bmwDealer;
+    private final StartedMockNode alice;
+    private final StartedMockNode bob;
+    private final IssuedTokenType usMintUsd;
+
+    public PaymentReservationServiceTests() {
+        network = new MockNetwork(CarTokenCourseHelpers.prepareMockNetworkParameters(
+                ImmutableMap.<String, Object>of(PaymentReservationService.ENABLED_KEY, true)));
+        notary = network.getDefaultNotaryNode();
+        usMint = network.createNode(new MockNodeParameters()
+                .withLegalName(UsdTokenConstants.US_MINT));
+        dmv = network.createNode(new MockNodeParameters()
+                .withLegalName(CarTokenTypeConstants.DMV));
+        bmwDealer = network.createNode(new MockNodeParameters()
+                .withLegalName(CarTokenTypeConstants.BMW_DEALER));
+        alice = network.createNode(new MockNodeParameters()
+                .withLegalName(CordaX500Name.parse("O=Alice, L=Istanbul, C=TR")));
+        bob = network.createNode(new MockNodeParameters()
+                .withLegalName(CordaX500Name.parse("O=Bob, L=Paris, C=FR")));
+        usMintUsd = new IssuedTokenType(usMint.getInfo().getLegalIdentities().get(0),
+                FiatCurrency.Companion.getInstance("USD"));
+    }
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @NotNull
+    private StateAndRef<NonFungibleToken> issueBmwTo(@NotNull final Party holder) throws Exception {
+        final CordaFuture<SignedTransaction> typeFuture = dmv.startFlow(new IssueCarTokenTypeFlow(
+                notary.getInfo().getLegalIdentities().get(0), "abc124", "BMW",
+                Collections.singletonList(bmwDealer.getInfo().getLegalIdentities().get(0))));
+        network.runNetwork();
+        final CarTokenType bmwType = typeFuture.get().getCoreTransaction().outputsOfType(CarTokenType.class).get(0);
+        final CordaFuture<SignedTransaction> carFuture = bmwDealer.startFlow(new IssueCarToHolderFlow(
+                bmwType.toPointer(CarTokenType.class), bmwDealer.getInfo().getLegalIdentities().get(0), holder));
+        network.runNetwork();
+        return carFuture.get().getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0);
+    }
+
+    private void issueDollarsTo(@NotNull final Party holder, final long amount) throws Exception {
+        final CordaFuture<SignedTransaction> future = usMint.startFlow(new IssueTokens(
+                Collections.singletonList(new FungibleToken(
+                        AmountUtilitiesKt.amount(amount, usMintUsd), holder, null)),
+                Collections.emptyList()));
+        network.runNetwork();
+        future.get();
+    }
+
+    @NotNull
+    private List<StateRef> reservedOnBob(@NotNull final SalesProposal proposal) {
+        final PaymentReservationService reservations = bob.getServices()
+                .cordaService(PaymentReservationService.class);
+        return bob.transaction(() -> reservations.findReserved(proposal).stream()
+                .map(StateAndRef::getRef)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * @return What is still soft-locked for the proposal, whether or not it is enough to pay.
+     */
+    @NotNull
+    private List<StateRef> lockedOnBob(@NotNull final SalesProposal proposal) {
+        final QueryCriteria lockedCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                .withSoftLockingCondition(new QueryCriteria.SoftLockingCondition(
+                        QueryCriteria.SoftLockingType.SPECIFIED,
+                        Collections.singletonList(proposal.getLinearId().getId())));
+        return bob.transaction(() -> bob.getServices().getVaultService()
+                .queryBy(FungibleToken.class, lockedCriteria)
+                .getStates()
+                .stream()
+                .map(StateAndRef::getRef)
+                .collect(Collectors.toList()));
+    }
+
+    @NotNull
+    private SalesProposal offerBmwToBob(final long validForSeconds) throws Exception {
+        final StateAndRef<NonFungibleToken> bmw1 = issueBmwTo(alice.getInfo().getLegalIdentities().get(0));
+        final CordaFuture<SignedTransaction> offerFuture = alice.startFlow(new OfferSimpleFlow(
+                bmw1.getState().getData().getLinearId(), bob.getInfo().getLegalIdentities().get(0), 11_000L, "USD",
+                usMint.getInfo().getLegalIdentities().get(0), validForSeconds));
+        network.runNetwork();
+        return (SalesProposal) offerFuture.get().getTx().getOutput(0);
+    }
+
+    @NotNull
+    private List<StateRef> awaitReservedOnBob(@NotNull final SalesProposal proposal) throws InterruptedException {
+        // The reservation flow is started off the vault update thread.
+        for (int attempt = 0; attempt < 100; attempt++) {
+            network.runNetwork();
+            final List<StateRef> reserved = reservedOnBob(proposal);
+            if (!reserved.isEmpty()) return reserved;
+            Thread.sleep(50);
+        }
+        return Collections.emptyList();
+    }
+
+    @Test
+    public void buyerReservesOnOfferAndPaysWithTheReservedTokens() throws Exception {
+        final Party aliceParty = alice.getInfo().getLegalIdentities().get(0);
+        final Party bobParty = bob.getInfo().getLegalIdentities().get(0);
+        final StateAndRef<NonFungibleToken> bmw1 = issueBmwTo(aliceParty);
+        issueDollarsTo(bobParty, 6_000L);
+        issueDollarsTo(bobParty, 7_000L);
+
+        final CordaFuture<SignedTransaction> offerFuture = alice.startFlow(new OfferSimpleFlow(
+                bmw1.getState().getData().getLinearId(), bobParty, 11_000L, "USD",
+                usMint.getInfo().getLegalIdentities().get(0), 3600));
+        network.runNetwork();
+        final SalesProposal proposal = (SalesProposal) offerFuture.get().getTx().getOutput(0);
+
+        final List<StateRef> reserved = awaitReservedOnBob(proposal);
+        assertEquals(2, reserved.size());
+
+        final CordaFuture<SignedTransaction> acceptFuture = bob.startFlow(
+                new AcceptSimpleFlow(proposal.getLinearId()));
+        network.runNetwork();
+        final SignedTransaction acceptTx = acceptFuture.get();
+
+        assertTrue(acceptTx.getInputs().containsAll(reserved));
+        final long sellersMoney = acceptTx.getTx().outputsOfType(FungibleToken.class).stream()
+                .filter(it -> it.getHolder().equals(aliceParty))
+                .mapToLong(it -> it.getAmount().getQuantity())
+                .sum();
+        assertEquals(11_000_00L, sellersMoney);
+        // The proposal is gone, and so is the reservation.
+        assertTrue(reservedOnBob(proposal).isEmpty());
+    }
+
+    @Test
+    public void reservationIsReleasedWhenTheBuyerRejects() throws Exception {
+        final Party bobParty = bob.getInfo().getLegalIdentities().get(0);
+        issueDollarsTo(bobParty, 6_000L);
+        issueDollarsTo(bobParty, 7_000L);
+        final SalesProposal proposal = offerBmwToBob(3600);
+        final List<StateRef> reserved = awaitReservedOnBob(proposal);
+        assertEquals(2, reserved.size());
+        final PaymentReservationService reservations = bob.getServices()
+                .cordaService(PaymentReservationService.class);
+        assertEquals(proposal.getLinearId().getId(), reservations.getReservedFor(reserved.get(0)));
+
+        final CordaFuture<SignedTransaction> rejectFuture = bob.startFlow(
+                new RejectSimpleFlow(proposal.getLinearId(), bobParty));
+        network.runNetwork();
+        rejectFuture.get();
+
+        assertTrue(lockedOnBob(proposal).isEmpty());
+        assertNull(reservations.getReservedFor(reserved.get(0)));
+    }
+
+    @Test
+    public void reservationIsReleasedWhenTheProposalIsSweptAfterExpiry() throws Exception {
+        final Party bobParty = bob.getInfo().getLegalIdentities().get(0);
+        issueDollarsTo(bobParty, 6_000L);
+        issueDollarsTo(bobParty, 7_000L);
+        final SalesProposal proposal = offerBmwToBob(5);
+        assertEquals(2, awaitReservedOnBob(proposal).size());
+
+        // The sweep only picks up what expired more than a second ago.
+        final long untilSweepable = Duration.between(Instant.now(), proposal.getExpirationDate())
+                .plusSeconds(2).toMillis();
+        if (0 < untilSweepable) Thread.sleep(untilSweepable);
+        final CordaFuture<Integer> sweepFuture = alice.startFlow(
+                new SweepFlow(SalesProposal.getExpiryBucketEnd(proposal.getExpirationDate())));
+        network.runNetwork();
+        assertEquals(1, sweepFuture.get().intValue());
+
+        assertTrue(lockedOnBob(proposal).isEmpty());
+    }
+
+    @Test
+    public void acceptSelectsTokensWhenTheReservationIsNotEnough() throws Exception {
+        final Party aliceParty = alice.getInfo().getLegalIdentities().get(0);
+        final Party bobParty = bob.getInfo().getLegalIdentities().get(0);
+        issueDollarsTo(bobParty, 6_000L);
+        issueDollarsTo(bobParty, 7_000L);
+        final SalesProposal proposal = offerBmwToBob(3600);
+        final List<StateRef> reserved = awaitReservedOnBob(proposal);
+        assertEquals(2, reserved.size());
+
+        // Part of the reservation is lost, so what is left no longer covers the price.
+        bob.transaction(() -> {
+            bob.getServices().getVaultService().softLockRelease(
+                    proposal.getLinearId().getId(), NonEmptySet.of(reserved.get(0)));
+            return null;
+        });
+        assertEquals(1, lockedOnBob(proposal).size());
+        assertTrue(reservedOnBob(proposal).isEmpty());
+
+        final CordaFuture<SignedTransaction> acceptFuture = bob.startFlow(
+                new AcceptSimpleFlow(proposal.getLinearId()));
+        network.runNetwork();
+        final SignedTransaction acceptTx = acceptFuture.get();
+
+        // The selection, under the proposal's lock, can use both the released token and the one still reserved.
+        assertTrue(acceptTx.getInputs().containsAll(reserved));
+        final long sellersMoney = acceptTx.getTx().outputsOfType(FungibleToken.class).stream()
+                .filter(it -> it.getHolder().equals(aliceParty))
+                .mapToLong(it -> it.getAmount().getQuantity())
+                .sum();
+        assertEquals(11_000_00L, sellersMoney);
+        assertTrue(lockedOnBob(proposal).isEmpty());
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.template.proposal.service;
+
+import com.r3.corda.lib.tokens.contracts.states.NonFungibleToken;
+import com.template.car.flow.CarTokenCourseHelpers;
+import com.template.car.flow.CarTokenTypeConstants;
+import com.template.car.flow.IssueCarToHolderFlows;
+import com.template.car.flow.IssueCarTokenTypeFlows;
+import com.template.car.flow.UpdateCarTokenTypeFlows;
+import com.template.car.state.CarTokenType;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.LinearPointer;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StaticPointer;
+import net.corda.core.contracts.TransactionResolutionException;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNodeParameters;
+import net.corda.testing.node.StartedMockNode;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PointerResolutionCacheTests {
+    private final MockNetwork network;
+    private final StartedMockNode notary;
+    private final StartedMockNode dmv;
+    private final StartedMockNode bmwDealer;
+    private final StartedMockNode alice;
+
+    public PointerResolutionCacheTests() {
+        network = new MockNetwork(CarTokenCourseHelpers.prepareMockNetworkParameters());
+        notary = network.getDefaultNotaryNode();
+        dmv = network.createNode(new MockNodeParameters()
+                .withLegalName(CarTokenTypeConstants.DMV));
+        bmwDealer = network.createNode(new MockNodeParameters()
+                .withLegalName(CarTokenTypeConstants.BMW_DEALER));
+        alice = network.createNode(new MockNodeParameters()
+                .withLegalName(CordaX500Name.parse("O=Alice, L=Istanbul, C=TR")));
+    }
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @NotNull
+    private StateAndRef<CarTokenType> createNewBmw(@NotNull final List<Party> observers) throws Exception {
+        final CordaFuture<SignedTransaction> future = dmv.startFlow(new IssueCarTokenTypeFlows.IssueCarTokenTypeFlow(
+                notary.getInfo().getLegalIdentities().get(0), "abc124", "BMW", observers));
+        network.runNetwork();
+        return future.get().getCoreTransaction().outRefsOfType(CarTokenType.class).get(0);
+    }
+
+    @NotNull
+    private StateAndRef<NonFungibleToken> resolveOnAlice(
+            @NotNull final PointerResolutionCache cache,
+            @NotNull final StaticPointer<NonFungibleToken> pointer) {
+        return alice.transaction(() -> {
+            try {
+                return cache.resolve(pointer);
+            } catch (TransactionResolutionException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Test
+    public void staticPointerIsResolvedOnce() throws Exception {
+        final StateAndRef<CarTokenType> bmwType = createNewBmw(Arrays.asList(
+                bmwDealer.getInfo().getLegalIdentities().get(0),
+                alice.getInfo().getLegalIdentities().get(0)));
+        final CordaFuture<SignedTransaction> future = bmwDealer.startFlow(new IssueCarToHolderFlows.IssueCarToHolderFlow(
+                bmwType.getState().getData().toPointer(CarTokenType.class),
+                bmwDealer.getInfo().getLegalIdentities().get(0),
+                alice.getInfo().getLegalIdentities().get(0)));
+        network.runNetwork();
+        final StateAndRef<NonFungibleToken> bmw1 = future.get()
+                .getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0);
+        final StaticPointer<NonFungibleToken> pointer = new StaticPointer<>(bmw1.getRef(), NonFungibleToken.class);
+        final PointerResolutionCache cache = alice.getServices().cordaService(PointerResolutionCache.class);
+
+        final long missesBefore = cache.getStaticMissCount();
+        final long hitsBefore = cache.getStaticHitCount();
+        assertEquals(bmw1, resolveOnAlice(cache, pointer));
+        assertEquals(bmw1, resolveOnAlice(cache, pointer));
+
+        assertEquals(missesBefore + 1, cache.getStaticMissCount());
+        assertEquals(hitsBefore + 1, cache.getStaticHitCount());
+    }
+
+    @Test
+    public void linearPointerIsEvictedWhenConsumed() throws Exception {
+        final StateAndRef<CarTokenType> bmwType = createNewBmw(
+                Collections.singletonList(alice.getInfo().getLegalIdentities().get(0)));
+        final LinearPointer<CarTokenType> pointer = new LinearPointer<>(
+                bmwType.getState().getData().getLinearId(), CarTokenType.class);
+        final PointerResolutionCache cache = alice.getServices().cordaService(PointerResolutionCache.class);
+
+        assertEquals(bmwType, alice.transaction(() -> cache.resolve(pointer)));
+        final long hitsBefore = cache.getLinearHitCount();
+        assertEquals(bmwType, alice.transaction(() -> cache.resolve(pointer)));
+        assertEquals(hitsBefore + 1, cache.getLinearHitCount());
+
+        final CordaFuture<SignedTransaction> future = dmv.startFlow(new UpdateCarTokenTypeFlows.UpdateCarTokenTypeFlow(
+                bmwType, 8_000L, 22_000L, Collections.singletonList(alice.getInfo().getLegalIdentities().get(0))));
+        network.runNetwork();
+        final StateAndRef<CarTokenType> newBmwType = future.get().getCoreTransaction().outRef(0);
+
+        final long missesBefore = cache.getLinearMissCount();
+        assertEquals(newBmwType, alice.transaction(() -> cache.resolve(pointer)));
+        assertEquals(missesBefore + 1, cache.getLinearMissCount());
+    }
+
+    @Test
+    public void hitRatioIsPublishedOverJmx() throws Exception {
+        final StateAndRef<CarTokenType> bmwType = createNewBmw(
+                Collections.singletonList(alice.getInfo().getLegalIdentities().get(0)));
+        final LinearPointer<CarTokenType> pointer = new LinearPointer<>(
+                bmwType.getState().getData().getLinearId(), CarTokenType.class);
+        final PointerResolutionCache cache = alice.getServices().cordaService(PointerResolutionCache.class);
+        alice.transaction(() -> cache.resolve(pointer));
+        alice.transaction(() -> cache.resolve(pointer));
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = cache.getMetrics().getObjectName();
+        assertTrue(server.isRegistered(name));
+        assertEquals(cache.getLinearHitCount(), server.getAttribute(name, "LinearHitCount"));
+        assertEquals(cache.getHitRatio(), (double) server.getAttribute(name, "HitRatio"), 0.0);
+        assertTrue(0.0 < cache.getHitRatio());
+    }
+
+}
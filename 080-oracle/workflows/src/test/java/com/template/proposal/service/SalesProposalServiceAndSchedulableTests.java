@@ -1,5 +1,6 @@
 package com.template.proposal.service;
 
+import com.google.common.collect.ImmutableMap;
 import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
 import com.r3.corda.lib.accounts.workflows.flows.CreateAccount;
 import com.r3.corda.lib.accounts.workflows.flows.RequestKeyForAccount;
@@ -9,6 +10,7 @@ import com.r3.corda.lib.tokens.contracts.types.TokenPointer;
 import com.template.car.flow.*;
 import com.template.car.state.CarTokenType;
 import com.template.proposal.flow.SalesProposalOfferFlows.OfferSimpleFlow;
+import com.template.proposal.state.SalesProposal;
 import net.corda.core.concurrent.CordaFuture;
 import net.corda.core.contracts.StateAndRef;
 import net.corda.core.identity.AbstractParty;
@@ -44,7 +46,8 @@ public class SalesProposalServiceAndSchedulableTests {
     private final StartedMockNode bob;
 
     public SalesProposalServiceAndSchedulableTests() {
-        network = new MockNetwork(CarTokenCourseHelpers.prepareMockNetworkParameters()
+        network = new MockNetwork(CarTokenCourseHelpers.prepareMockNetworkParameters(ImmutableMap.of(
+                SalesProposalSweeper.SWEEP_MILLIS_KEY, 100))
                 .withThreadPerNode(true));
         notary = network.getDefaultNotaryNode();
         usMint = network.createNode(new MockNodeParameters()
@@ -128,6 +131,18 @@ public class SalesProposalServiceAndSchedulableTests {
         return future.get();
     }
 
+    /**
+     * The sweeper polls on its own thread, so the network may be quiet before it has seen the expiration.
+     */
+    private void waitForTheSweep(@NotNull final StartedMockNode seller) throws InterruptedException {
+        for (int attempt = 0; attempt < 100 && !seller.getServices().getVaultService()
+                .queryBy(SalesProposal.class).getStates().isEmpty(); attempt++) {
+            Thread.sleep(50);
+            network.waitQuiescent();
+        }
+        network.waitQuiescent();
+    }
+
     @Test
     public void whenSellerAutoRejectsTrackerRemoves() throws Exception {
         // Seller is on alice.
@@ -160,8 +175,8 @@ public class SalesProposalServiceAndSchedulableTests {
 
         ((TestClock) notary.getServices().getClock()).advanceBy(Duration.ofSeconds(200));
         ((TestClock) alice.getServices().getClock()).advanceBy(Duration.ofSeconds(200));
-        // Wait for the scheduled event to trigger a reject.
-        network.waitQuiescent();
+        // Wait for the sweeper to trigger a reject.
+        waitForTheSweep(alice);
 
         // No one is tracking.
         Arrays.asList(dmv, bmwDealer, alice, bob).forEach(node -> {
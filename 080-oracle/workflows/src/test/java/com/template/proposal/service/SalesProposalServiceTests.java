@@ -1,5 +1,6 @@
 package com.template.proposal.service;
 
+import com.google.common.collect.ImmutableMap;
 import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
 import com.r3.corda.lib.accounts.workflows.flows.CreateAccount;
 import com.r3.corda.lib.accounts.workflows.flows.RequestKeyForAccount;
@@ -14,6 +15,7 @@ import com.r3.corda.lib.tokens.money.FiatCurrency;
 import com.r3.corda.lib.tokens.workflows.flows.rpc.IssueTokens;
 import com.template.car.flow.*;
 import com.template.car.state.CarTokenType;
+import com.template.proposal.flow.InformTokenBuyerFlows;
 import com.template.proposal.flow.SalesProposalAcceptFlows.AcceptSimpleFlow;
 import com.template.proposal.flow.SalesProposalOfferFlows.OfferSimpleFlow;
 import com.template.proposal.flow.SalesProposalRejectFlows.RejectSimpleFlow;
@@ -35,6 +37,9 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.security.PublicKey;
 import java.util.Arrays;
 import java.util.Collections;
@@ -55,7 +60,13 @@ public class SalesProposalServiceTests {
     private final IssuedTokenType usMintUsd;
 
     public SalesProposalServiceTests() {
-        network = new MockNetwork(CarTokenCourseHelpers.prepareMockNetworkParameters());
+        // Short delays so that an unreachable buyer is given up on, and revived, within a test.
+        network = new MockNetwork(CarTokenCourseHelpers.prepareMockNetworkParameters(ImmutableMap.of(
+                SalesProposalService.DELIVERY_TIMEOUT_MILLIS_KEY, 2_000L,
+                SalesProposalService.MAX_ATTEMPTS_KEY, 2,
+                SalesProposalService.RETRY_BASE_MILLIS_KEY, 100L,
+                SalesProposalService.RETRY_MAX_MILLIS_KEY, 200L,
+                SalesProposalService.POLL_MILLIS_KEY, 100L)));
         notary = network.getDefaultNotaryNode();
         usMint = network.createNode(new MockNodeParameters()
                 .withLegalName(UsdTokenConstants.US_MINT));
@@ -152,7 +163,68 @@ public class SalesProposalServiceTests {
         final UpdateCarTokenTypeFlows.UpdateCarTokenTypeFlow flow = new UpdateCarTokenTypeFlows.UpdateCarTokenTypeFlow(carRef, mileage, price, observers);
         final CordaFuture<SignedTransaction> future = dmv.startFlow(flow);
         network.runNetwork();
-        return future.get();
+        final SignedTransaction tx = future.get();
+        awaitNotifications();
+        return tx;
+    }
+
+    /**
+     * The notifications are started from the services' own threads, so the network needs pumping until they are done.
+     */
+    private void awaitNotifications() throws InterruptedException {
+        final List<SalesProposalService> services = Arrays.asList(dmv, bmwDealer, alice, bob, carly).stream()
+                .map(node -> node.getServices().cordaService(SalesProposalService.class))
+                .collect(Collectors.toList());
+        final long deadline = System.currentTimeMillis() + 10_000L;
+        while (System.currentTimeMillis() < deadline) {
+            network.runNetwork();
+            final boolean idle = services.stream().allMatch(it -> it.getPendingNotificationCount() == 0L
+                    && it.getNotificationQueueDepth() == 0
+                    && it.getNotificationActiveCount() == 0);
+            if (idle) return;
+            Thread.sleep(50L);
+        }
+        fail("Notifications are still pending");
+    }
+
+    @Test
+    public void backoffGrowsAndIsCapped() {
+        for (int attempts = 1; attempts <= 5; attempts++) {
+            final long delay = SalesProposalService.backoffMillis(attempts, 1_000L, 60_000L);
+            final long expected = 1_000L << (attempts - 1);
+            assertTrue(expected / 2 <= delay);
+            assertTrue(delay <= expected);
+        }
+        final long capped = SalesProposalService.backoffMillis(100, 1_000L, 60_000L);
+        assertTrue(30_000L <= capped);
+        assertTrue(capped <= 60_000L);
+    }
+
+    @Test
+    public void notifierStartsIdle() {
+        Arrays.asList(dmv, bmwDealer, alice, bob).forEach(node -> {
+            final SalesProposalService proposalService = node.getServices().cordaService(SalesProposalService.class);
+            assertEquals(0, proposalService.getNotificationQueueDepth());
+            assertEquals(0, proposalService.getNotificationActiveCount());
+            assertEquals(0L, proposalService.getNotificationDroppedCount());
+            assertEquals(0L, proposalService.getMetrics().getNotificationLatencyMax());
+            assertEquals(0L, proposalService.getPendingNotificationCount());
+            assertTrue(proposalService.getDeadNotifications().isEmpty());
+        });
+    }
+
+    @Test
+    public void metricsArePublishedOverJmx() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (final StartedMockNode node : Arrays.asList(dmv, bmwDealer, alice, bob)) {
+            final ObjectName name = node.getServices().cordaService(SalesProposalService.class)
+                    .getMetrics().getObjectName();
+            assertTrue(server.isRegistered(name));
+            assertEquals(0L, server.getAttribute(name, "NotificationsStarted"));
+            assertEquals(0, server.getAttribute(name, "TrackedTokenTypes"));
+            assertEquals(0, server.getAttribute(name, "NotificationActiveCount"));
+            assertEquals(0L, server.getAttribute(name, "NotificationDroppedCount"));
+        }
     }
 
     @Test
@@ -228,6 +300,61 @@ public class SalesProposalServiceTests {
         assertEquals(buyerParty, buyers.get(0));
     }
 
+    @Test
+    public void openProposalsAreTrackedWhenTheTableIsEmpty() throws Exception {
+        // Seller is on alice.
+        final StateAndRef<AccountInfo> seller = createAccount(alice, "carly");
+        final AnonymousParty sellerParty = requestNewKey(alice, seller.getState().getData());
+        informKeys(alice, Collections.singletonList(sellerParty.getOwningKey()), Collections.singletonList(bmwDealer));
+        // Buyer is on bob.
+        final StateAndRef<AccountInfo> buyer = createAccount(bob, "dan");
+        final AnonymousParty buyerParty = requestNewKey(bob, buyer.getState().getData());
+        informKeys(bob, Collections.singletonList(buyerParty.getOwningKey()), Collections.singletonList(alice));
+        // The car.
+        final StateAndRef<CarTokenType> bmwType = createNewBmw("abc124", "BMW",
+                Arrays.asList(
+                        bmwDealer.getInfo().getLegalIdentities().get(0),
+                        alice.getInfo().getLegalIdentities().get(0),
+                        bob.getInfo().getLegalIdentities().get(0)))
+                .getCoreTransaction().outRefsOfType(CarTokenType.class).get(0);
+        final StateAndRef<NonFungibleToken> bmw1 = issueCarTo(
+                bmwType.getState().getData().toPointer(CarTokenType.class),
+                sellerParty)
+                .getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0);
+
+        // Seller makes an offer.
+        final OfferSimpleFlow offerFlow = new OfferSimpleFlow(
+                bmw1.getState().getData().getLinearId(), buyerParty, 11_000L, "USD",
+                usMint.getInfo().getLegalIdentities().get(0), 3600);
+        final CordaFuture<SignedTransaction> offerFuture = alice.startFlow(offerFlow);
+        network.runNetwork();
+        offerFuture.get();
+
+        // As if the node had just been upgraded to the tracking table.
+        final SalesProposalService aliceService = alice.getServices().cordaService(SalesProposalService.class);
+        alice.getServices().withEntityManager(entityManager -> {
+            entityManager.createQuery("DELETE FROM " + SalesProposalTrackingSchemaV1.TrackedBuyer.class.getName())
+                    .executeUpdate();
+        });
+        assertEquals(0, aliceService.getTokenTypeCount());
+
+        alice.transaction(() -> {
+            aliceService.seedTracking();
+            return null;
+        });
+        assertEquals(1, aliceService.getTokenTypeCount());
+        final List<AbstractParty> buyers = aliceService.getBuyersOf(bmwType);
+        assertNotNull(buyers);
+        assertEquals(Collections.singletonList(buyerParty), buyers);
+
+        // Once seeded, it is left alone.
+        alice.transaction(() -> {
+            aliceService.seedTracking();
+            return null;
+        });
+        assertEquals(Collections.singletonList(buyerParty), aliceService.getBuyersOf(bmwType));
+    }
+
     @Test
     public void whenCarUpdatedItIsSentToBuyers() throws Exception {
         // Seller is on alice.
@@ -300,6 +427,138 @@ public class SalesProposalServiceTests {
             assertEquals(1, updatedBmwTypes.size());
             assertEquals(8_000L, updatedBmwTypes.get(0).getState().getData().getMileage());
         });
+        // Delivered notifications are not kept.
+        assertEquals(0L, aliceService.getPendingNotificationCount());
+        assertTrue(aliceService.getDeadNotifications().isEmpty());
+        final SalesProposalServiceMetrics metrics = aliceService.getMetrics();
+        assertEquals(2L, metrics.getNotificationsStarted());
+        assertEquals(2L, metrics.getNotificationsSucceeded());
+        assertEquals(0L, metrics.getNotificationsFailed());
+        assertEquals(2L, metrics.getBuyersPerTypeMax());
+        assertEquals(0L, metrics.getOldestPendingNotificationAgeMillis());
+    }
+
+    @Test
+    public void unreachableBuyerIsRetriedThenGivenUpOnUntilRevived() throws Exception {
+        // Seller is on alice.
+        final StateAndRef<AccountInfo> seller = createAccount(alice, "dan");
+        final AnonymousParty sellerParty = requestNewKey(alice, seller.getState().getData());
+        informKeys(alice, Collections.singletonList(sellerParty.getOwningKey()), Collections.singletonList(bmwDealer));
+        // Buyer is on carly.
+        final StateAndRef<AccountInfo> fabio = createAccount(carly, "fabio");
+        final AnonymousParty fabioParty = requestNewKey(carly, fabio.getState().getData());
+        informKeys(carly, Collections.singletonList(fabioParty.getOwningKey()), Collections.singletonList(alice));
+        // The car.
+        final StateAndRef<CarTokenType> bmwType = createNewBmw("abc124", "BMW",
+                Arrays.asList(
+                        bmwDealer.getInfo().getLegalIdentities().get(0),
+                        alice.getInfo().getLegalIdentities().get(0)))
+                .getCoreTransaction().outRefsOfType(CarTokenType.class).get(0);
+        final StateAndRef<NonFungibleToken> bmw1 = issueCarTo(
+                bmwType.getState().getData().toPointer(CarTokenType.class),
+                sellerParty)
+                .getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0);
+        final OfferSimpleFlow offerFlow = new OfferSimpleFlow(
+                bmw1.getState().getData().getLinearId(), fabioParty, 11_000L, "USD",
+                usMint.getInfo().getLegalIdentities().get(0), 3600);
+        final CordaFuture<SignedTransaction> offerFuture = alice.startFlow(offerFlow);
+        network.runNetwork();
+        offerFuture.get();
+
+        // The buyer's host goes offline before the car changes.
+        carly.stop();
+        final CordaFuture<SignedTransaction> updateFuture = dmv.startFlow(
+                new UpdateCarTokenTypeFlows.UpdateCarTokenTypeFlow(bmwType, 8_000L, 22_000L,
+                        Collections.singletonList(alice.getInfo().getLegalIdentities().get(0))));
+        network.runNetwork();
+        final SignedTransaction mileageTx = updateFuture.get();
+
+        // Each attempt times out, until the notification is given up on.
+        final SalesProposalService aliceService = alice.getServices().cordaService(SalesProposalService.class);
+        final long deadline = System.currentTimeMillis() + 30_000L;
+        while (aliceService.getDeadNotifications().isEmpty() && System.currentTimeMillis() < deadline) {
+            network.runNetwork();
+            Thread.sleep(50L);
+        }
+        final List<SalesProposalTrackingSchemaV1.PendingNotification> dead = aliceService.getDeadNotifications();
+        assertEquals(1, dead.size());
+        assertEquals(2, dead.get(0).getAttempts());
+        assertTrue(dead.get(0).getLastError().startsWith("Timed out"));
+        assertEquals(0L, aliceService.getPendingNotificationCount());
+        final SalesProposalServiceMetrics metrics = aliceService.getMetrics();
+        assertEquals(2L, metrics.getNotificationsFailed());
+        assertEquals(1L, metrics.getNotificationsDead());
+        assertEquals(0L, metrics.getNotificationsSucceeded());
+
+        // Once the buyer's host is back, the revived notification goes through.
+        final StartedMockNode carlyAgain = network.createNode(new MockNodeParameters()
+                .withForcedID(carly.getId())
+                .withLegalName(carly.getInfo().getLegalIdentities().get(0).getName()));
+        assertEquals(1, aliceService.reviveDeadNotifications());
+        // Not awaitNotifications, as the stopped carly is still in its list.
+        final long revivedDeadline = System.currentTimeMillis() + 10_000L;
+        while (0L < aliceService.getPendingNotificationCount() && System.currentTimeMillis() < revivedDeadline) {
+            network.runNetwork();
+            Thread.sleep(50L);
+        }
+        network.runNetwork();
+        assertEquals(0L, aliceService.getPendingNotificationCount());
+        assertTrue(aliceService.getDeadNotifications().isEmpty());
+        assertEquals(1L, metrics.getNotificationsSucceeded());
+        final List<StateAndRef<CarTokenType>> updatedBmwTypes = carlyAgain.getServices().getVaultService()
+                .queryBy(CarTokenType.class, new QueryCriteria.LinearStateQueryCriteria()
+                        .withUuid(Collections.singletonList(bmwType.getState().getData().getLinearId().getId())))
+                .getStates();
+        assertEquals(1, updatedBmwTypes.size());
+        assertEquals(mileageTx.getId(), updatedBmwTypes.get(0).getRef().getTxhash());
+    }
+
+    @Test
+    public void unreachableBuyerHasASingleFlowAcrossAttempts() throws Exception {
+        // Seller is on alice.
+        final StateAndRef<AccountInfo> seller = createAccount(alice, "dan");
+        final AnonymousParty sellerParty = requestNewKey(alice, seller.getState().getData());
+        informKeys(alice, Collections.singletonList(sellerParty.getOwningKey()), Collections.singletonList(bmwDealer));
+        // Buyer is on carly.
+        final StateAndRef<AccountInfo> fabio = createAccount(carly, "fabio");
+        final AnonymousParty fabioParty = requestNewKey(carly, fabio.getState().getData());
+        informKeys(carly, Collections.singletonList(fabioParty.getOwningKey()), Collections.singletonList(alice));
+        // The car.
+        final StateAndRef<CarTokenType> bmwType = createNewBmw("abc124", "BMW",
+                Arrays.asList(
+                        bmwDealer.getInfo().getLegalIdentities().get(0),
+                        alice.getInfo().getLegalIdentities().get(0)))
+                .getCoreTransaction().outRefsOfType(CarTokenType.class).get(0);
+        final StateAndRef<NonFungibleToken> bmw1 = issueCarTo(
+                bmwType.getState().getData().toPointer(CarTokenType.class),
+                sellerParty)
+                .getCoreTransaction().outRefsOfType(NonFungibleToken.class).get(0);
+        final OfferSimpleFlow offerFlow = new OfferSimpleFlow(
+                bmw1.getState().getData().getLinearId(), fabioParty, 11_000L, "USD",
+                usMint.getInfo().getLegalIdentities().get(0), 3600);
+        final CordaFuture<SignedTransaction> offerFuture = alice.startFlow(offerFlow);
+        network.runNetwork();
+        offerFuture.get();
+
+        // The buyer's host goes offline before the car changes.
+        carly.stop();
+        final CordaFuture<SignedTransaction> updateFuture = dmv.startFlow(
+                new UpdateCarTokenTypeFlows.UpdateCarTokenTypeFlow(bmwType, 8_000L, 22_000L,
+                        Collections.singletonList(alice.getInfo().getLegalIdentities().get(0))));
+        network.runNetwork();
+        updateFuture.get();
+
+        final SalesProposalService aliceService = alice.getServices().cordaService(SalesProposalService.class);
+        final long deadline = System.currentTimeMillis() + 30_000L;
+        while (aliceService.getDeadNotifications().isEmpty() && System.currentTimeMillis() < deadline) {
+            network.runNetwork();
+            Thread.sleep(50L);
+        }
+        assertEquals(2, aliceService.getDeadNotifications().get(0).getAttempts());
+
+        // Both attempts timed out on the same flow, which is still waiting for the buyer.
+        assertEquals(1L, aliceService.getMetrics().getNotificationsStarted());
+        assertEquals(1, alice.findStateMachines(InformTokenBuyerFlows.Send.class).size());
     }
 
     @Test
@@ -0,0 +1,88 @@
+package com.template.proposal.service;
+
+import com.template.car.flow.CarTokenCourseHelpers;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNodeParameters;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SalesProposalSweeperTests {
+    private final static CordaX500Name ALICE = CordaX500Name.parse("O=Alice, L=Istanbul, C=TR");
+    private final MockNetwork network;
+    private final StartedMockNode alice;
+    private final Instant bucketEnd = Instant.parse("2020-01-01T10:01:00Z");
+
+    public SalesProposalSweeperTests() {
+        network = new MockNetwork(CarTokenCourseHelpers.prepareMockNetworkParameters());
+        alice = network.createNode(new MockNodeParameters()
+                .withLegalName(ALICE));
+    }
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    private boolean claimOn(final StartedMockNode node, final Instant bucketEnd) {
+        final SalesProposalSweeper sweeper = node.getServices().cordaService(SalesProposalSweeper.class);
+        return node.transaction(() -> sweeper.claim(bucketEnd));
+    }
+
+    @Test
+    public void aBucketIsClaimedOnce() {
+        assertTrue(claimOn(alice, bucketEnd));
+        assertFalse(claimOn(alice, bucketEnd));
+        assertTrue(claimOn(alice, bucketEnd.plusSeconds(60)));
+    }
+
+    @Test
+    public void claimsSurviveARestart() {
+        assertTrue(claimOn(alice, bucketEnd));
+
+        alice.stop();
+        final StartedMockNode aliceAgain = network.createNode(new MockNodeParameters()
+                .withForcedID(alice.getId())
+                .withLegalName(ALICE));
+
+        assertFalse(claimOn(aliceAgain, bucketEnd));
+        assertTrue(claimOn(aliceAgain, bucketEnd.plusSeconds(60)));
+    }
+
+    @Test
+    public void noSweepIsStartedWithoutExpiredProposals() {
+        final SalesProposalSweeper sweeper = alice.getServices().cordaService(SalesProposalSweeper.class);
+        assertEquals(0, sweeper.sweepDueBuckets());
+    }
+
+    @Test
+    public void aBucketWithSkippedProposalsIsSweptAgain() {
+        final SalesProposalSweeper sweeper = alice.getServices().cordaService(SalesProposalSweeper.class);
+        alice.transaction(() -> {
+            assertTrue(sweeper.claim(bucketEnd));
+            sweeper.recordSkipped(bucketEnd, 1);
+            return null;
+        });
+
+        assertEquals(1, sweeper.retrySkipped());
+        network.runNetwork();
+
+        // The new sweep has claimed the bucket again, and skipped nothing this time.
+        assertFalse(claimOn(alice, bucketEnd));
+        assertEquals(0, sweeper.retrySkipped());
+    }
+
+}